@@ -28,9 +28,11 @@ import org.springframework.boot.web.servlet.ServletComponentScan;
 import org.springframework.boot.web.support.SpringBootServletInitializer;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(exclude = FreeMarkerAutoConfiguration.class)
 @EnableCaching
+@EnableScheduling
 @ServletComponentScan(basePackages = "io.cfp.config.filter")
 @EnableJpaRepositories(basePackages = "io.cfp.repository")
 public class Application extends SpringBootServletInitializer {
@@ -24,6 +24,8 @@ import io.cfp.config.filter.AuthFilter;
 import io.cfp.config.filter.CorsFilter;
 import io.cfp.multitenant.TenantFilter;
 import io.cfp.multitenant.TenantIdHandlerMethodArgumentResolver;
+import io.cfp.multitenant.TenantRegistry;
+import io.cfp.multitenant.TenantThrottle;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -65,9 +67,9 @@ public class WebConfiguration extends WebMvcConfigurerAdapter {
     }
 
     @Bean
-    public FilterRegistrationBean tenantFilter() {
+    public FilterRegistrationBean tenantFilter(TenantRegistry tenants, TenantThrottle throttle) {
         FilterRegistrationBean registrationBean = new FilterRegistrationBean();
-        TenantFilter tenantFilter = new TenantFilter();
+        TenantFilter tenantFilter = new TenantFilter(tenants, throttle);
         registrationBean.setFilter(tenantFilter);
         registrationBean.setOrder(1);
         return registrationBean;
@@ -89,7 +91,8 @@ public class WebConfiguration extends WebMvcConfigurerAdapter {
         Filter authFilter = new CorsFilter();
         registrationBean.setFilter(authFilter);
         registrationBean.setUrlPatterns(Arrays.asList("/v0/*", "/api/*", "/v1/*"));
-        registrationBean.setOrder(2);
+        // before tenantFilter, so its errors can be read cross-origin
+        registrationBean.setOrder(0);
         return registrationBean;
     }
 }
@@ -25,6 +25,7 @@ import io.cfp.mapper.UserMapper;
 import io.cfp.model.Role;
 import io.cfp.model.User;
 import io.cfp.model.queries.RoleQuery;
+import io.cfp.service.auth.PrincipalCache;
 import io.cfp.multitenant.TenantId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
@@ -44,6 +45,9 @@ public class AdminsController {
     @Autowired
     private RoleMapper roles;
 
+    @Autowired
+    private PrincipalCache principals;
+
     @GetMapping
     public List<String> getAdmins(@TenantId String eventId) {
         return users.findEmailByRole(Role.ADMIN, eventId);
@@ -75,6 +79,7 @@ public class AdminsController {
     		adminRole.setUser(user.getId());
     		adminRole.setEvent(eventId);
     		roles.insert(adminRole);
+    		principals.evict(email);
     		return true;
     	}
     	return false;
@@ -91,6 +96,7 @@ public class AdminsController {
         	for (Role role : userRoles) {
         		if (Role.ADMIN.equals(role.getName())) {
         			roles.delete(role);
+        			principals.evict(email);
         			return true;
         		}
         	}
@@ -27,6 +27,7 @@ import io.cfp.entity.Role;
 import io.cfp.mapper.EventMapper;
 import io.cfp.model.Event;
 import io.cfp.multitenant.TenantId;
+import io.cfp.multitenant.TenantRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
@@ -51,6 +52,9 @@ public class ApplicationController {
     @Autowired
     private EventMapper events;
 
+    @Autowired
+    private TenantRegistry tenants;
+
     /**
      * Obtain application settings, (name, dates, ...)
      * @return
@@ -58,7 +62,7 @@ public class ApplicationController {
     @GetMapping
     public ApplicationSettings getApplicationSettings(@TenantId String eventId) throws NotFoundException {
 
-        Event event = events.findOne(eventId);
+        Event event = tenants.get(eventId);
         if (event == null) {
             throw new NotFoundException("No event with ID: "+eventId);
         }
@@ -96,5 +100,6 @@ public class ApplicationController {
             throw new BadRequestException("Invalid data " + e.getMessage());
         }
         events.update(event);
+        tenants.refresh(name);
     }
 }
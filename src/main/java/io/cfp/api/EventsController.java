@@ -44,6 +44,9 @@ import io.cfp.model.queries.CommentQuery;
 import io.cfp.model.queries.ProposalQuery;
 import io.cfp.model.queries.RateQuery;
 import io.cfp.model.queries.RoleQuery;
+import io.cfp.multitenant.TenantRegistry;
+import io.cfp.service.auth.PrincipalCache;
+import io.cfp.service.version.EventVersionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -94,6 +97,15 @@ public class EventsController {
     @Autowired
     private CommentMapper comments;
 
+    @Autowired
+    private PrincipalCache principals;
+
+    @Autowired
+    private TenantRegistry tenants;
+
+    @Autowired
+    private EventVersionService versions;
+
 
     @RequestMapping(value = "/events", method = RequestMethod.GET)
     public List<Event> all(@RequestParam(name = "state", required = false, defaultValue = "open") String state) throws BadRequestException {
@@ -130,6 +142,7 @@ public class EventsController {
             .setReleaseDate(now);
 
         events.insert(e);
+        tenants.refresh(id);
 
         User u;
         if (!users.exists(owner)) {
@@ -144,6 +157,7 @@ public class EventsController {
             .setName(OWNER)
             .setEvent(id)
             .setUser(u.getId()));
+        principals.evict(owner);
 
         return e;
     }
@@ -167,12 +181,14 @@ public class EventsController {
         // Clone Event with archived eventId
         final Event event = events.findOne(id);
         events.insert(event.setId(archive));
+        tenants.refresh(archive);
 
         // Clone roles for archive event
         for (Role role : roles.findAll(new RoleQuery().setEventId(id))) {
             role.setEvent(archive);
             roles.insert(role);
         }
+        principals.evictEvent(archive);
 
         // Move formats|themes|room|roles to archive event
         // Then re-create for the 'new' one
@@ -204,6 +220,9 @@ public class EventsController {
         for (Comment comment : comments.findAll(new CommentQuery().setEventId(id))) {
             comments.updateEventId(comment.getId(), archive);
         }
+
+        // writes above only bumped the current event
+        versions.bump(archive, EventVersionService.Scope.values());
     }
 
 }
@@ -6,6 +6,7 @@ import io.cfp.mapper.ThemeMapper;
 import io.cfp.model.Format;
 import io.cfp.model.Theme;
 import io.cfp.multitenant.TenantId;
+import io.cfp.service.schedule.ScheduleChangeLog;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.transaction.annotation.Transactional;
@@ -30,6 +31,9 @@ public class FormatsController {
     @Autowired
     private FormatMapper formats;
 
+    @Autowired
+    private ScheduleChangeLog scheduleChanges;
+
     @RequestMapping(method = GET)
     public Collection<Format> all(@TenantId String eventId) {
         return formats.findByEvent(eventId);
@@ -48,6 +52,7 @@ public class FormatsController {
     @Secured(Role.OWNER)
     public void update(@PathVariable int id, @RequestBody Format format, @TenantId String eventId) {
         formats.updateForEvent(format.setId(id), eventId);
+        scheduleChanges.formatChanged(eventId, id);
     }
 
     @RequestMapping(value = "/{id}", method = DELETE)
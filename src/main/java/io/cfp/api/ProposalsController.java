@@ -20,6 +20,9 @@
 
 package io.cfp.api;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.cfp.domain.exception.BadRequestException;
 import io.cfp.domain.exception.CospeakerNotFoundException;
 import io.cfp.domain.exception.ForbiddenException;
@@ -29,14 +32,22 @@ import io.cfp.entity.Role;
 import io.cfp.mapper.CoSpeakerMapper;
 import io.cfp.mapper.ProposalMapper;
 import io.cfp.mapper.RateMapper;
+import io.cfp.mapper.ScoreMapper;
 import io.cfp.mapper.UserMapper;
 import io.cfp.model.Proposal;
 import io.cfp.model.Rate;
+import io.cfp.model.Score;
+import io.cfp.model.StateChange;
 import io.cfp.model.User;
 import io.cfp.model.queries.ProposalQuery;
 import io.cfp.model.queries.RateQuery;
 import io.cfp.multitenant.TenantId;
+import io.cfp.service.ProposalLoader;
+import io.cfp.service.ProposalStateService;
+import io.cfp.service.schedule.ScheduleChangeLog;
 import io.cfp.service.email.EmailingService;
+import io.cfp.service.search.ProposalSearchService;
+import io.cfp.service.version.EventVersionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,12 +56,18 @@ import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static io.cfp.entity.Role.*;
@@ -65,9 +82,15 @@ public class ProposalsController {
     @Autowired
     private ProposalMapper proposals;
 
+    @Autowired
+    private ProposalLoader loader;
+
     @Autowired
     private RateMapper rates;
 
+    @Autowired
+    private ScoreMapper scores;
+
     @Autowired
     private CoSpeakerMapper cospeakers;
 
@@ -77,16 +100,146 @@ public class ProposalsController {
     @Autowired
     private EmailingService emailingService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EventVersionService versions;
+
+    @Autowired
+    private ProposalSearchService searchService;
+
+    @Autowired
+    private ProposalStateService stateService;
+
+    @Autowired
+    private ScheduleChangeLog scheduleChanges;
+
     @GetMapping("/proposals")
     @Secured({REVIEWER, ADMIN})
     public List<Proposal> search(@AuthenticationPrincipal User user,
                                  @TenantId String event,
                                  @RequestParam(name = "states", required = false) String states,
                                  @RequestParam(name = "userId", required = false) Integer userId,
-                                 @RequestParam(name = "sort", required = false, defaultValue = "added") String sort,
-                                 @RequestParam(name = "order", required = false, defaultValue = "asc") String order
+                                 @RequestParam(name = "track", required = false) Integer track,
+                                 @RequestParam(name = "format", required = false) Integer format,
+                                 @RequestParam(name = "sort", required = false) String sort,
+                                 @RequestParam(name = "order", required = false, defaultValue = "asc") String order,
+                                 @RequestParam(name = "after", required = false) Integer after,
+                                 @RequestParam(name = "limit", required = false) Integer limit,
+                                 @RequestParam(name = "view", required = false) String view,
+                                 WebRequest request
                                  ) {
 
+        if (request.checkNotModified(versions.etag(event))) {
+            return null;
+        }
+
+        ProposalQuery query = buildQuery(event, states, userId, track, format, after, limit)
+            .setProjection(ProposalQuery.Projection.of(view))
+            .setSort(ProposalQuery.Sort.of(sort))
+            .setOrder(order.equalsIgnoreCase("desc")?"desc":"asc");
+
+        LOGGER.info("Search Proposals : {}", query);
+        List<Proposal> p = loader.findAll(query);
+        LOGGER.debug("Found {} Proposals", p.size());
+
+        Map<Integer, Score> scores = findScores(event);
+        for (Proposal proposal : p) {
+            applyScore(proposal, scores);
+        }
+
+        return p;
+    }
+
+    /**
+     * Same as {@link #search} but proposals are serialized as soon as they are read from the database,
+     * so they are never all held in memory. Proposals are ordered by id, use the last one as <code>after</code>
+     * to resume.
+     */
+    @GetMapping(value = "/proposals", params = "stream=true")
+    @Secured({REVIEWER, ADMIN})
+    public void stream(@AuthenticationPrincipal User user,
+                       @TenantId String event,
+                       @RequestParam(name = "states", required = false) String states,
+                       @RequestParam(name = "userId", required = false) Integer userId,
+                       @RequestParam(name = "track", required = false) Integer track,
+                       @RequestParam(name = "format", required = false) Integer format,
+                       @RequestParam(name = "after", required = false) Integer after,
+                       @RequestParam(name = "limit", required = false) Integer limit,
+                       @RequestParam(name = "view", required = false) String view,
+                       WebRequest request,
+                       HttpServletResponse response) throws IOException {
+
+        if (request.checkNotModified(versions.etag(event))) {
+            return;
+        }
+
+        ProposalQuery query = buildQuery(event, states, userId, track, format, after, limit)
+            .setProjection(ProposalQuery.Projection.of(view));
+        LOGGER.info("Stream Proposals : {}", query);
+
+        Map<Integer, Score> scores = findScores(event);
+
+        response.setContentType(APPLICATION_JSON_UTF8_VALUE);
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+            json.writeStartArray();
+            loader.stream(query, proposal -> {
+                applyScore(proposal, scores);
+                try {
+                    json.writeObject(proposal);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            json.writeEndArray();
+        }
+    }
+
+    /**
+     * Full text search on name, description, references and speaker names, best match first
+     */
+    @GetMapping("/proposals/search")
+    @Secured({REVIEWER, ADMIN})
+    public List<Proposal> fullTextSearch(@TenantId String event,
+                                         @RequestParam(name = "q") String q,
+                                         @RequestParam(name = "limit", required = false, defaultValue = "20") int limit) {
+        if (limit <= 0) {
+            throw new BadRequestException("limit must be positive");
+        }
+        LOGGER.info("Full text search of Proposals : {}", q);
+        return searchService.search(event, q, limit);
+    }
+
+    /**
+     * Next CONFIRMED proposals the current reviewer has not rated yet.
+     * Sort by <code>votes</code> to get the least reviewed ones first.
+     */
+    @GetMapping("/proposals/queue/next")
+    @Secured({REVIEWER, ADMIN})
+    public List<Proposal> nextToRate(@AuthenticationPrincipal User user,
+                                     @TenantId String event,
+                                     @RequestParam(name = "count", required = false, defaultValue = "1") int count,
+                                     @RequestParam(name = "sort", required = false, defaultValue = "added") String sort) {
+        if (count <= 0) {
+            throw new BadRequestException("count must be positive");
+        }
+        ProposalQuery query = new ProposalQuery()
+            .setEventId(event)
+            .addStates(Proposal.State.CONFIRMED)
+            .setUnratedBy(user.getId())
+            .setSort(ProposalQuery.Sort.of(sort))
+            .setLimit(count);
+        LOGGER.info("Next Proposals to rate : {}", query);
+        return loader.findAll(query);
+    }
+
+    private ProposalQuery buildQuery(String event, String states, Integer userId, Integer track, Integer format,
+                                     Integer after, Integer limit) {
+        if (limit != null && limit <= 0) {
+            throw new BadRequestException("limit must be positive");
+        }
+
         List<Proposal.State> stateList = new ArrayList<>();
         if (states != null) {
             stateList = Arrays.stream(states.split(","))
@@ -94,35 +247,29 @@ public class ProposalsController {
                 .collect(Collectors.toList());
         }
 
-        ProposalQuery query = new ProposalQuery()
+        return new ProposalQuery()
             .setEventId(event)
             .setStates(stateList)
             .setUserId(userId)
-            .setSort(sort)
-            .setOrder(order.equalsIgnoreCase("desc")?"desc":"asc");
+            .setTrack(track)
+            .setFormat(format)
+            .setAfter(after)
+            .setLimit(limit);
+    }
 
-        LOGGER.info("Search Proposals : {}", query);
-        List<Proposal> p = proposals.findAll(query);
-        LOGGER.debug("Found {} Proposals", p.size());
+    private Map<Integer, Score> findScores(String event) {
+        return rates.findScores(new RateQuery().setEventId(event)).stream()
+            .collect(Collectors.toMap(Score::getProposalId, Function.identity()));
+    }
 
-        for (Proposal proposal : p) {
-            List<String> emails = new ArrayList<>();
-            float total = 0;
-            int votes = 0;
-            for (Rate rate : rates.findAll(new RateQuery().setProposalId(proposal.getId()))) {
-                emails.add(rate.getUser().getEmail());
-                if (rate.getRate() > 0) {
-                    total += rate.getRate();
-                    votes++;
-                }
-            }
-            proposal.setVoteUsersEmail(emails);
-            if (votes > 0) {
-                proposal.setMean(String.valueOf(total/votes));
-            }
+    private void applyScore(Proposal proposal, Map<Integer, Score> scores) {
+        Score score = scores.get(proposal.getId());
+        if (score != null) {
+            proposal.setVoteUsersEmail(score.getVoters());
+            proposal.setMean(score.getMean());
+        } else {
+            proposal.setVoteUsersEmail(new ArrayList<>());
         }
-
-        return p;
     }
 
     @GetMapping("/proposals/{id}")
@@ -173,6 +320,7 @@ public class ProposalsController {
         proposals.insert(proposal);
 
         createCospeakers(proposal);
+        searchService.refresh(event, proposal.getId());
 
         emailingService.sendConfirmed(user.getFirstname(), user.getEmail(), proposal.getName(), proposal.getId(), user.getLocale());
 
@@ -216,16 +364,21 @@ public class ProposalsController {
         proposals.updateForEvent(proposal, event, userId);
 
         createCospeakers(proposal);
+        scheduleChanges.record(event, id);
+        searchService.refresh(event, id);
     }
 
     @DeleteMapping("/proposals/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @Secured(ADMIN)
+    @Transactional
     public void delete(@AuthenticationPrincipal User user,
                        @TenantId String event,
                        @PathVariable Integer id) {
         LOGGER.info("User {} delete the Proposal {}", user.getId(), id);
         proposals.deleteForEvent(id, event);
+        scheduleChanges.record(event, id);
+        searchService.refresh(event, id);
     }
 
     /**
@@ -234,14 +387,17 @@ public class ProposalsController {
     @DeleteMapping(value="/proposals")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @Secured(Role.ADMIN)
+    @Transactional
     public void deleteAll(@TenantId String event) {
         proposals.deleteAllByEventId(event);
+        scheduleChanges.reset(event);
     }
 
 
     @PutMapping("/proposals/{id}/confirm")
     @Secured(AUTHENTICATED)
     @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Transactional
     public void confirm(@TenantId String event,
                        @PathVariable int id) {
 
@@ -253,12 +409,15 @@ public class ProposalsController {
 
         //FIXME check proposal is in DRAFT state
         proposals.updateState(proposal);
+        scheduleChanges.record(event, id);
+        searchService.refresh(event, id);
     }
 
 
     @PutMapping("/proposals/{id}/accept")
     @Secured(ADMIN)
     @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Transactional
     public void accept(@TenantId String event,
                        @PathVariable int id) {
 
@@ -269,11 +428,14 @@ public class ProposalsController {
         proposal.setState(Proposal.State.ACCEPTED);
 
         proposals.updateState(proposal);
+        scheduleChanges.record(event, id);
+        searchService.refresh(event, id);
     }
 
     @PutMapping("/proposals/{id}/backup")
     @Secured(ADMIN)
     @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Transactional
     public void backup(@TenantId String event,
                        @PathVariable int id) {
         LOGGER.info("Proposal {} change state to BACKUP", id);
@@ -283,11 +445,14 @@ public class ProposalsController {
         proposal.setState(Proposal.State.BACKUP);
 
         proposals.updateState(proposal);
+        scheduleChanges.record(event, id);
+        searchService.refresh(event, id);
     }
 
     @PutMapping("/proposals/{id}/reject")
     @Secured(ADMIN)
     @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Transactional
     public void reject(@TenantId String event,
                        @PathVariable int id) {
         LOGGER.info("Proposal {} change state to REJECT", id);
@@ -297,11 +462,14 @@ public class ProposalsController {
         proposal.setState(Proposal.State.REFUSED);
 
         proposals.updateState(proposal);
+        scheduleChanges.record(event, id);
+        searchService.refresh(event, id);
     }
 
     @PutMapping("/proposals/{id}/retract")
     @Secured(ADMIN)
     @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Transactional
     public void retract(@TenantId String event,
                         @PathVariable int id) {
         LOGGER.info("Proposal {} change state to CONFIRMED", id);
@@ -311,6 +479,8 @@ public class ProposalsController {
         proposal.setState(Proposal.State.CONFIRMED);
 
         proposals.updateState(proposal);
+        scheduleChanges.record(event, id);
+        searchService.refresh(event, id);
     }
 
     @PutMapping("/proposals/rejectOthers")
@@ -321,11 +491,31 @@ public class ProposalsController {
         proposals.updateAllStateWhere(event, Proposal.State.REFUSED, Proposal.State.CONFIRMED);
     }
 
+    /**
+     * Change the state of many proposals at once, in a single transaction
+     */
+    @PostMapping("/proposals/states")
+    @Secured(ADMIN)
+    public List<StateChange> changeStates(@TenantId String event,
+                                          @RequestBody List<StateChange> changes) {
+        if (changes.isEmpty()) {
+            throw new BadRequestException("no state change");
+        }
+        for (StateChange change : changes) {
+            if (change.getState() == null || change.getState() == Proposal.State.DRAFT) {
+                throw new BadRequestException("invalid state for proposal " + change.getId());
+            }
+        }
+        LOGGER.info("Change state of {} Proposals", changes.size());
+        return stateService.apply(event, changes);
+    }
+
     /**
      * Add a new rating
      */
     @PostMapping("/proposals/{proposalId}/rates")
     @Secured({REVIEWER, ADMIN})
+    @Transactional
     public Rate addRate(@PathVariable int proposalId,
                         @AuthenticationPrincipal User user,
                         @Valid @RequestBody Rate rate,
@@ -335,6 +525,7 @@ public class ProposalsController {
         rate.setTalk(new Proposal().setId(proposalId));
         rate.setAdded(new Date());
         rates.insert(rate);
+        scores.refresh(proposalId);
         return rate;
     }
 
@@ -343,6 +534,7 @@ public class ProposalsController {
      */
     @PutMapping("/proposals/{proposalId}/rates/{rateId}")
     @Secured({REVIEWER, ADMIN})
+    @Transactional
     public Rate update(@PathVariable int proposalId,
                        @PathVariable int rateId,
                        @AuthenticationPrincipal User user,
@@ -353,6 +545,7 @@ public class ProposalsController {
         rate.setEventId(eventId);
         rate.setTalk(new Proposal().setId(proposalId));
         rates.update(rate);
+        scores.refresh(proposalId);
         return rate;
     }
 
@@ -2,13 +2,17 @@ package io.cfp.api;
 
 import io.cfp.entity.Role;
 import io.cfp.mapper.RateMapper;
+import io.cfp.mapper.ScoreMapper;
 import io.cfp.model.Rate;
 import io.cfp.model.Stat;
 import io.cfp.model.queries.RateQuery;
 import io.cfp.multitenant.TenantId;
+import io.cfp.service.version.EventVersionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.annotation.Secured;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Map;
@@ -24,12 +28,21 @@ public class RatesController {
     @Autowired
     private RateMapper rates;
 
+    @Autowired
+    private ScoreMapper scores;
+
+    @Autowired
+    private EventVersionService versions;
+
     /**
      * Get all ratings
      */
     @GetMapping
     @Secured(Role.ADMIN)
-    public List<Rate> getRates(@TenantId String eventId) {
+    public List<Rate> getRates(@TenantId String eventId, WebRequest request) {
+        if (request.checkNotModified(versions.etag(eventId))) {
+            return null;
+        }
         RateQuery rateQuery = new RateQuery().setEventId(eventId);
         return rates.findAll(rateQuery);
     }
@@ -39,8 +52,10 @@ public class RatesController {
      */
     @DeleteMapping
     @Secured(Role.ADMIN)
+    @Transactional
     public void deleteRates(@TenantId String eventId) {
         rates.deleteAllForEvent(eventId);
+        scores.deleteAllForEvent(eventId);
     }
 
     /**
@@ -48,8 +63,13 @@ public class RatesController {
      */
     @DeleteMapping("/{rateId}")
     @Secured(Role.ADMIN)
+    @Transactional
     public void deleteRate(@PathVariable int rateId, @TenantId String eventId) {
-        rates.deleteForEvent(rateId, eventId);
+        Rate rate = rates.findById(rateId, eventId);
+        if (rate != null) {
+            rates.deleteForEvent(rateId, eventId);
+            scores.refresh(rate.getTalk().getId());
+        }
     }
 
 
@@ -25,6 +25,7 @@ import io.cfp.mapper.UserMapper;
 import io.cfp.model.Role;
 import io.cfp.model.User;
 import io.cfp.model.queries.RoleQuery;
+import io.cfp.service.auth.PrincipalCache;
 import io.cfp.multitenant.TenantId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
@@ -44,6 +45,9 @@ public class ReviewersController {
     @Autowired
     private RoleMapper roles;
 
+    @Autowired
+    private PrincipalCache principals;
+
     @GetMapping
     public List<String> getReviewers(@TenantId String eventId) {
         return users.findEmailByRole(Role.REVIEWER, eventId);
@@ -75,6 +79,7 @@ public class ReviewersController {
     		adminRole.setUser(user.getId());
     		adminRole.setEvent(eventId);
     		roles.insert(adminRole);
+    		principals.evict(email);
     		return true;
     	}
     	return false;
@@ -91,6 +96,7 @@ public class ReviewersController {
         	for (Role role : userRoles) {
         		if (Role.REVIEWER.equals(role.getName())) {
         			roles.delete(role);
+        			principals.evict(email);
         			return true;
         		}
         	}
@@ -5,6 +5,7 @@ import io.cfp.entity.Role;
 import io.cfp.mapper.RoomMapper;
 import io.cfp.model.Room;
 import io.cfp.multitenant.TenantId;
+import io.cfp.service.schedule.ScheduleChangeLog;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.transaction.annotation.Transactional;
@@ -29,6 +30,9 @@ public class RoomsController {
     @Autowired
     private RoomMapper rooms;
 
+    @Autowired
+    private ScheduleChangeLog scheduleChanges;
+
     @RequestMapping(method = GET)
     public Collection<Room> all(@TenantId String eventId) {
         return rooms.findByEvent(eventId);
@@ -47,6 +51,7 @@ public class RoomsController {
     @Secured(Role.OWNER)
     public void update(@PathVariable int id, @RequestBody Room room, @TenantId String eventId) {
         rooms.updateForEvent(room.setId(id), eventId);
+        scheduleChanges.roomChanged(eventId, id);
     }
 
     @RequestMapping(value = "/{id}", method = DELETE)
@@ -53,7 +53,7 @@ public class SpeakersController {
             .setEventId(event)
             .setStates(stateList)
             .setUserId(userId)
-            .setSort(sort)
+            .setSort(ProposalQuery.Sort.of(sort))
             .setOrder(order.equalsIgnoreCase("desc") ? "desc" : "asc");
 
         LOGGER.info("Search Speakers : {}", query);
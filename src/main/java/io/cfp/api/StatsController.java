@@ -3,11 +3,13 @@ package io.cfp.api;
 import io.cfp.domain.admin.meter.AdminMeter;
 import io.cfp.dto.RestrictedMeter;
 import io.cfp.mapper.ProposalMapper;
+import io.cfp.model.OutboxStats;
 import io.cfp.model.Role;
 import io.cfp.model.User;
 import io.cfp.model.queries.ProposalQuery;
 import io.cfp.multitenant.TenantId;
 import io.cfp.repository.SubmissionRepository;
+import io.cfp.service.email.EmailOutbox;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -18,6 +20,7 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.Serializable;
+import java.util.List;
 
 import static io.cfp.model.Proposal.State.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
@@ -32,6 +35,9 @@ public class StatsController {
     @Autowired
     private SubmissionRepository submissions;
 
+    @Autowired
+    private EmailOutbox outbox;
+
     /**
      * Get meter stats (talks count, draft count, ...)
      */
@@ -78,4 +84,13 @@ public class StatsController {
 
     }
 
+    /**
+     * Progress of emails sent for the event, per status
+     */
+    @GetMapping(value="/emails")
+    @ResponseBody
+    @Secured(Role.ADMIN)
+    public List<OutboxStats> emails(@TenantId String event) {
+        return outbox.stats(event);
+    }
 }
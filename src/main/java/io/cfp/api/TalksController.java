@@ -20,10 +20,10 @@
 
 package io.cfp.api;
 
-import io.cfp.mapper.ProposalMapper;
 import io.cfp.model.Proposal;
 import io.cfp.model.queries.ProposalQuery;
 import io.cfp.multitenant.TenantId;
+import io.cfp.service.ProposalLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,20 +43,24 @@ public class TalksController {
     private static final Logger LOGGER = LoggerFactory.getLogger(TalksController.class);
 
     @Autowired
-    private ProposalMapper proposals;
+    private ProposalLoader proposals;
 
 
     /**
      * API pour exposer publiquement les proposals acceptés, aucune écriture disponible.
      * @param userId critère pour filtrer les proposals acceptés d'un utilisateur
+     * @param view <code>summary</code> pour ne charger que les colonnes affichées en liste, <code>full</code> par défaut
      * @return Liste de proposition
      */
     @GetMapping("/talks")
-    public List<Proposal> search(@TenantId String event, @RequestParam(name = "userId", required = false) Integer userId) {
+    public List<Proposal> search(@TenantId String event,
+                                 @RequestParam(name = "userId", required = false) Integer userId,
+                                 @RequestParam(name = "view", required = false) String view) {
         ProposalQuery query = new ProposalQuery()
             .setEventId(event)
             .addStates(Proposal.State.ACCEPTED)
-            .setUserId(userId);
+            .setUserId(userId)
+            .setProjection(ProposalQuery.Projection.of(view));
 
         LOGGER.info("Search accepted Proposals : {}", query);
         List<Proposal> proposals = this.proposals.findAll(query);
@@ -5,6 +5,7 @@ import io.cfp.mapper.ThemeMapper;
 import io.cfp.model.Stat;
 import io.cfp.model.Theme;
 import io.cfp.multitenant.TenantId;
+import io.cfp.service.schedule.ScheduleChangeLog;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.transaction.annotation.Transactional;
@@ -28,6 +29,9 @@ public class ThemesController {
     @Autowired
     private ThemeMapper themes;
 
+    @Autowired
+    private ScheduleChangeLog scheduleChanges;
+
     @RequestMapping(method = GET)
     public Collection<Theme> all(@TenantId String eventId) {
         return themes.findByEvent(eventId);
@@ -46,6 +50,7 @@ public class ThemesController {
     @Secured(Role.OWNER)
     public void update(@PathVariable int id, @RequestBody Theme theme, @TenantId String eventId) {
         themes.updateForEvent(theme.setId(id), eventId);
+        scheduleChanges.trackChanged(eventId, id);
     }
 
     @RequestMapping(value = "/{id}", method = DELETE)
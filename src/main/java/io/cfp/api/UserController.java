@@ -22,18 +22,21 @@ package io.cfp.api;
 
 import io.cfp.domain.exception.ForbiddenException;
 import io.cfp.entity.Role;
-import io.cfp.mapper.ProposalMapper;
 import io.cfp.mapper.UserMapper;
 import io.cfp.model.Proposal;
 import io.cfp.model.User;
 import io.cfp.model.queries.ProposalQuery;
 import io.cfp.multitenant.TenantId;
+import io.cfp.service.ProposalLoader;
+import io.cfp.service.auth.PrincipalCache;
+import io.cfp.service.schedule.ScheduleChangeLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
@@ -53,7 +56,13 @@ public class UserController {
     private UserMapper userMapper;
 
     @Autowired
-    private ProposalMapper proposals;
+    private ProposalLoader proposals;
+
+    @Autowired
+    private PrincipalCache principals;
+
+    @Autowired
+    private ScheduleChangeLog scheduleChanges;
 
     @GetMapping(value = "/me")
     @Secured(Role.AUTHENTICATED)
@@ -67,7 +76,8 @@ public class UserController {
                                  @TenantId String event,
                                  @RequestParam(name = "states", required = false) String states,
                                  @RequestParam(name = "sort", required = false, defaultValue = "added") String sort,
-                                 @RequestParam(name = "order", required = false, defaultValue = "asc") String order) {
+                                 @RequestParam(name = "order", required = false, defaultValue = "asc") String order,
+                                 @RequestParam(name = "view", required = false) String view) {
 
         List<Proposal.State> stateList = new ArrayList<>();
         if (states != null) {
@@ -80,8 +90,9 @@ public class UserController {
             .setEventId(event)
             .setStates(stateList)
             .setUserId(user.getId())
-            .setSort(sort)
-            .setOrder(order.equalsIgnoreCase("desc")?"desc":"asc");
+            .setSort(ProposalQuery.Sort.of(sort))
+            .setOrder(order.equalsIgnoreCase("desc")?"desc":"asc")
+            .setProjection(ProposalQuery.Projection.of(view));
 
         LOGGER.info("Get user {} proposals : {}", user.getId(), query);
         List<Proposal> p = proposals.findAll(query);
@@ -91,6 +102,7 @@ public class UserController {
 
     @PutMapping(value = "/me")
     @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Transactional
     public void updateMyProfil(@RequestBody User userUpdate,
                                @AuthenticationPrincipal User user) {
         update(user.getId(), userUpdate, user);
@@ -99,6 +111,7 @@ public class UserController {
 
     @PutMapping(value = "/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Transactional
     public void update(@PathVariable int id,
                                @RequestBody User userUpdate,
                                @AuthenticationPrincipal User user) {
@@ -111,6 +124,8 @@ public class UserController {
         userUpdate.setId(user.getId()).setEmail(user.getEmail());
 
         userMapper.update(userUpdate);
+        scheduleChanges.speakerChanged(user.getId());
+        principals.evict(user.getEmail());
     }
 
 }
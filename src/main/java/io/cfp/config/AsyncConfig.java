@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.config;
+
+import io.cfp.entity.Event;
+import org.slf4j.MDC;
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.aop.interceptor.SimpleAsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded executor of short background tasks, today the {@link io.cfp.service.schedule.ScheduleSnapshots schedule
+ * snapshot} rebuilds. Tasks run with the event, logging context and authentication of the thread which submitted
+ * them. No method is <code>@Async</code> anymore, <code>@EnableAsync</code> is kept so that new ones run on this
+ * executor rather than on unbounded threads.
+ * <p>
+ * When both the pool and its queue are full, the task is rejected with a
+ * {@link org.springframework.core.task.TaskRejectedException} (<code>cfp.async.rejection=abort</code>, default)
+ * which callers handle, e.g. by retrying later. With <code>caller-runs</code> the submitting thread runs it instead,
+ * only suitable when every task is short and callers may block, which isn't the case of schedule snapshot rebuilds.
+ */
+@Configuration
+@EnableAsync
+public class AsyncConfig implements AsyncConfigurer, PublicMetrics {
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Value("${cfp.async.core-size:2}")
+    private int coreSize;
+
+    @Value("${cfp.async.max-size:8}")
+    private int maxSize;
+
+    @Value("${cfp.async.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Value("${cfp.async.rejection:abort}")
+    private String rejection;
+
+    @Bean
+    public ThreadPoolTaskExecutor asyncExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("cfp-async-");
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setTaskDecorator(new ContextPropagatingDecorator());
+        executor.setRejectedExecutionHandler(countRejections(
+            "caller-runs".equals(rejection) ? new ThreadPoolExecutor.CallerRunsPolicy() : new ThreadPoolExecutor.AbortPolicy()));
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Selection notifications run for minutes, on their own threads so they don't hold the shared executor.
+     * Jobs submitted while all threads are busy are rejected, and resumed once stale.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor notificationExecutor(@Value("${cfp.notifications.threads:2}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("cfp-notifications-");
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(0);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return asyncExecutor();
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return new SimpleAsyncUncaughtExceptionHandler();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        ThreadPoolExecutor pool = asyncExecutor().getThreadPoolExecutor();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("async.pool.size", pool.getPoolSize()));
+        metrics.add(new Metric<>("async.active", pool.getActiveCount()));
+        metrics.add(new Metric<>("async.queue.size", pool.getQueue().size()));
+        metrics.add(new Metric<>("async.queue.remaining", pool.getQueue().remainingCapacity()));
+        metrics.add(new Metric<>("async.completed", pool.getCompletedTaskCount()));
+        metrics.add(new Metric<>("async.rejected", rejected.get()));
+        return metrics;
+    }
+
+    private RejectedExecutionHandler countRejections(RejectedExecutionHandler policy) {
+        return (task, executor) -> {
+            rejected.incrementAndGet();
+            policy.rejectedExecution(task, executor);
+        };
+    }
+
+    /**
+     * Carry the current event, MDC and security context over to the worker thread
+     */
+    static class ContextPropagatingDecorator implements TaskDecorator {
+
+        @Override
+        public Runnable decorate(Runnable task) {
+            String event = Event.peekCurrent();
+            Map<String, String> mdc = MDC.getCopyOfContextMap();
+            // the request thread clears its own context once done
+            SecurityContext security = SecurityContextHolder.createEmptyContext();
+            security.setAuthentication(SecurityContextHolder.getContext().getAuthentication());
+
+            return () -> {
+                String previousEvent = Event.peekCurrent();
+                Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+                SecurityContext previousSecurity = SecurityContextHolder.getContext();
+                set(event, mdc, security);
+                try {
+                    task.run();
+                } finally {
+                    set(previousEvent, previousMdc, previousSecurity);
+                }
+            };
+        }
+
+        private static void set(String event, Map<String, String> mdc, SecurityContext security) {
+            if (event != null) {
+                Event.setCurrent(event);
+            } else {
+                Event.unsetCurrent();
+            }
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            } else {
+                MDC.clear();
+            }
+            SecurityContextHolder.setContext(security);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.cfp.config.datasource.PrimaryWriteInterceptor;
+import io.cfp.config.datasource.ReadOnlyRequestFilter;
+import io.cfp.config.datasource.ReplicaRoutingDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Route read-only work to MySQL replicas, listed in <code>cfp.datasource.replica.urls</code>. Without replicas, the
+ * datasource is the one configured by Spring Boot.
+ */
+@Configuration
+@ConditionalOnProperty("cfp.datasource.replica.urls")
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return (HikariDataSource) properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource routingDataSource(HikariDataSource primaryDataSource,
+                                                      @Value("${cfp.datasource.replica.urls}") String urls,
+                                                      @Value("${cfp.datasource.replica.username:}") String username,
+                                                      @Value("${cfp.datasource.replica.password:}") String password,
+                                                      @Value("${cfp.datasource.replica.lag-query:}") String lagQuery,
+                                                      @Value("${cfp.datasource.replica.max-lag:5}") long maxLag) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : StringUtils.commaDelimitedListToStringArray(urls)) {
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyState(config);
+            config.setPoolName("replica-" + replicas.size());
+            config.setJdbcUrl(url.trim());
+            if (!username.isEmpty()) {
+                config.setUsername(username);
+                config.setPassword(password);
+            }
+            config.setReadOnly(true);
+            replicas.add(new HikariDataSource(config));
+        }
+
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primaryDataSource, replicas);
+        routing.setLagQuery(lagQuery.isEmpty() ? null : lagQuery);
+        routing.setMaxLag(maxLag);
+        return routing;
+    }
+
+    /**
+     * Used by MyBatis, JPA and Liquibase alike
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    public ReadOnlyRequestFilter readOnlyRequestFilter() {
+        return new ReadOnlyRequestFilter();
+    }
+
+    @Bean
+    public PrimaryWriteInterceptor primaryWriteInterceptor() {
+        return new PrimaryWriteInterceptor();
+    }
+}
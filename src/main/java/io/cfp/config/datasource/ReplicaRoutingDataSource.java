@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.config.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions, and queries made outside a transaction while serving a read-only request, to one
+ * of the replicas. Everything else goes to the primary.
+ * <p>
+ * Replicas are checked periodically: one that can't be reached, or lags behind the primary for more than
+ * <code>maxLag</code> seconds according to <code>lagQuery</code>, is left aside until it catches up. Reads fall back
+ * to the primary when no replica is fresh enough.
+ * <p>
+ * Must be wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, so the connection
+ * is only selected once the transaction is set up.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> READ_ONLY_REQUEST = new ThreadLocal<>();
+
+    private final DataSource primary;
+
+    private final List<DataSource> replicas;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile List<Integer> fresh;
+
+    private String lagQuery;
+
+    private long maxLag;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        this.primary = primary;
+        this.replicas = replicas;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        List<Integer> all = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+            all.add(i);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        this.fresh = all;
+    }
+
+    /**
+     * @param lagQuery query returning how many seconds a replica lags behind, or <code>null</code> to only check
+     *                 replicas can be reached
+     */
+    public void setLagQuery(String lagQuery) {
+        this.lagQuery = lagQuery;
+    }
+
+    public void setMaxLag(long maxLag) {
+        this.maxLag = maxLag;
+    }
+
+    /**
+     * Mark the current thread as serving a request which isn't expected to write, until {@link #endRequest()}
+     */
+    public static void readOnlyRequest() {
+        READ_ONLY_REQUEST.set(Boolean.TRUE);
+    }
+
+    /**
+     * Called before a write, so the remainder of the request reads from the primary what it just wrote
+     */
+    public static void writing() {
+        READ_ONLY_REQUEST.remove();
+    }
+
+    public static void endRequest() {
+        READ_ONLY_REQUEST.remove();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        boolean readOnly;
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            readOnly = true;
+        } else if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            readOnly = false;
+        } else {
+            readOnly = READ_ONLY_REQUEST.get() != null;
+        }
+
+        List<Integer> candidates = this.fresh;
+        if (!readOnly || candidates.isEmpty()) {
+            return PRIMARY;
+        }
+        return candidates.get((next.getAndIncrement() & Integer.MAX_VALUE) % candidates.size());
+    }
+
+    @Scheduled(fixedDelayString = "${cfp.datasource.replica.check:5000}")
+    public void checkReplicas() {
+        List<Integer> ok = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            if (isFresh(replicas.get(i))) {
+                ok.add(i);
+            }
+        }
+        if (ok.size() != fresh.size()) {
+            LOGGER.info("{} replicas out of {} are up to date", ok.size(), replicas.size());
+        }
+        this.fresh = Collections.unmodifiableList(ok);
+    }
+
+    private boolean isFresh(DataSource replica) {
+        try {
+            JdbcTemplate jdbc = new JdbcTemplate(replica);
+            if (lagQuery == null) {
+                jdbc.execute("SELECT 1");
+                return true;
+            }
+            Long lag = jdbc.queryForObject(lagQuery, Long.class);
+            return lag != null && lag <= maxLag;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Replica check failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        for (DataSource replica : replicas) {
+            if (replica instanceof Closeable) {
+                ((Closeable) replica).close();
+            }
+        }
+    }
+}
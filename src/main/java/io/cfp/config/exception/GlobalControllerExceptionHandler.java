@@ -21,12 +21,14 @@
 package io.cfp.config.exception;
 
 import io.cfp.domain.exception.BadRequestException;
+import io.cfp.domain.exception.BusyException;
 import io.cfp.domain.exception.CospeakerNotFoundException;
 import io.cfp.domain.exception.EntityExistsException;
 import io.cfp.domain.exception.ErrorResponse;
 import io.cfp.domain.exception.ForbiddenException;
 import io.cfp.domain.exception.NotFoundException;
 import io.cfp.domain.exception.NotVerifiedException;
+import io.cfp.domain.exception.ScheduleConflictException;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
@@ -158,4 +160,26 @@ public class GlobalControllerExceptionHandler {
         resp.setError(HttpStatus.CONFLICT.getReasonPhrase());
         return new ResponseEntity<>(resp, HttpStatus.CONFLICT);
     }
+
+    @ExceptionHandler(ScheduleConflictException.class)
+    public ResponseEntity<Object> handleException(ScheduleConflictException e) {
+        logger.warn("Schedule conflict: {}", e.getMessage());
+
+        ErrorResponse resp = new ErrorResponse(e);
+        resp.setStatus(HttpStatus.CONFLICT.value());
+        resp.setError(HttpStatus.CONFLICT.getReasonPhrase());
+        resp.setMessage(e.getMessage());
+        return new ResponseEntity<>(resp, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(BusyException.class)
+    public ResponseEntity<Object> handleException(BusyException e) {
+        logger.warn("Busy: {}", e.getMessage());
+
+        ErrorResponse resp = new ErrorResponse(e);
+        resp.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        resp.setError(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase());
+        resp.setMessage(e.getMessage());
+        return new ResponseEntity<>(resp, HttpStatus.SERVICE_UNAVAILABLE);
+    }
 }
@@ -22,10 +22,7 @@ package io.cfp.config.filter;
 
 import com.google.common.annotations.VisibleForTesting;
 import io.cfp.domain.common.UserAuthentication;
-import io.cfp.entity.Event;
-import io.cfp.entity.Role;
 import io.cfp.model.User;
-import io.cfp.repository.RoleRepository;
 import io.cfp.service.auth.AuthUtils;
 import org.apache.log4j.MDC;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -35,7 +32,6 @@ import org.springframework.web.context.support.WebApplicationContextUtils;
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.util.List;
 
 /**
  * Filter reading auth token (JWT) to verify if user is correctly logged
@@ -45,14 +41,12 @@ public class AuthFilter implements Filter {
     private static final String USER = "user";
 
     private AuthUtils authUtils;
-    private RoleRepository roleRepository;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         ServletContext servletContext = filterConfig.getServletContext();
         WebApplicationContext webApplicationContext = WebApplicationContextUtils.getWebApplicationContext(servletContext);
         authUtils = webApplicationContext.getBean(AuthUtils.class);
-        roleRepository = webApplicationContext.getBean(RoleRepository.class);
     }
 
     /**
@@ -67,14 +61,6 @@ public class AuthFilter implements Filter {
         User user = authUtils.getAuthUser(httpRequest);
 
         if (user != null) {
-            List<Role> roles = roleRepository.findByUserIdAndEventId(user.getId(), Event.current());
-            for (Role role : roles) {
-                if (Role.ADMIN.equals(role.getName())) {
-                    // until exact roles are well set on API, Admin implies reviewer role
-                    user.addRole(Role.REVIEWER);
-                }
-            	user.addRole(role.getName());
-            }
             MDC.put(USER, user.toLog());
             SecurityContextHolder.getContext().setAuthentication(new UserAuthentication(user));
         }
@@ -94,9 +80,4 @@ public class AuthFilter implements Filter {
     public void setAuthUtils(AuthUtils authUtils) {
         this.authUtils = authUtils;
     }
-
-    @VisibleForTesting
-    public void setRoleRepository(RoleRepository roleRepository) {
-        this.roleRepository = roleRepository;
-    }
 }
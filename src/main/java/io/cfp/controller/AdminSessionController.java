@@ -123,21 +123,21 @@ public class AdminSessionController {
     @Secured(Role.ADMIN)
     @ResponseBody
     public void accept(@PathVariable int talkId) throws CospeakerNotFoundException{
-        talks.setState(talkId, Event.current(), Talk.State.ACCEPTED);
+        talkService.setState(talkId, Talk.State.ACCEPTED);
     }
 
     @RequestMapping(value= "/sessions/{talkId}/backup", method= RequestMethod.PUT)
     @Secured(Role.ADMIN)
     @ResponseBody
     public void backup(@PathVariable int talkId) throws CospeakerNotFoundException{
-        talks.setState(talkId, Event.current(), Talk.State.BACKUP);
+        talkService.setState(talkId, Talk.State.BACKUP);
     }
 
     @RequestMapping(value= "/sessions/{talkId}/reject", method= RequestMethod.PUT)
     @Secured(Role.ADMIN)
     @ResponseBody
     public void reject(@PathVariable int talkId) throws CospeakerNotFoundException{
-        talks.setState(talkId, Event.current(), Talk.State.REFUSED);
+        talkService.setState(talkId, Talk.State.REFUSED);
     }
 
     @RequestMapping(value= "/sessions/rejectOthers", method= RequestMethod.PUT)
@@ -151,7 +151,7 @@ public class AdminSessionController {
     @Secured(Role.ADMIN)
     @ResponseBody
     public void retract(@PathVariable int talkId) throws CospeakerNotFoundException{
-        talks.setState(talkId, Event.current(), Talk.State.CONFIRMED);
+        talkService.setState(talkId, Talk.State.CONFIRMED);
     }
 
 
@@ -172,7 +172,7 @@ public class AdminSessionController {
     @Secured(Role.ADMIN)
     @ResponseBody
     public void deleteAll() {
-        talks.deleteAllByEventId(Event.current());
+        talkService.deleteAll();
     }
 
 
@@ -21,8 +21,12 @@
 package io.cfp.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.cfp.domain.exception.BadRequestException;
 import io.cfp.domain.exception.CospeakerNotFoundException;
+import io.cfp.domain.exception.NotFoundException;
 import io.cfp.dto.FullCalendar;
+import io.cfp.dto.ScheduleChanges;
+import io.cfp.dto.ScheduleProposal;
 import io.cfp.dto.TalkUser;
 import io.cfp.dto.user.Schedule;
 import io.cfp.dto.user.UserProfil;
@@ -31,14 +35,26 @@ import io.cfp.entity.Role;
 import io.cfp.entity.Room;
 import io.cfp.entity.Talk;
 import io.cfp.entity.User;
+import io.cfp.model.NotificationJob;
+import io.cfp.model.ScheduleConflict;
+import io.cfp.model.ScheduleSlot;
 import io.cfp.repository.RoomRepo;
 import io.cfp.repository.TalkRepo;
 import io.cfp.repository.UserRepo;
 import io.cfp.service.TalkUserService;
-import io.cfp.service.email.EmailingService;
+import io.cfp.service.email.NotificationJobs;
+import io.cfp.service.schedule.ScheduleChangeLog;
+import io.cfp.service.schedule.ScheduleConflicts;
+import io.cfp.service.schedule.ScheduleImportService;
+import io.cfp.service.schedule.ScheduleSnapshot;
+import io.cfp.service.schedule.ScheduleSnapshots;
+import io.cfp.service.schedule.ScheduleSolver;
+import io.cfp.service.version.EventVersionService;
+import io.cfp.service.version.EventVersionService.Scope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -50,16 +66,16 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.text.ParseException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
@@ -82,53 +98,77 @@ public class ScheduleController {
 
     private final UserRepo users;
 
-    private final EmailingService emailingService;
+    private final NotificationJobs notifications;
+
+    private final EventVersionService versions;
+
+    private final ScheduleSnapshots snapshots;
+
+    private final ScheduleImportService imports;
+
+    private final ScheduleSolver solver;
+
+    private final ScheduleConflicts conflicts;
+
+    private final ScheduleChangeLog changes;
 
     @Autowired
-    public ScheduleController(TalkUserService talkUserService, TalkRepo talks, RoomRepo rooms, UserRepo users, EmailingService emailingService) {
+    public ScheduleController(TalkUserService talkUserService, TalkRepo talks, RoomRepo rooms, UserRepo users, NotificationJobs notifications,
+                              EventVersionService versions, ScheduleSnapshots snapshots, ScheduleImportService imports,
+                              ScheduleSolver solver, ScheduleConflicts conflicts, ScheduleChangeLog changes) {
         super();
         this.talkUserService = talkUserService;
         this.talks = talks;
         this.rooms = rooms;
         this.users = users;
-        this.emailingService = emailingService;
+        this.notifications = notifications;
+        this.versions = versions;
+        this.snapshots = snapshots;
+        this.imports = imports;
+        this.solver = solver;
+        this.conflicts = conflicts;
+        this.changes = changes;
     }
 
+    /**
+     * Public schedule, served from a snapshot gzipped if the client accepts it
+     */
     @RequestMapping(method = RequestMethod.GET)
-    public List<Schedule> getSchedule() {
-        final List<Talk> all = talks.findByEventIdAndStatesFetch(Event.current(), Collections.singleton(Talk.State.ACCEPTED));
+    public ResponseEntity<byte[]> getSchedule(WebRequest request) {
+        ScheduleSnapshot snapshot = snapshots.get(Event.current());
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (request.checkNotModified(snapshot.getEtag(gzip))) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzip());
+        }
+        return response.body(snapshot.getJson());
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String encoding : acceptEncoding.split(",")) {
+            String[] parts = encoding.trim().split(";");
+            if ("gzip".equalsIgnoreCase(parts[0].trim())) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
 
-        return all.stream().
-            filter(t -> t.getDate() != null)
-            .map(t -> {
-                Schedule schedule = new Schedule(t.getId(), t.getName(), t.getDescription());
-
-                // speakers
-                String spreakers = t.getUser().getFirstname() + " " + t.getUser().getLastname();
-                if (t.getCospeakers() != null) {
-                    spreakers += ", " + t.getCospeakers().stream().map(c -> c.getFirstname() + " " + c.getLastname()).collect(Collectors.joining(", "));
-                }
-                schedule.setSpeakers(spreakers);
-
-                schedule.setEventType(t.getTrack().getLibelle());
-                schedule.setFormat(t.getFormat().getName());
-
-                schedule.setEventStart(DateTimeFormatter.ISO_INSTANT.format(t.getDate().toInstant()));
-                schedule.setEventEnd(DateTimeFormatter.ISO_INSTANT.format(t.getDate().toInstant().plus(t.getDuree(), ChronoUnit.MINUTES)));
-                schedule.setVenue(t.getRoom() != null ? t.getRoom().getName() : "TBD");
-                schedule.setVenueId(t.getRoom() != null ? String.valueOf(t.getRoom().getId()) : null);
-                schedule.setMedia(t.getVideo() != null ? t.getVideo() : t.getSlides());
-
-                final Map<String, Object> p = schedule.getAdditionalProperties();
-                if (t.getVideo() != null) {
-                    p.put("video", t.getVideo());
-                }
-                if (t.getSlides() != null) {
-                    p.put("slides", t.getSlides());
-                }
-
-                return schedule;
-            }).collect(toList());
+    /**
+     * Talks added to the public schedule, changed or removed since a version, or the whole schedule if the version
+     * is unknown or too old
+     */
+    @RequestMapping(value = "changes", method = RequestMethod.GET)
+    public ScheduleChanges getChanges(@RequestParam(name = "since", required = false) Long since) {
+        return changes.changes(Event.current(), since);
     }
 
     @RequestMapping(value = "fullcalendar/unscheduled", method = RequestMethod.GET)
@@ -147,15 +187,57 @@ public class ScheduleController {
         return new FullCalendar(all, roomList);
     }
 
+    /**
+     * Schedule all calendar events at once, nothing is scheduled if any event is invalid.
+     *
+     * @return the invalid events, with their error
+     */
     @RequestMapping(value = "fullcalendar", method = RequestMethod.PUT)
-    public void getFullCalendar(FullCalendar calendar) {
-        calendar.getEvents().forEach(
-            e -> {
-                talkUserService.updateConfirmedTalk(
-                    Integer.parseInt(e.getId()),
-                    LocalDateTime.parse(e.getStart(), DateTimeFormatter.ISO_OFFSET_DATE_TIME),
-                    e.getResourceId());
-            });
+    @Secured(Role.ADMIN)
+    public ResponseEntity<List<ScheduleSlot>> putFullCalendar(@RequestBody FullCalendar calendar) {
+        List<ScheduleSlot> slots = new ArrayList<>();
+        for (FullCalendar.Event e : calendar.getEvents()) {
+            ScheduleSlot slot = new ScheduleSlot()
+                .setRow(slots.size() + 1)
+                .setStart(e.getStart())
+                .setRoomId(e.getResourceId());
+            try {
+                slot.setId(Integer.parseInt(e.getId()));
+            } catch (NumberFormatException ex) {
+                slot.setError("Invalid talk ID: " + e.getId());
+            }
+            slots.add(slot);
+        }
+        return importSchedule(slots);
+    }
+
+    /**
+     * Compute a schedule of the accepted talks, to preview before putting it with {@link #putFullCalendar(FullCalendar)}
+     */
+    @RequestMapping(value = "solve", method = RequestMethod.POST)
+    @Secured(Role.ADMIN)
+    public ScheduleProposal solve() {
+        return solver.solve(Event.current());
+    }
+
+    /**
+     * Talks overlapping in the same room or with a common speaker
+     */
+    @RequestMapping(value = "conflicts", method = RequestMethod.GET)
+    @Secured(Role.ADMIN)
+    public List<ScheduleConflict> getConflicts() {
+        return conflicts.report(Event.current());
+    }
+
+    private ResponseEntity<List<ScheduleSlot>> importSchedule(List<ScheduleSlot> slots) {
+        List<ScheduleSlot> errors = slots.stream().filter(s -> s.getError() != null).collect(toList());
+        if (errors.isEmpty()) {
+            errors = imports.apply(Event.current(), slots);
+        }
+        if (!errors.isEmpty()) {
+            return ResponseEntity.badRequest().body(errors);
+        }
+        return ResponseEntity.ok().build();
     }
 
 
@@ -180,7 +262,10 @@ public class ScheduleController {
      */
     @RequestMapping(value = "/confirmed", method = RequestMethod.GET)
     @Secured(Role.ADMIN)
-    public List<Schedule> getConfirmedScheduleList() {
+    public List<Schedule> getConfirmedScheduleList(WebRequest request) {
+        if (request.checkNotModified(versions.etag(Event.current(), Scope.SCHEDULE))) {
+            return null;
+        }
         List<TalkUser> talkUserList = talkUserService.findAll(Talk.State.CONFIRMED);
         return getSchedules(talkUserList);
     }
@@ -205,7 +290,10 @@ public class ScheduleController {
      */
     @RequestMapping(value = "/accepted", method = RequestMethod.GET)
     @Secured(Role.ADMIN)
-    public List<Schedule> getScheduleList() {
+    public List<Schedule> getScheduleList(WebRequest request) {
+        if (request.checkNotModified(versions.etag(Event.current(), Scope.SCHEDULE))) {
+            return null;
+        }
         List<TalkUser> talkUserList = talkUserService.findAll(Talk.State.ACCEPTED);
         return getSchedules(talkUserList);
     }
@@ -228,71 +316,65 @@ public class ScheduleController {
         }).collect(toList());
     }
 
+    /**
+     * Import a whole schedule, nothing is scheduled if any talk is invalid.
+     *
+     * @return the invalid talks, with their error
+     */
     @RequestMapping(value = "", method = RequestMethod.POST, consumes = {"multipart/form-data", "multipart/mixed"})
     @Secured(Role.ADMIN)
-    public ResponseEntity uploadSchedule(@RequestParam("file") MultipartFile file) throws IOException {
+    public ResponseEntity<List<ScheduleSlot>> uploadSchedule(@RequestParam("file") MultipartFile file) throws IOException {
 
         final Schedule[] schedules = new ObjectMapper().readValue(file.getBytes(), Schedule[].class);
+        List<ScheduleSlot> slots = new ArrayList<>(schedules.length);
         for (Schedule talk : schedules) {
-            talkUserService.updateConfirmedTalk(talk.getId(), LocalDateTime.parse(talk.getEventStart(), DateTimeFormatter.ISO_OFFSET_DATE_TIME), talk.getVenueId());
+            slots.add(new ScheduleSlot()
+                .setRow(slots.size() + 1)
+                .setId(talk.getId())
+                .setStart(talk.getEventStart())
+                .setRoomId(talk.getVenueId()));
         }
-        return new ResponseEntity<>(HttpStatus.OK);
+        return importSchedule(slots);
     }
 
 
 
 
     /**
-     * Notify by mails scheduling result.
+     * Notify by mails scheduling result, in the background. Refused while an earlier job of the event is running.
      * @param filter , can be "accepted" or "refused", default is "all"
-     *
+     * @return the notification job, to follow its progress
      */
     @RequestMapping(value = "/notification", method = RequestMethod.POST)
     @Secured(Role.ADMIN)
-    public void notifyScheduling(@RequestParam(defaultValue = "all", name = "filter") String filter) {
-        switch (filter) {
-           case  "refused" :
-               List<Talk> refused = talks.findByEventIdAndStatesFetch(Event.current(), Collections.singleton(Talk.State.REFUSED));
-               sendRefusedMailsWithTempo(refused);
-               break;
-            case "accepted"  :
-               List<Talk> accepted = talks.findByEventIdAndStatesFetch(Event.current(), Collections.singleton(Talk.State.ACCEPTED));
-               sendAcceptedMailsWithTempo(accepted);
-               break;
-            case "all"  :
-               sendAcceptedMailsWithTempo(talks.findByEventIdAndStatesFetch(Event.current(), Collections.singleton(Talk.State.ACCEPTED)));
-               sendRefusedMailsWithTempo(talks.findByEventIdAndStatesFetch(Event.current(), Collections.singleton(Talk.State.REFUSED)));
-               break;
+    public ResponseEntity<NotificationJob> notifyScheduling(@RequestParam(defaultValue = "all", name = "filter") String filter) {
+        NotificationJob.Filter jobFilter;
+        try {
+            jobFilter = NotificationJob.Filter.valueOf(filter.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Unknown filter: " + filter);
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(notifications.start(Event.current(), jobFilter));
+    }
 
+    @RequestMapping(value = "/notification/{id}", method = RequestMethod.GET)
+    @Secured(Role.ADMIN)
+    public NotificationJob getNotification(@PathVariable int id) throws NotFoundException {
+        NotificationJob job = notifications.get(id, Event.current());
+        if (job == null) {
+            throw new NotFoundException("No notification job with ID: " + id);
         }
+        return job;
     }
 
     /**
-     * To help Google Compute Engine we wait 2 s between 2 mails.
-     * @param accepted
+     * Stop a running notification job. A later job notifies again every speaker matching its filter.
      */
-    private void sendAcceptedMailsWithTempo(List<Talk> accepted) {
-        accepted.forEach(t -> {
-                    try {
-                        Thread.sleep(2000);
-                    } catch (InterruptedException e) {
-                        LOG.warn("Thread Interrupted Exception", e);
-                    }
-                    emailingService.sendSelectionned(t, t.getUser().getLocale());
-                }
-        );
-    }
-
-    private void sendRefusedMailsWithTempo(List<Talk> refused) {
-        refused.forEach(t -> {
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                LOG.warn("Thread Interrupted Exception", e);
-            }
-            emailingService.sendNotSelectionned(t, t.getUser().getLocale());
-        });
+    @RequestMapping(value = "/notification/{id}", method = RequestMethod.DELETE)
+    @Secured(Role.ADMIN)
+    public NotificationJob cancelNotification(@PathVariable int id) throws NotFoundException {
+        notifications.cancel(id, Event.current());
+        return getNotification(id);
     }
 
-
 }
@@ -46,6 +46,7 @@ import io.cfp.entity.Track;
 import io.cfp.repository.EventRepository;
 import io.cfp.repository.TalkRepo;
 import io.cfp.repository.TrackRepo;
+import io.cfp.service.schedule.ScheduleChangeLog;
 
 @RestController
 @RequestMapping(value = { "/v0/tracks", "/api/tracks" }, produces = APPLICATION_JSON_UTF8_VALUE)
@@ -60,6 +61,9 @@ public class TrackControler {
     @Autowired
     private TalkRepo talks;
 
+    @Autowired
+    private ScheduleChangeLog scheduleChanges;
+
     @RequestMapping(method = GET)
     public Collection<TrackDto> all() {
         return tracks
@@ -102,6 +106,7 @@ public class TrackControler {
 	                .description(update.getDescription())
 
 	        );
+	        scheduleChanges.trackChanged(Event.current(), id);
     	}
     }
 
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.domain.exception;
+
+import io.cfp.model.ScheduleConflict;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * A talk can't be scheduled because it would overlap other talks
+ */
+public class ScheduleConflictException extends CustomException {
+
+    private final List<ScheduleConflict> conflicts;
+
+    public ScheduleConflictException(List<ScheduleConflict> conflicts) {
+        super(conflicts.stream()
+            .map(c -> "'" + c.getTalkName() + "' overlaps '" + c.getOtherTalkName() + "' ("
+                + c.getType().name().toLowerCase() + " " + c.getResourceId() + ")")
+            .collect(joining(", ")));
+        this.conflicts = conflicts;
+    }
+
+    public List<ScheduleConflict> getConflicts() {
+        return conflicts;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.dto;
+
+import io.cfp.dto.user.Schedule;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schedule changes since a version held by a client
+ */
+@Data
+@NoArgsConstructor
+@Accessors(chain = true)
+public class ScheduleChanges {
+
+    /** version to ask changes since next time */
+    private long version;
+
+    /** the client version is too old or unknown: talks is the whole schedule, to replace the one held */
+    private boolean reset;
+
+    /** talks added to the schedule or changed */
+    private List<Schedule> talks = new ArrayList<>();
+
+    /** ids of the talks removed from the schedule */
+    private List<Integer> removed = new ArrayList<>();
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+
+/**
+ * A schedule computed by the solver, to preview before importing it through <code>PUT /api/schedule/fullcalendar</code>
+ */
+@Data
+@NoArgsConstructor
+@Accessors(chain = true)
+public class ScheduleProposal {
+
+    private FullCalendar calendar;
+
+    /** number of broken hard constraints (room or speaker in two places at once, talk running late), 0 if feasible */
+    private int conflicts;
+
+    /** soft constraints penalty, the lower the better */
+    private long penalty;
+}
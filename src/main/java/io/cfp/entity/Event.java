@@ -54,6 +54,13 @@ public class Event {
         return s ;
     }
 
+    /**
+     * @return the current event, or <code>null</code> if not set
+     */
+    public static String peekCurrent() {
+        return current.get();
+    }
+
     @Id
     private String id;
 
@@ -1,8 +1,12 @@
 package io.cfp.mapper;
 
+import io.cfp.model.CoSpeaker;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
  */
@@ -12,4 +16,6 @@ public interface CoSpeakerMapper {
     void insert(@Param("proposal") int proposal, @Param("user") int user);
 
     void delete(@Param("proposal") int id);
+
+    List<CoSpeaker> findByProposals(@Param("proposals") Collection<Integer> proposals);
 }
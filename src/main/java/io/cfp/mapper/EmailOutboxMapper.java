@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.mapper;
+
+import io.cfp.model.OutboxEmail;
+import io.cfp.model.OutboxStats;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Emails to be sent by the {@link io.cfp.service.email.OutboxWorker}.
+ * <p>
+ * An email is {@link #claim claimed} before being sent by moving it to <code>SENDING</code> until a lease expires,
+ * so an instance which dies while sending doesn't lose it.
+ */
+@Mapper
+public interface EmailOutboxMapper {
+
+    int insert(OutboxEmail email);
+
+    /**
+     * Pending emails and expired leases, oldest first
+     */
+    List<OutboxEmail> findDue(@Param("now") Date now, @Param("limit") int limit);
+
+    /**
+     * @param nextAttempt as read by {@link #findDue}, so that only one instance can claim the email
+     * @return 1 if claimed
+     */
+    int claim(@Param("id") int id, @Param("nextAttempt") Date nextAttempt, @Param("lease") Date lease);
+
+    int markSent(@Param("id") int id, @Param("sent") Date sent);
+
+    int markRetry(@Param("id") int id, @Param("attempts") int attempts, @Param("nextAttempt") Date nextAttempt, @Param("error") String error);
+
+    int markFailed(@Param("id") int id, @Param("attempts") int attempts, @Param("error") String error);
+
+    List<OutboxStats> countByStatus(@Param("eventId") String eventId);
+
+    OutboxEmail findById(@Param("id") int id);
+}
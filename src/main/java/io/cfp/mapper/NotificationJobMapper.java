@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.mapper;
+
+import io.cfp.model.NotificationJob;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Notification runs. A running job updates its progress after each chunk of talks, which also serves as a heartbeat: a job
+ * which hasn't been updated for a while was left by a stopped instance and can be {@link #claim claimed} to resume it.
+ */
+@Mapper
+public interface NotificationJobMapper {
+
+    /**
+     * @throws org.springframework.dao.DuplicateKeyException if a job of the event is still running
+     */
+    int insert(NotificationJob job);
+
+    NotificationJob findById(@Param("id") int id, @Param("eventId") String eventId);
+
+    List<NotificationJob> findStale(@Param("before") Date before);
+
+    /**
+     * @param updated as last read, so that only one instance can claim the job
+     * @return 1 if claimed
+     */
+    int claim(@Param("id") int id, @Param("updated") Date updated, @Param("now") Date now);
+
+    /**
+     * @param count number of talks notified since the last progress
+     * @return 0 if the job is no longer running, i.e. was cancelled
+     */
+    int progress(@Param("id") int id, @Param("lastTalk") int lastTalk, @Param("count") int count, @Param("now") Date now);
+
+    int finish(@Param("id") int id, @Param("status") NotificationJob.Status status, @Param("now") Date now);
+
+    /**
+     * @return 1 if the job was running
+     */
+    int cancel(@Param("id") int id, @Param("eventId") String eventId, @Param("now") Date now);
+}
@@ -24,19 +24,30 @@ import io.cfp.model.Proposal;
 import io.cfp.model.queries.ProposalQuery;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
+import java.util.Date;
 import java.util.List;
 
 @Mapper
 public interface ProposalMapper {
 
     List<Proposal> findAll(ProposalQuery proposalQuery);
+    void streamAll(ProposalQuery proposalQuery, ResultHandler<Proposal> handler);
     Proposal findById(@Param("id") int id, @Param("eventId") String eventId);
     int insert(Proposal proposal);
     int updateForEvent(@Param("it") Proposal proposal, @Param("eventId") String eventId, @Param("userId") Integer userId);
     int deleteForEvent(@Param("id") int id, @Param("eventId") String eventId);
     int updateState(Proposal proposal);
 
+    List<Integer> findIds(@Param("eventId") String eventId);
+
+    /**
+     * Accept a talk and schedule it, keeping its room if <code>roomId</code> is <code>null</code>
+     */
+    int updateSchedule(@Param("id") int id, @Param("eventId") String eventId, @Param("schedule") Date schedule,
+                       @Param("hour") String hour, @Param("roomId") Integer roomId);
+
     int updateAllStateWhere(@Param("eventId") String event, @Param("newState") Proposal.State refused, @Param("oldState") Proposal.State confirmed);
 
     int count(ProposalQuery proposalQuery);
@@ -1,6 +1,7 @@
 package io.cfp.mapper;
 
 import io.cfp.model.Rate;
+import io.cfp.model.Score;
 import io.cfp.model.Stat;
 import io.cfp.model.queries.RateQuery;
 import org.apache.ibatis.annotations.Mapper;
@@ -14,6 +15,7 @@ public interface RateMapper {
 
 
     List<Rate> findAll(RateQuery rateQuery);
+    Rate findById(@Param("id") int id, @Param("eventId") String eventId);
     Rate findMyRate(@Param("proposalId") int proposalId, @Param("user") int userId, @Param("eventId") String eventId);
     int insert(Rate rate);
     int update(Rate rate);
@@ -23,5 +25,7 @@ public interface RateMapper {
 
     List<Stat> getRateByEmailUsers(String eventId);
 
+    List<Score> findScores(RateQuery rateQuery);
+
     void updateEventId(@Param("id") int id, @Param("eventId") String eventId);
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.mapper;
+
+import io.cfp.model.Score;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * Rates aggregated per proposal in <code>proposal_scores</code>.
+ * Any change to rates must {@link #refresh} the scores of the proposal in the same transaction.
+ */
+@Mapper
+public interface ScoreMapper {
+
+    List<Score> findByEvent(@Param("eventId") String eventId);
+
+    int delete(@Param("proposal") int proposal);
+    int insertFromRates(@Param("proposal") int proposal);
+
+    int deleteAllForEvent(@Param("eventId") String eventId);
+
+    int deleteAll();
+    int insertAllFromRates();
+
+    /**
+     * Recompute the score of a proposal from its rates
+     */
+    default void refresh(int proposal) {
+        delete(proposal);
+        insertFromRates(proposal);
+    }
+
+    /**
+     * Recompute all scores from rates
+     */
+    default void rebuild() {
+        deleteAll();
+        insertAllFromRates();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+
+import java.util.Date;
+
+/**
+ * A run notifying speakers of accepted and/or refused talks
+ */
+@Data
+@NoArgsConstructor
+@Accessors(chain = true)
+public class NotificationJob {
+
+    public enum Status {
+        RUNNING, DONE, CANCELLED, FAILED
+    }
+
+    public enum Filter {
+        ACCEPTED, REFUSED, ALL
+    }
+
+    private int id;
+    private String eventId;
+    private Filter filter;
+    private Status status;
+    private int total;
+    private int sent;
+    /** id of the last talk notified, talks are notified by increasing id */
+    private int lastTalk;
+    private Date added;
+    private Date updated;
+
+}
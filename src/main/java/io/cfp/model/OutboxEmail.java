@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+
+import java.util.Date;
+
+/**
+ * An email waiting in <code>email_outbox</code> to be sent, or kept as a record once sent
+ */
+@Data
+@NoArgsConstructor
+@Accessors(chain = true)
+public class OutboxEmail {
+
+    public enum Status {
+        PENDING, SENDING, SENT, FAILED
+    }
+
+    private int id;
+    private String eventId;
+    private String provider;
+    private String replyTo;
+    private String recipient;
+    /** comma separated addresses */
+    private String cc;
+    /** comma separated addresses */
+    private String bcc;
+    private String subject;
+    private String content;
+    /** same for emails which can be sent together, <code>null</code> if it must be sent on its own */
+    private String batchKey;
+    /** content with substitution tags, shared by the batch */
+    private String batchContent;
+    /** JSON object of the values of the substitution tags for this recipient */
+    private String substitutions;
+    private Status status;
+    private int attempts;
+    private Date nextAttempt;
+    private String lastError;
+    private Date added;
+    private Date sent;
+
+}
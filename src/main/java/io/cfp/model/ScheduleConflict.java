@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+
+/**
+ * Two scheduled talks overlapping in the same room or with a common speaker
+ */
+@Data
+@NoArgsConstructor
+@Accessors(chain = true)
+public class ScheduleConflict {
+
+    public enum Type { ROOM, SPEAKER }
+
+    private int talkId;
+    private String talkName;
+    private int otherTalkId;
+    private String otherTalkName;
+    private Type type;
+    /** id of the room or of the speaker */
+    private int resourceId;
+}
@@ -1,12 +1,16 @@
 package io.cfp.model.queries;
 
+import io.cfp.domain.exception.BadRequestException;
 import io.cfp.model.Proposal;
 import lombok.Data;
 import lombok.experimental.Accessors;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 @Data
 @Accessors(chain = true)
@@ -15,15 +19,125 @@ public class ProposalQuery {
     private String eventId;
     private Integer userId;
     private List<Proposal.State> states = new ArrayList<>();
-    private String track;
+    private Integer track;
     private String room;
-    private String format;
-    private String sort;
+    private Integer format;
+    /** only return proposals this user has not rated yet */
+    private Integer unratedBy;
+    /** <code>null</code> sorts by id when paginating, by added date otherwise */
+    private Sort sort;
     private String order;
 
+    /** keyset pagination: only return proposals with an id greater than this one, ordered by id */
+    private Integer after;
+    /** maximum number of proposals to return, ordered by id unless sorted */
+    private Integer limit;
+
+    private Projection projection = Projection.FULL;
+
     public ProposalQuery addStates(Proposal.State... states) {
         this.states.addAll(Arrays.asList(states));
         return this;
     }
 
+    /**
+     * Columns of the <code>ORDER BY</code> clause.
+     * Columns filtered by equality come first so the sort matches the prefix of an index,
+     * see the proposals indexes in changelog-1.0.xml.
+     */
+    public List<String> getOrderBy() {
+        if (isKeyset()) {
+            return Collections.singletonList("p.id");
+        }
+        Sort sort = this.sort != null ? this.sort : Sort.ADDED;
+
+        Set<String> columns = new LinkedHashSet<>();
+        if (sort.indexed) {
+            if (eventId != null) {
+                columns.add("p.event_id");
+            }
+            if (states.size() == 1) {
+                columns.add("p.state");
+            }
+            if (track != null) {
+                columns.add("p.track");
+            }
+            if (format != null) {
+                columns.add("p.format");
+            }
+        }
+        columns.add(sort.column);
+        if (!sort.unique) {
+            columns.add("p.added");
+        }
+        return new ArrayList<>(columns);
+    }
+
+    public boolean isDescending() {
+        return !isKeyset() && "desc".equalsIgnoreCase(order);
+    }
+
+    private boolean isKeyset() {
+        return after != null || (limit != null && sort == null);
+    }
+
+    public enum Sort {
+        ADDED("p.added", true, true),
+        NAME("p.name", true, true),
+        STATE("p.state", true, false),
+        TRACK("p.track", true, false),
+        FORMAT("p.format", true, false),
+        /** mean of non-zero rates, from proposal_scores so no proposals index can help */
+        MEAN("s.total * 1.0 / NULLIF(s.votes, 0)", false, false),
+        /** fewest votes first, to spread reviews evenly */
+        VOTES("COALESCE(s.votes, 0)", false, false);
+
+        private final String column;
+        /** sorting by the column after equality filters matches an index */
+        private final boolean indexed;
+        /** values rarely tie, no need for a secondary sort on added date */
+        private final boolean unique;
+
+        Sort(String column, boolean indexed, boolean unique) {
+            this.column = column;
+            this.indexed = indexed;
+            this.unique = unique;
+        }
+
+        /** the column comes from proposal_scores */
+        public boolean isScored() {
+            return this == MEAN || this == VOTES;
+        }
+
+        public static Sort of(String sort) {
+            if (sort == null) {
+                return null;
+            }
+            try {
+                return valueOf(sort.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Unknown sort " + sort);
+            }
+        }
+    }
+
+    /**
+     * Columns to select: <code>SUMMARY</code> only reads what list views display and leaves large TEXT columns
+     * (description, references, speaker bio...) in the database.
+     */
+    public enum Projection {
+        SUMMARY, FULL;
+
+        public static Projection of(String view) {
+            if (view == null) {
+                return FULL;
+            }
+            try {
+                return valueOf(view.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Unknown view " + view);
+            }
+        }
+    }
+
 }
@@ -25,6 +25,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.http.HttpHeaders;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.cors.CorsUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import javax.servlet.FilterChain;
@@ -40,9 +43,49 @@ public class TenantFilter extends OncePerRequestFilter {
 
     public static final String TENANT_HEADER = "X-Tenant-Id";
 
+    private static final String DEFAULT_TENANT = "demo";
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static final String[] TENANT_FREE_PATHS = { "/*/events", "/*/users/me/events" };
+
+    private final PathMatcher matcher = new AntPathMatcher();
+
+    private final TenantRegistry tenants;
+
+    private final TenantThrottle throttle;
+
+    public TenantFilter(TenantRegistry tenants, TenantThrottle throttle) {
+        this.tenants = tenants;
+        this.throttle = throttle;
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
-        final String eventId =  extractTenant(request);
+        String eventId = extractTenant(request);
+        if (eventId == null) {
+            logger.warn("Can't determine current event. Fallback to '{}'", DEFAULT_TENANT);
+            eventId = DEFAULT_TENANT;
+        } else if (isApi(request) && !tenants.exists(eventId.toLowerCase())) {
+            if (!isTenantFree(request)) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND, "No event with ID: " + eventId);
+                return;
+            }
+            logger.debug("Unknown event '{}' for {}. Fallback to '{}'", eventId, request.getRequestURI(), DEFAULT_TENANT);
+            eventId = DEFAULT_TENANT;
+        }
+
+        TenantThrottle.Ticket ticket = null;
+        if (isApi(request) && !CorsUtils.isPreFlightRequest(request)) {
+            ticket = throttle.admit(eventId.toLowerCase(), throttle.isHeavy(request));
+            if (!ticket.isAdmitted()) {
+                logger.debug("Too many requests for event '{}', retry after {}s", eventId, ticket.getRetryAfter());
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(ticket.getRetryAfter()));
+                response.sendError(SC_TOO_MANY_REQUESTS, "Too many requests for event: " + eventId);
+                return;
+            }
+        }
+
         MDC.put("event.id", eventId);
         request.setAttribute("tenantId", eventId.toLowerCase());
         Event.setCurrent(eventId.toLowerCase());
@@ -50,6 +93,9 @@ public class TenantFilter extends OncePerRequestFilter {
             filterChain.doFilter(request, response);
         } finally {
             MDC.remove("event.id");
+            if (ticket != null) {
+                ticket.release();
+            }
         }
     }
 
@@ -83,8 +129,28 @@ public class TenantFilter extends OncePerRequestFilter {
             return referer.substring(8, referer.indexOf('.'));
         }
 
-        logger.warn("Can't determine current event. Fallback to 'demo'");
-        return "demo";
+        return null;
+    }
+
+    /**
+     * Static resources are served whatever the tenant
+     */
+    private static boolean isApi(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return path.startsWith("/api/") || path.startsWith("/v0/") || path.startsWith("/v1/");
+    }
+
+    /**
+     * Listing and creating events don't depend on the current one, and are called from hosts which aren't events
+     */
+    private boolean isTenantFree(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String pattern : TENANT_FREE_PATHS) {
+            if (matcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private static final Logger logger = LoggerFactory.getLogger(TenantFilter.class);
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.multitenant;
+
+import io.cfp.mapper.EventMapper;
+import io.cfp.model.Event;
+import io.cfp.model.queries.EventQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All events, loaded at startup, so that resolving the current tenant and its settings doesn't query the database.
+ * <p>
+ * Must be refreshed when an event is created or updated. Also reloaded periodically to catch up with changes
+ * made by other instances.
+ */
+@Component
+public class TenantRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TenantRegistry.class);
+
+    private final EventMapper events;
+
+    private volatile Map<String, Event> tenants;
+
+    @Autowired
+    public TenantRegistry(EventMapper events) {
+        this.events = events;
+    }
+
+    public boolean exists(String eventId) {
+        return tenants().containsKey(eventId);
+    }
+
+    /**
+     * @return the event, shared with other requests so not to be modified, or <code>null</code> if unknown
+     */
+    public Event get(String eventId) {
+        return tenants().get(eventId);
+    }
+
+    /**
+     * Reload an event once the current transaction if any commits
+     */
+    public void refresh(String eventId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    load(eventId);
+                }
+            });
+        } else {
+            load(eventId);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${cfp.tenants.reload:60000}", initialDelayString = "${cfp.tenants.reload:60000}")
+    public void reload() {
+        Map<String, Event> loaded = new ConcurrentHashMap<>();
+        for (Event event : events.findAll(new EventQuery())) {
+            loaded.put(event.getId(), event);
+        }
+        tenants = loaded;
+        LOGGER.debug("Loaded {} events", loaded.size());
+    }
+
+    private void load(String eventId) {
+        Event event = events.findOne(eventId);
+        if (event == null) {
+            tenants().remove(eventId);
+        } else {
+            tenants().put(eventId, event);
+        }
+    }
+
+    private Map<String, Event> tenants() {
+        if (tenants == null) {
+            synchronized (this) {
+                if (tenants == null) {
+                    reload();
+                }
+            }
+        }
+        return tenants;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.multitenant;
+
+import com.google.common.base.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tenant admission control, so one busy event can't exhaust the request threads and database connections
+ * shared by all events.
+ * <p>
+ * Each event gets a number of concurrent requests and a token bucket of requests per second, with a separate,
+ * smaller budget for heavy endpoints (exports, proposal streams, batch state changes). Limits are read from
+ * <code>cfp.tenants.limits.*</code>, and can be overridden for a single event with
+ * <code>cfp.tenants.limits.events.{event}.*</code>. A limit set to 0 disables it.
+ */
+@Component
+public class TenantThrottle {
+
+    private static final String PREFIX = "cfp.tenants.limits.";
+
+    private static final String DEFAULT_HEAVY_PATHS = "/**/export/**,/**/proposals/states,/**/rejectOthers";
+
+    private final Environment env;
+
+    private final Ticker ticker;
+
+    private final PathMatcher matcher = new AntPathMatcher();
+
+    private final String[] heavyPaths;
+
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TenantThrottle(Environment env) {
+        this(env, Ticker.systemTicker());
+    }
+
+    TenantThrottle(Environment env, Ticker ticker) {
+        this.env = env;
+        this.ticker = ticker;
+        this.heavyPaths = StringUtils.commaDelimitedListToStringArray(
+            env.getProperty(PREFIX + "admin.paths", DEFAULT_HEAVY_PATHS));
+    }
+
+    /**
+     * Heavy requests are those matching <code>cfp.tenants.limits.admin.paths</code>, and proposal streams
+     */
+    public boolean isHeavy(HttpServletRequest request) {
+        if ("true".equals(request.getParameter("stream"))) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String pattern : heavyPaths) {
+            if (matcher.match(pattern.trim(), path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Try to admit a request, without waiting.
+     * @return a ticket to be released once the request completes if {@link Ticket#isAdmitted() admitted}
+     */
+    public Ticket admit(String eventId, boolean heavy) {
+        String kind = heavy ? "admin." : "";
+        return budgets.computeIfAbsent(kind + eventId, k -> new Budget(eventId, kind)).admit();
+    }
+
+    private int limit(String eventId, String key, int defaultValue) {
+        Integer global = env.getProperty(PREFIX + key, Integer.class, defaultValue);
+        return env.getProperty(PREFIX + "events." + eventId + "." + key, Integer.class, global);
+    }
+
+    public static class Ticket {
+
+        private static final Ticket UNLIMITED = new Ticket(null, 0);
+
+        private final Semaphore permits;
+
+        private final long retryAfter;
+
+        private Ticket(Semaphore permits, long retryAfter) {
+            this.permits = permits;
+            this.retryAfter = retryAfter;
+        }
+
+        public boolean isAdmitted() {
+            return retryAfter == 0;
+        }
+
+        /**
+         * @return seconds to wait before trying again, when not admitted
+         */
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+
+        public void release() {
+            if (permits != null && isAdmitted()) {
+                permits.release();
+            }
+        }
+    }
+
+    private class Budget {
+
+        private final Semaphore concurrency;
+
+        private final double rate;
+
+        private final double burst;
+
+        private double tokens;
+
+        private long refilled;
+
+        Budget(String eventId, String kind) {
+            int maxConcurrent = limit(eventId, kind + "concurrency", kind.isEmpty() ? 20 : 4);
+            this.concurrency = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+            this.rate = limit(eventId, kind + "rate", kind.isEmpty() ? 50 : 5);
+            this.burst = Math.max(rate, limit(eventId, kind + "burst", kind.isEmpty() ? 100 : 20));
+            this.tokens = burst;
+            this.refilled = ticker.read();
+        }
+
+        Ticket admit() {
+            if (concurrency != null && !concurrency.tryAcquire()) {
+                return new Ticket(null, 1);
+            }
+            long wait = consume();
+            if (wait > 0) {
+                if (concurrency != null) {
+                    concurrency.release();
+                }
+                return new Ticket(null, wait);
+            }
+            return concurrency != null ? new Ticket(concurrency, 0) : Ticket.UNLIMITED;
+        }
+
+        /**
+         * @return 0 if a token was available, otherwise seconds until the next one
+         */
+        private synchronized long consume() {
+            if (rate <= 0) {
+                return 0;
+            }
+            long now = ticker.read();
+            tokens = Math.min(burst, tokens + (now - refilled) * rate / TimeUnit.SECONDS.toNanos(1));
+            refilled = now;
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / rate));
+        }
+    }
+}
@@ -70,6 +70,18 @@ public interface TalkRepo extends JpaRepository<Talk, Integer> {
         "order by t.id")
     List<Talk> findByEventIdAndStatesFetch(@Param("eventId") String eventId, @Param("states") Collection<Talk.State> states);
 
+    @Query("SELECT DISTINCT t FROM Talk t " +
+        "JOIN FETCH t.user " +
+        "JOIN FETCH t.format " +
+        "JOIN FETCH t.track " +
+        "LEFT JOIN FETCH t.cospeakers " +
+        "WHERE  t.event.id = :eventId " +
+        "AND t.state IN (:states) " +
+        "AND t.id IN (:ids) " +
+        "order by t.id")
+    List<Talk> findByEventIdAndStatesAndIdsFetch(@Param("eventId") String eventId, @Param("states") Collection<Talk.State> states,
+                                                 @Param("ids") Collection<Integer> ids);
+
 
     @Transactional
     @Modifying
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service;
+
+import io.cfp.mapper.CoSpeakerMapper;
+import io.cfp.mapper.ProposalMapper;
+import io.cfp.model.CoSpeaker;
+import io.cfp.model.Proposal;
+import io.cfp.model.queries.ProposalQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Loads proposals in two phases: proposals first, then their cospeakers with one query per batch of proposals.
+ * Joining cospeakers would repeat every proposal row (description, speaker bio...) once per cospeaker.
+ */
+@Service
+public class ProposalLoader {
+
+    static final int BATCH_SIZE = 500;
+
+    private final ProposalMapper proposals;
+
+    private final CoSpeakerMapper cospeakers;
+
+    @Autowired
+    public ProposalLoader(ProposalMapper proposals, CoSpeakerMapper cospeakers) {
+        this.proposals = proposals;
+        this.cospeakers = cospeakers;
+    }
+
+    public List<Proposal> findAll(ProposalQuery query) {
+        List<Proposal> found = proposals.findAll(query);
+        for (int from = 0; from < found.size(); from += BATCH_SIZE) {
+            loadCospeakers(found.subList(from, Math.min(from + BATCH_SIZE, found.size())));
+        }
+        return found;
+    }
+
+    /**
+     * Hand over proposals with their cospeakers as they are read, holding at most one batch in memory
+     */
+    public void stream(ProposalQuery query, Consumer<Proposal> consumer) {
+        List<Proposal> batch = new ArrayList<>(BATCH_SIZE);
+        proposals.streamAll(query, context -> {
+            batch.add(context.getResultObject());
+            if (batch.size() == BATCH_SIZE) {
+                flush(batch, consumer);
+            }
+        });
+        flush(batch, consumer);
+    }
+
+    private void flush(List<Proposal> batch, Consumer<Proposal> consumer) {
+        loadCospeakers(batch);
+        batch.forEach(consumer);
+        batch.clear();
+    }
+
+    private void loadCospeakers(List<Proposal> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<Integer, Proposal> byId = new LinkedHashMap<>();
+        for (Proposal proposal : batch) {
+            proposal.setCospeakers(new HashSet<>());
+            byId.put(proposal.getId(), proposal);
+        }
+        for (CoSpeaker cospeaker : cospeakers.findByProposals(byId.keySet())) {
+            byId.get(cospeaker.getProposalId()).getCospeakers().add(cospeaker.getUser());
+        }
+    }
+}
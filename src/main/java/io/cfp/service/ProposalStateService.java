@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service;
+
+import io.cfp.mapper.ProposalMapper;
+import io.cfp.model.Proposal;
+import io.cfp.model.StateChange;
+import io.cfp.service.schedule.ScheduleChangeLog;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Applies many state changes with JDBC batches in one transaction.
+ * <p>
+ * MyBatis can't switch executor type within a transaction: the transaction must not use
+ * the regular mappers before calling this service.
+ */
+@Service
+public class ProposalStateService {
+
+    static final int BATCH_SIZE = 500;
+
+    private final SqlSessionTemplate batchSession;
+
+    private final ScheduleChangeLog scheduleChanges;
+
+    @Autowired
+    public ProposalStateService(SqlSessionFactory sqlSessionFactory, ScheduleChangeLog scheduleChanges) {
+        this.batchSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        this.scheduleChanges = scheduleChanges;
+    }
+
+    /**
+     * @return the changes, with their result set
+     */
+    @Transactional
+    public List<StateChange> apply(String eventId, List<StateChange> changes) {
+        ProposalMapper proposals = batchSession.getMapper(ProposalMapper.class);
+
+        for (int from = 0; from < changes.size(); from += BATCH_SIZE) {
+            List<StateChange> batch = changes.subList(from, Math.min(from + BATCH_SIZE, changes.size()));
+            for (StateChange change : batch) {
+                proposals.updateState(new Proposal()
+                    .setId(change.getId())
+                    .setEventId(eventId)
+                    .setState(change.getState()));
+            }
+
+            int index = 0;
+            for (BatchResult result : batchSession.flushStatements()) {
+                for (int count : result.getUpdateCounts()) {
+                    // drivers rewriting batches report SUCCESS_NO_INFO (-2) instead of a count
+                    batch.get(index++).setResult(count == 0 ? StateChange.Result.NOT_FOUND : StateChange.Result.UPDATED);
+                }
+            }
+        }
+        scheduleChanges.record(eventId, changes.stream()
+            .filter(c -> c.getResult() != StateChange.Result.NOT_FOUND)
+            .map(StateChange::getId)
+            .collect(toList()));
+        return changes;
+    }
+}
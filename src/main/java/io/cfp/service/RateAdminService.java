@@ -25,6 +25,7 @@ import io.cfp.entity.Event;
 import io.cfp.entity.Rate;
 import io.cfp.entity.Role;
 import io.cfp.entity.User;
+import io.cfp.mapper.ScoreMapper;
 import io.cfp.repository.EventRepository;
 import io.cfp.repository.RateRepo;
 import io.cfp.repository.TalkRepo;
@@ -57,13 +58,17 @@ public class RateAdminService {
 
     private final UserRepo users;
 
+    private final ScoreMapper scores;
+
     @Autowired
-    public RateAdminService(RateRepo rateRepo, TalkRepo talkRepo, MapperFacade mapper, EventRepository events, UserRepo users) {
+    public RateAdminService(RateRepo rateRepo, TalkRepo talkRepo, MapperFacade mapper, EventRepository events, UserRepo users,
+                            ScoreMapper scores) {
         this.rateRepo = rateRepo;
         this.talkRepo = talkRepo;
         this.mapper = mapper;
         this.events = events;
         this.users = users;
+        this.scores = scores;
     }
 
     /**
@@ -135,6 +140,7 @@ public class RateAdminService {
         newRate.setEvent(events.findOne(Event.current()));
         rateRepo.save(newRate);
         rateRepo.flush(); //to get rate id
+        scores.refresh(talkId);
         return mapper.map(newRate, RateAdmin.class);
     }
 
@@ -148,6 +154,7 @@ public class RateAdminService {
         mapper.map(rate, editRate);
         editRate.setAdded(new Date());
         rateRepo.flush();
+        scores.refresh(editRate.getTalk().getId());
         return mapper.map(editRate, RateAdmin.class);
     }
 
@@ -160,6 +167,8 @@ public class RateAdminService {
         Rate rate = rateRepo.findByIdAndEventId(rateId, Event.current());
         RateAdmin deleted = mapper.map(rate, RateAdmin.class);
         rateRepo.delete(rate);
+        rateRepo.flush();
+        scores.refresh(rate.getTalk().getId());
         return deleted;
     }
 
@@ -168,6 +177,8 @@ public class RateAdminService {
      */
     public void deleteAll() {
         rateRepo.deleteByEventId(Event.current());
+        rateRepo.flush();
+        scores.deleteAllForEvent(Event.current());
     }
 
 
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service;
+
+import io.cfp.mapper.ScoreMapper;
+import io.cfp.service.version.EventVersionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Periodically rebuild proposal scores from rates, in case some rates were changed without refreshing them
+ */
+@Service
+public class ScoreReconciliation {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScoreReconciliation.class);
+
+    @Autowired
+    private ScoreMapper scores;
+
+    @Autowired
+    private EventVersionService versions;
+
+    @Scheduled(cron = "${cfp.scores.reconciliation.cron:0 0 4 * * *}")
+    @Transactional
+    public void reconcile() {
+        long start = System.currentTimeMillis();
+        scores.rebuild();
+        // scores of every event were rewritten
+        versions.bumpAll();
+        LOGGER.info("Proposal scores rebuilt in {} ms", System.currentTimeMillis() - start);
+    }
+}
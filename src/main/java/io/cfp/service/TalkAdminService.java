@@ -30,6 +30,8 @@ import io.cfp.entity.Event;
 import io.cfp.entity.Rate;
 import io.cfp.entity.Talk;
 import io.cfp.entity.User;
+import io.cfp.mapper.ScoreMapper;
+import io.cfp.model.Score;
 import io.cfp.repository.CommentRepo;
 import io.cfp.repository.FormatRepo;
 import io.cfp.repository.RateRepo;
@@ -37,6 +39,8 @@ import io.cfp.repository.RoomRepo;
 import io.cfp.repository.TalkRepo;
 import io.cfp.repository.TrackRepo;
 import io.cfp.repository.UserRepo;
+import io.cfp.service.schedule.ScheduleChangeLog;
+import io.cfp.service.schedule.ScheduleConflicts;
 import ma.glasnost.orika.MapperFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,6 +76,9 @@ public class TalkAdminService {
     @Autowired
     private RateRepo rateRepo;
 
+    @Autowired
+    private ScoreMapper scores;
+
     @Autowired
     private UserRepo userRepo;
 
@@ -87,6 +94,12 @@ public class TalkAdminService {
     @Autowired
     private RoomRepo rooms;
 
+    @Autowired
+    private ScheduleConflicts conflicts;
+
+    @Autowired
+    private ScheduleChangeLog scheduleChanges;
+
     @Autowired
     private MapperFacade mapper;
 
@@ -107,9 +120,9 @@ public class TalkAdminService {
             .filter(r -> userId == r.getAdminUser().getId())
             .collect(groupingBy(r -> r.getTalk().getId()));
 
-        Map<Integer, Double> averages = rates.stream()
-            .filter(r -> r.getRate() > 0)
-            .collect(groupingBy(r -> r.getTalk().getId(), averagingInt(Rate::getRate)));
+        Map<Integer, Double> averages = scores.findByEvent(Event.current()).stream()
+            .filter(s -> s.getVotes() > 0)
+            .collect(toMap(Score::getProposalId, s -> (double) s.getTotal() / s.getVotes()));
 
         Map<Integer, List<String>> voters = rates.stream()
             .collect(groupingBy(r -> r.getTalk().getId(), mapping(r -> r.getAdminUser().getEmail(), toList())));
@@ -175,8 +188,11 @@ public class TalkAdminService {
 
         setCoSpeaker(t, talk);
 
+        conflicts.validate(Event.current(), talk);
         talkRepo.save(talk);
         talkRepo.flush();
+        conflicts.updated(Event.current(), talk);
+        scheduleChanges.record(Event.current(), talk.getId());
 
         return new TalkAdmin(talk);
     }
@@ -213,9 +229,26 @@ public class TalkAdminService {
         Talk talk = talkRepo.findByIdAndEventId(talkId, Event.current());
         TalkAdmin deleted = mapper.map(talk, TalkAdmin.class);
         talkRepo.delete(talk);
+        scheduleChanges.record(Event.current(), talkId);
         return deleted;
     }
 
+    /**
+     * Change the state of a talk
+     */
+    public void setState(int talkId, Talk.State state) {
+        talkRepo.setState(talkId, Event.current(), state);
+        scheduleChanges.record(Event.current(), talkId);
+    }
+
+    /**
+     * Delete all talks of the event
+     */
+    public void deleteAll() {
+        talkRepo.deleteAllByEventId(Event.current());
+        scheduleChanges.reset(Event.current());
+    }
+
     /**
      * Export talks list into sched.org format
      * @param states State list to export
@@ -33,6 +33,8 @@ import io.cfp.repository.RoomRepo;
 import io.cfp.repository.TalkRepo;
 import io.cfp.repository.TrackRepo;
 import io.cfp.repository.UserRepo;
+import io.cfp.service.schedule.ScheduleChangeLog;
+import io.cfp.service.schedule.ScheduleConflicts;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -71,6 +73,12 @@ public class TalkUserService {
     @Autowired
     private EventRepository events;
 
+    @Autowired
+    private ScheduleConflicts conflicts;
+
+    @Autowired
+    private ScheduleChangeLog scheduleChanges;
+
     /**
      * Retrieve all talks for a User
      *
@@ -176,7 +184,10 @@ public class TalkUserService {
         if (room != null) {
             talk.setRoom(rooms.getOne(Integer.parseInt(room)));
         }
+        conflicts.validate(Event.current(), talk);
         talk = talkRepo.saveAndFlush(talk);
+        conflicts.updated(Event.current(), talk);
+        scheduleChanges.record(Event.current(), talkId);
 
         return new TalkUser(talk);
     }
@@ -30,6 +30,7 @@ import org.springframework.transaction.annotation.Transactional;
 import io.cfp.dto.ApplicationSettings;
 import io.cfp.entity.CfpConfig;
 import io.cfp.entity.Event;
+import io.cfp.multitenant.TenantRegistry;
 import io.cfp.repository.CfpConfigRepo;
 import io.cfp.repository.EventRepository;
 
@@ -50,14 +51,17 @@ public class ApplicationConfigService {
     @Autowired
     private EventRepository events;
 
+    @Autowired
+    private TenantRegistry tenants;
+
     public ApplicationSettings getAppConfig() {
-        ApplicationSettings applicationSettings = new ApplicationSettings(events.findOne(Event.current()));
+        ApplicationSettings applicationSettings = new ApplicationSettings(tenants.get(Event.current()));
         applicationSettings.setAuthServer(authServer);
         return applicationSettings;
     }
 
     public boolean isCfpOpen() {
-        return events.findOne(Event.current()).isOpen();
+        return tenants.get(Event.current()).isOpen();
     }
 
     @Transactional
@@ -65,6 +69,7 @@ public class ApplicationConfigService {
         Event event = events.findOne(Event.current());
         event.setOpen(true);
         events.save(event);
+        tenants.refresh(event.getId());
     }
 
     @Transactional
@@ -72,6 +77,7 @@ public class ApplicationConfigService {
         Event event = events.findOne(Event.current());
         event.setOpen(false);
         events.save(event);
+        tenants.refresh(event.getId());
 
     }
 
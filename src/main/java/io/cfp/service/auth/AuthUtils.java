@@ -20,9 +20,15 @@
 
 package io.cfp.service.auth;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import io.cfp.entity.Event;
 import io.cfp.entity.Role;
 import io.cfp.mapper.UserMapper;
 import io.cfp.model.User;
+import io.cfp.repository.RoleRepository;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.Jwts;
@@ -30,15 +36,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 @Component
-public final class AuthUtils {
+public final class AuthUtils implements PublicMetrics {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AuthUtils.class);
     private static final String TOKEN_COOKIE_NAME = "token";
@@ -47,6 +60,12 @@ public final class AuthUtils {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private PrincipalCache principals;
+
     @Value("${cfpio.authentication_hack:false}")
     private boolean authHack;
 
@@ -54,7 +73,17 @@ public final class AuthUtils {
     private String signingKey;
 
     /**
-     * Get user from JWT token
+     * Claims of already verified tokens, by SHA-256 of the token so raw tokens are not kept in memory.
+     * An entry is only used until the expiration of its token.
+     */
+    private final Cache<String, Claims> verifiedTokens = CacheBuilder.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterWrite(1, TimeUnit.DAYS)
+        .recordStats()
+        .build();
+
+    /**
+     * Get user from JWT token, with his roles on current event
      * @param httpRequest
      * @return User
      */
@@ -75,6 +104,11 @@ public final class AuthUtils {
             return null;
         }
 
+        String event = Event.current();
+        return principals.get(email, event, () -> loadUser(email, event));
+    }
+
+    private User loadUser(String email, String event) {
         User user = userMapper.findByEmail(email);
         if (user == null) {
             user = new User();
@@ -87,7 +121,16 @@ public final class AuthUtils {
                 if (user == null) throw e; // other error
             }
         }
-        return user.addRole(Role.AUTHENTICATED);
+        user.addRole(Role.AUTHENTICATED);
+
+        for (Role role : roleRepository.findByUserIdAndEventId(user.getId(), event)) {
+            if (Role.ADMIN.equals(role.getName())) {
+                // until exact roles are well set on API, Admin implies reviewer role
+                user.addRole(Role.REVIEWER);
+            }
+            user.addRole(role.getName());
+        }
+        return user;
     }
 
     /**
@@ -132,10 +175,36 @@ public final class AuthUtils {
      * @throws ParseException
      */
     private Claims decodeToken(String tokenValue) throws ExpiredJwtException {
-        return Jwts.parser().setSigningKey(signingKey).parseClaimsJws(tokenValue).getBody();
+        String digest = Hashing.sha256().hashString(tokenValue, StandardCharsets.UTF_8).toString();
+
+        Claims claims = verifiedTokens.getIfPresent(digest);
+        if (claims != null) {
+            Date expiration = claims.getExpiration();
+            if (expiration == null || expiration.after(new Date())) {
+                return claims;
+            }
+            verifiedTokens.invalidate(digest);
+        }
+
+        // throws once expired
+        claims = Jwts.parser().setSigningKey(signingKey).parseClaimsJws(tokenValue).getBody();
+        verifiedTokens.put(digest, claims);
+        return claims;
     }
 
     private String getTokenFromHeader(String header) {
         return header.replace("Bearer", "").trim();
     }
+
+    /**
+     * Verified tokens cache metrics, exposed on /metrics
+     */
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = verifiedTokens.stats();
+        return Arrays.asList(
+            new Metric<>("auth.tokens.hit", stats.hitCount()),
+            new Metric<>("auth.tokens.miss", stats.missCount()),
+            new Metric<>("auth.tokens.size", verifiedTokens.size()));
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.auth;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.cfp.model.User;
+import lombok.Data;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Authenticated users with their roles, per event, so that authenticating a request doesn't query the database.
+ * <p>
+ * Must be evicted when a user profile or roles change. Entries also expire after a few minutes to catch up with
+ * changes made by other means (legacy API, database edits).
+ */
+@Component
+public class PrincipalCache implements PublicMetrics {
+
+    private final Cache<Key, User> principals;
+
+    @Data
+    private static class Key {
+        private final String email;
+        private final String eventId;
+    }
+
+    public PrincipalCache(@Value("${cfp.auth.principals.size:10000}") long size) {
+        this.principals = CacheBuilder.newBuilder()
+            .maximumSize(size)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * @return a copy of the cached user, callers may change it
+     */
+    public User get(String email, String eventId, Supplier<User> loader) {
+        try {
+            return copy(principals.get(new Key(email, eventId), loader::get));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Forget a user, for all events, once the current transaction if any commits
+     */
+    public void evict(String email) {
+        afterCommit(() -> principals.asMap().keySet().removeIf(key -> key.getEmail().equals(email)));
+    }
+
+    /**
+     * Forget all users of an event, once the current transaction if any commits
+     */
+    public void evictEvent(String eventId) {
+        afterCommit(() -> principals.asMap().keySet().removeIf(key -> key.getEventId().equals(eventId)));
+    }
+
+    /**
+     * Evicting before commit would let a concurrent request cache the data about to change
+     */
+    private static void afterCommit(Runnable eviction) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        } else {
+            eviction.run();
+        }
+    }
+
+    private static User copy(User user) {
+        User copy = new User();
+        BeanUtils.copyProperties(user, copy);
+        return copy.setRoles(new HashSet<>(user.getRoles()));
+    }
+
+    /**
+     * Principal cache metrics, exposed on /metrics
+     */
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = principals.stats();
+        return Arrays.asList(
+            new Metric<>("auth.principals.hit", stats.hitCount()),
+            new Metric<>("auth.principals.miss", stats.missCount()),
+            new Metric<>("auth.principals.size", principals.size()));
+    }
+}
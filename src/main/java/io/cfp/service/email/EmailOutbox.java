@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.email;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import io.cfp.entity.Event;
+import io.cfp.mapper.EmailOutboxMapper;
+import io.cfp.model.OutboxEmail;
+import io.cfp.model.OutboxStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable queue of emails to be sent, drained by the {@link OutboxWorker}
+ */
+@Service
+public class EmailOutbox {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final EmailOutboxMapper emails;
+
+    private final String provider;
+
+    @Autowired
+    public EmailOutbox(EmailOutboxMapper emails, @Value("${cfp.email.provider:sendgrid}") String provider) {
+        this.emails = emails;
+        this.provider = provider;
+    }
+
+    /**
+     * Enqueue an email for the current event. Joins the current transaction, so the email is only sent if it commits.
+     *
+     * @param personalization if not <code>null</code> and there is no copy, the email can be sent in a single call
+     *                        with others having the same subject and personalized content
+     */
+    public OutboxEmail enqueue(String replyTo, String to, String subject, String content, List<String> cc, List<String> bcc,
+                               Personalization personalization) {
+        Date now = new Date();
+        OutboxEmail email = new OutboxEmail()
+            .setEventId(Event.current())
+            .setProvider(provider)
+            .setReplyTo(replyTo)
+            .setRecipient(to)
+            .setCc(join(cc))
+            .setBcc(join(bcc))
+            .setSubject(subject)
+            .setContent(content)
+            .setNextAttempt(now)
+            .setAdded(now);
+        if (personalization != null && email.getCc() == null && email.getBcc() == null) {
+            email.setBatchKey(batchKey(replyTo, subject, personalization.getContent()))
+                .setBatchContent(personalization.getContent())
+                .setSubstitutions(toJson(personalization.getValues()));
+        }
+        emails.insert(email);
+        return email;
+    }
+
+    public List<OutboxStats> stats(String eventId) {
+        return emails.countByStatus(eventId);
+    }
+
+    private static String batchKey(String replyTo, String subject, String content) {
+        return Hashing.sha256().newHasher()
+            .putString(String.valueOf(replyTo), StandardCharsets.UTF_8).putChar('\n')
+            .putString(String.valueOf(subject), StandardCharsets.UTF_8).putChar('\n')
+            .putString(content, StandardCharsets.UTF_8)
+            .hash().toString();
+    }
+
+    private static String toJson(Map<String, String> values) {
+        try {
+            return JSON.writeValueAsString(values);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String join(List<String> addresses) {
+        return addresses == null || addresses.isEmpty() ? null : StringUtils.collectionToCommaDelimitedString(addresses);
+    }
+}
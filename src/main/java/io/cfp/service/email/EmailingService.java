@@ -20,10 +20,6 @@
 
 package io.cfp.service.email;
 
-import com.sendgrid.SendGrid;
-import com.sendgrid.SendGridException;
-import freemarker.template.Configuration;
-import freemarker.template.TemplateException;
 import io.cfp.dto.TalkAdmin;
 import io.cfp.dto.TalkUser;
 import io.cfp.dto.user.CospeakerProfil;
@@ -32,31 +28,19 @@ import io.cfp.entity.Event;
 import io.cfp.entity.Role;
 import io.cfp.entity.Talk;
 import io.cfp.entity.User;
-import io.cfp.repository.EventRepository;
 import io.cfp.repository.UserRepo;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.StringUtils;
-import org.yaml.snakeyaml.Yaml;
 
-import javax.annotation.PostConstruct;
 import java.io.File;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
-import java.text.MessageFormat;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Service
 public class EmailingService {
@@ -67,17 +51,10 @@ public class EmailingService {
     private UserRepo users;
 
     @Autowired
-    private EventRepository eventRepo;
+    private EmailOutbox outbox;
 
     @Autowired
-    @Qualifier("mailTemplate")
-    private Configuration freemarker;
-
-    @Value("${cfp.email.sendgrid.apikey}")
-    private String sendgridApiKey;
-
-    @Value("${cfp.app.hostname}")
-    private String hostname;
+    private MailRenderer renderer;
 
     @Value("${cfp.email.emailsender}")
     private String emailSender;
@@ -85,29 +62,9 @@ public class EmailingService {
     @Value("${cfp.email.send}")
     private boolean send;
 
-    private Map<String, Map<String, String>> subjects = new HashMap<>();
-
-    @PostConstruct
-    @SuppressWarnings("unchecked")
-    public void loadSubjects() throws IOException {
-        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
-        Resource[] yamls = resolver.getResources("classpath:mails/*/subjects.yml");
-        Pattern langPattern = Pattern.compile(".*/mails/([^/]+)/subjects\\.yml");
-
-        Yaml parser = new Yaml();
-        for (Resource yaml : yamls) {
-            Map<String, String> subs = (Map<String, String>) parser.load(yaml.getInputStream());
-            Matcher matcher = langPattern.matcher(yaml.getURL().getPath());
-            if (matcher.matches()) { //forced to call matches() to execute regex...
-                subjects.put(matcher.group(1), subs);
-            }
-        }
-    }
-
     /**
      * Send Confirmation of your session.
      */
-    @Async
     @Transactional
     public void sendConfirmed(String name, String email, String proposal, int id, Locale locale) {
         log.debug("Sending email confirmation e-mail to '{}'", email);
@@ -121,7 +78,6 @@ public class EmailingService {
         createAndSendEmail("confirmed.html", email, params, null, null, locale);
     }
 
-    @Async
     @Transactional
     public void sendConfirmed(io.cfp.model.User user, TalkUser talk, Locale locale) {
         log.debug("Sending email confirmation e-mail to '{}'", user.getEmail());
@@ -145,7 +101,6 @@ public class EmailingService {
      *            talk under review
      * @param locale
      */
-    @Async
     @Transactional
     public void sendNewCommentToSpeaker(User speaker, TalkAdmin talk, Locale locale) {
         log.debug("Sending new comment email to speaker '{}' for talk '{}'", speaker.getEmail(), talk.getName());
@@ -171,7 +126,6 @@ public class EmailingService {
      *            talk under review
      * @param locale
      */
-    @Async
     @Transactional
     public void sendNewCommentToAdmins(User speaker, TalkUser talk, Locale locale) {
         log.debug("Sending new comment email to admins for talk '{}'", talk.getName());
@@ -193,29 +147,17 @@ public class EmailingService {
      *  @param talk
      * @param locale
      */
-    @Async
     @Transactional
     public void sendNotSelectionned(Talk talk, Locale locale) {
         User user = talk.getUser();
 
         log.debug("Sending not selectionned e-mail to '{}'", user.getEmail());
 
-        List<String> cc = new ArrayList<>();
-        if (talk.getCospeakers() != null) {
-            for (User cospeaker : talk.getCospeakers()) {
-                cc.add(cospeaker.getEmail());
-            }
-        }
-
-        Map<String, Object> params = new HashMap<>();
-        params.put("name", user.getFirstname());
-        params.put("talk", talk.getName());
-        params.put("subject", getSubject("notSelectionned", locale));
+        Map<String, Object> params = selectionParams(talk, getSubject("notSelectionned", locale));
 
-        createAndSendEmail("notSelectionned.html", user.getEmail(), params, cc, null, locale);
+        createAndSendEmail("notSelectionned.html", user.getEmail(), params, cospeakers(talk), null, locale);
     }
 
-    @Async
     @Transactional
     public void sendPending(TalkUser talk, Locale locale) {
         UserProfil user = talk.getSpeaker();
@@ -237,69 +179,138 @@ public class EmailingService {
         createAndSendEmail("pending.html", user.getEmail(), params, cc, null, locale);
     }
 
-    @Async
     @Transactional
     public void sendSelectionned(Talk talk, Locale locale) {
         final User user = talk.getUser();
         log.debug("Sending selectionned e-mail to '{}'", user.getEmail());
 
-        List<String> cc = new ArrayList<>();
-        if (talk.getCospeakers() != null) {
-            for (User cospeakerProfil : talk.getCospeakers()) {
-                cc.add(cospeakerProfil.getEmail());
+        Map<String, Object> params = selectionParams(talk, getSubject("selectionned", locale));
+
+        createAndSendEmail("selectionned.html", user.getEmail(), params, cospeakers(talk), null, locale);
+    }
+
+    /**
+     * Notify the speakers of many talks of their selection or refusal, rendering all the emails of a template and
+     * language in a single pass
+     */
+    @Transactional
+    public void sendSelection(List<Talk> talks) {
+        Map<String, List<Talk>> byTemplate = new LinkedHashMap<>();
+        for (Talk talk : talks) {
+            byTemplate.computeIfAbsent(getTemplatePath(selectionTemplate(talk) + ".html", talk.getUser().getLocale()),
+                path -> new ArrayList<>()).add(talk);
+        }
+
+        for (Map.Entry<String, List<Talk>> group : byTemplate.entrySet()) {
+            String templatePath = group.getKey();
+            List<Talk> recipients = group.getValue();
+            log.debug("Sending {} e-mails [{}]", recipients.size(), templatePath);
+
+            Talk first = recipients.get(0);
+            String subject = getSubject(selectionTemplate(first), first.getUser().getLocale());
+            List<Map<String, Object>> models = new ArrayList<>(recipients.size());
+            for (Talk talk : recipients) {
+                models.add(selectionParams(talk, subject));
+            }
+            Set<String> recipientParams = new HashSet<>(models.get(0).keySet());
+            recipientParams.remove("subject");
+
+            List<String> contents = renderer.renderAll(templatePath, models);
+
+            Personalization.Extractor personalizer = null;
+            for (int i = 0; i < recipients.size(); i++) {
+                List<String> cc = cospeakers(recipients.get(i));
+                Personalization personalization = null;
+                if (cc.isEmpty()) {
+                    if (personalizer == null) {
+                        personalizer = personalizer(templatePath, models.get(i), recipientParams);
+                    }
+                    personalization = personalizer != null ? personalizer.extract(contents.get(i)) : null;
+                }
+                sendEmail(models.get(i).get("contactMail").toString(), recipients.get(i).getUser().getEmail(), subject,
+                    contents.get(i), cc, null, personalization);
             }
         }
+    }
 
+    private static String selectionTemplate(Talk talk) {
+        return talk.getState() == Talk.State.ACCEPTED ? "selectionned" : "notSelectionned";
+    }
+
+    private static Map<String, Object> selectionParams(Talk talk, String subject) {
         Map<String, Object> params = new HashMap<>();
-        params.put("name", user.getFirstname());
+        params.put("name", talk.getUser().getFirstname());
         params.put("talk", talk.getName());
-        params.put("subject", getSubject("selectionned", locale));
+        params.put("subject", subject);
+        return params;
+    }
 
-        createAndSendEmail("selectionned.html", user.getEmail(), params, cc, null, locale);
+    private static List<String> cospeakers(Talk talk) {
+        List<String> cc = new ArrayList<>();
+        if (talk.getCospeakers() != null) {
+            for (User cospeaker : talk.getCospeakers()) {
+                cc.add(cospeaker.getEmail());
+            }
+        }
+        return cc;
     }
 
     protected void createAndSendEmail(String template, String email, Map<String,Object> parameters, List<String> cc, List<String> bcc, Locale locale) {
         String templatePath = getTemplatePath(template, locale);
 
+        Set<String> recipientParams = new HashSet<>(parameters.keySet());
+        recipientParams.remove("subject");
+
         String content = processTemplate(templatePath, parameters);
         String subject = (String) parameters.get("subject");
 
-        sendEmail(parameters.get("contactMail").toString(), email, subject, content, cc, bcc);
+        Personalization personalization = null;
+        if ((cc == null || cc.isEmpty()) && (bcc == null || bcc.isEmpty())) {
+            Personalization.Extractor personalizer = personalizer(templatePath, parameters, recipientParams);
+            personalization = personalizer != null ? personalizer.extract(content) : null;
+        }
+
+        sendEmail(parameters.get("contactMail").toString(), email, subject, content, cc, bcc, personalization);
+    }
+
+    /**
+     * Render the template again with substitution tags in place of the recipient's own parameters, so that a
+     * provider can send the same content to many recipients at once
+     */
+    private Personalization.Extractor personalizer(String templatePath, Map<String, Object> parameters, Set<String> recipientParams) {
+        Map<String, Object> tagged = new HashMap<>(parameters);
+        Set<String> tags = new HashSet<>();
+        for (String param : recipientParams) {
+            if (parameters.get(param) instanceof String) {
+                tagged.put(param, Personalization.tag(param));
+                tags.add(param);
+            }
+        }
+        return Personalization.Extractor.compile(renderer.render(templatePath, tagged), tags);
     }
 
     protected String getTemplatePath(final String emailTemplate, final Locale locale) {
-    	String language = locale.getLanguage();
-    	if (!"fr".equals(language)) {
-    		language = "en";
-    	}
-        return language + "/" + emailTemplate;
+        return MailRenderer.language(locale) + "/" + emailTemplate;
     }
 
     protected String processTemplate(String templatePath, Map<String, Object> parameters) {
-
-        // adds global params
-        parameters.put("hostname", StringUtils.replace(hostname, "{{event}}", Event.current()));
-        Event curEvent = eventRepo.findOne(Event.current());
-        parameters.put("event", curEvent);
-        parameters.put("contactMail", curEvent.getContactMail() != null ? curEvent.getContactMail() : "contact@cfp.io");
-
-        StringWriter writer;
-        try {
-            freemarker.template.Template tpl = freemarker.getTemplate(templatePath);
-            writer = new StringWriter();
-            tpl.process(parameters, writer);
-        } catch (IOException e) {
-            log.error("Unable to find or parse the template [{}]", templatePath, e);
-            return null;
-        } catch (TemplateException e) {
-            log.error("Unable to process the template [{}]", templatePath, e);
-            return null;
-        }
-
-        return writer.toString();
+        return renderer.render(templatePath, parameters);
     }
 
+    /**
+     * Queue an email in the outbox, within the current transaction if any. It will be sent by the
+     * {@link OutboxWorker} once committed.
+     */
     public void sendEmail(String from, String to, String subject, String content, List<String> cc, List<String> bcc) {
+        sendEmail(from, to, subject, content, cc, bcc, null);
+    }
+
+    /**
+     * @param personalization content with substitution tags, for the email to be sent together with others
+     *                        rendered from the same template
+     */
+    public void sendEmail(String from, String to, String subject, String content, List<String> cc, List<String> bcc,
+                          Personalization personalization) {
         if (!send) {
             String fileName = saveLocally(content);
             log.warn("Mail [{}] to [{}] not sent as mail is disabled but can be found at [{}]", subject, to, fileName);
@@ -311,34 +322,9 @@ public class EmailingService {
             return;
         }
 
-        SendGrid sendgrid = new SendGrid(sendgridApiKey);
-
-        SendGrid.Email email = new SendGrid.Email();
-
-        email.setFrom(emailSender)
-            .setFromName("CFP.io")
-            .setReplyTo(from)
-            .addTo(to)
-            .setSubject(subject)
-            .setHtml(content);
-        if (cc != null) {
-            email.addCc(cc.toArray(new String[cc.size()]));
-        }
-        if (bcc != null) {
-            email.addBcc(bcc.toArray(new String[bcc.size()]));
-        }
-
-
-        try {
-            SendGrid.Response response = sendgrid.send(email);
-            log.debug("Sent e-mail to User '{}' with status {}", to, response.getStatus());
-        } catch (SendGridException e) {
-            log.warn("E-mail could not be sent to user '{}', exception is: {}", to, e.getMessage());
-        }
+        outbox.enqueue(from, to, subject, content, cc, bcc, personalization);
     }
 
-
-
     private String saveLocally(String content) {
         try {
             File tempFile = File.createTempFile("cfpio-", ".html");
@@ -351,17 +337,6 @@ public class EmailingService {
     }
 
     private String getSubject(String template, Locale locale, Object... args) {
-        String language = locale.getLanguage();
-        if (!"fr".equals(language)) {
-            language = "en";
-        }
-
-        String subject = subjects.get(language).get(template);
-
-        if (subject == null) {
-            return null;
-        }
-        MessageFormat msg = new MessageFormat(subject);
-        return msg.format(args);
+        return renderer.subject(template, locale, args);
     }
 }
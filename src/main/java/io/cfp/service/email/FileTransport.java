@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.email;
+
+import io.cfp.model.OutboxEmail;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write emails as HTML files in <code>cfp.email.file.directory</code> instead of sending them, for development and
+ * load testing
+ */
+@Component
+public class FileTransport implements MailTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileTransport.class);
+
+    private final File directory;
+
+    @Autowired
+    public FileTransport(@Value("${cfp.email.file.directory:${java.io.tmpdir}/cfpio-mails}") String directory) {
+        this.directory = new File(directory);
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public Map<Integer, Exception> send(List<OutboxEmail> emails) {
+        Map<Integer, Exception> failures = new HashMap<>();
+        for (OutboxEmail email : emails) {
+            File file = new File(directory, "cfpio-" + email.getId() + ".html");
+            try {
+                FileUtils.writeStringToFile(file, header(email) + email.getContent(), StandardCharsets.UTF_8);
+                LOGGER.info("Mail [{}] to [{}] written to [{}]", email.getSubject(), email.getRecipient(), file.getAbsolutePath());
+            } catch (IOException e) {
+                failures.put(email.getId(), e);
+            }
+        }
+        return failures;
+    }
+
+    private static String header(OutboxEmail email) {
+        StringBuilder header = new StringBuilder("<!--\n");
+        header.append("Reply-To: ").append(email.getReplyTo()).append('\n');
+        header.append("To: ").append(email.getRecipient()).append('\n');
+        if (StringUtils.hasText(email.getCc())) {
+            header.append("Cc: ").append(email.getCc()).append('\n');
+        }
+        if (StringUtils.hasText(email.getBcc())) {
+            header.append("Bcc: ").append(email.getBcc()).append('\n');
+        }
+        header.append("Subject: ").append(email.getSubject()).append('\n');
+        return header.append("-->\n").toString();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.email;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import io.cfp.entity.Event;
+import io.cfp.multitenant.TenantRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.yaml.snakeyaml.Yaml;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Render emails from templates and subjects compiled once at startup.
+ * <p>
+ * The global part of the model (event, hostname, contact) is built once per event, and rebuilt only when the
+ * {@link TenantRegistry} loads a new version of the event.
+ */
+@Component
+public class MailRenderer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MailRenderer.class);
+
+    private static final Pattern MAIL_PATH = Pattern.compile(".*/mails/([^/]+)/([^/]+)$");
+
+    private final Configuration freemarker;
+
+    private final TenantRegistry tenants;
+
+    private final String hostname;
+
+    private final Map<String, Map<String, MessageFormat>> subjects = new HashMap<>();
+
+    private final Map<String, CompiledTemplate> templates = new ConcurrentHashMap<>();
+
+    private final Map<String, Globals> globals = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MailRenderer(@Qualifier("mailTemplate") Configuration freemarker, TenantRegistry tenants,
+                        @Value("${cfp.app.hostname}") String hostname) {
+        this.freemarker = freemarker;
+        this.tenants = tenants;
+        this.hostname = hostname;
+    }
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void compile() throws IOException {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+
+        Yaml parser = new Yaml();
+        for (Resource yaml : resolver.getResources("classpath:mails/*/subjects.yml")) {
+            Matcher matcher = MAIL_PATH.matcher(yaml.getURL().getPath());
+            if (matcher.matches()) {
+                Locale locale = Locale.forLanguageTag(matcher.group(1));
+                Map<String, MessageFormat> formats = new HashMap<>();
+                for (Map.Entry<String, String> subject : ((Map<String, String>) parser.load(yaml.getInputStream())).entrySet()) {
+                    formats.put(subject.getKey(), new MessageFormat(subject.getValue(), locale));
+                }
+                subjects.put(matcher.group(1), formats);
+            }
+        }
+
+        for (Resource html : resolver.getResources("classpath:mails/*/*.html")) {
+            Matcher matcher = MAIL_PATH.matcher(html.getURL().getPath());
+            if (matcher.matches()) {
+                template(matcher.group(1) + "/" + matcher.group(2));
+            }
+        }
+        LOGGER.debug("Compiled {} mail templates", templates.size());
+    }
+
+    /**
+     * @return the language of the templates for this locale
+     */
+    static String language(Locale locale) {
+        String language = locale.getLanguage();
+        return "fr".equals(language) ? language : "en";
+    }
+
+    /**
+     * @return the subject of a template, with its arguments, or <code>null</code> if it has none
+     */
+    public String subject(String template, Locale locale, Object... args) {
+        MessageFormat format = subjects.getOrDefault(language(locale), Collections.emptyMap()).get(template);
+        if (format == null) {
+            return null;
+        }
+        // formats aren't thread safe, but cloning is much cheaper than parsing
+        return ((MessageFormat) format.clone()).format(args);
+    }
+
+    /**
+     * @return the model shared by all the emails of the current event
+     */
+    public Map<String, Object> globals() {
+        String eventId = Event.current();
+        io.cfp.model.Event event = tenants.get(eventId);
+        Globals cached = globals.get(eventId);
+        if (cached == null || cached.event != event) {
+            cached = new Globals(eventId, event);
+            globals.put(eventId, cached);
+        }
+        return cached.model;
+    }
+
+    /**
+     * Render a template, adding the global parameters to the model
+     *
+     * @return <code>null</code> if the template can't be found or rendered
+     */
+    public String render(String templatePath, Map<String, Object> model) {
+        model.putAll(globals());
+        CompiledTemplate template = template(templatePath);
+        if (template == null) {
+            return null;
+        }
+        return template.render(model, new StringWriter(template.size));
+    }
+
+    /**
+     * Render a template for many recipients, reusing the template, the global parameters and the output buffer
+     *
+     * @return the content for each model, <code>null</code> for those which can't be rendered
+     */
+    public List<String> renderAll(String templatePath, List<Map<String, Object>> models) {
+        List<String> contents = new ArrayList<>(models.size());
+        CompiledTemplate template = template(templatePath);
+        if (template == null) {
+            models.forEach(model -> contents.add(null));
+            return contents;
+        }
+
+        Map<String, Object> shared = globals();
+        StringWriter writer = new StringWriter(template.size);
+        for (Map<String, Object> model : models) {
+            model.putAll(shared);
+            writer.getBuffer().setLength(0);
+            contents.add(template.render(model, writer));
+        }
+        return contents;
+    }
+
+    private CompiledTemplate template(String templatePath) {
+        CompiledTemplate template = templates.get(templatePath);
+        if (template == null) {
+            try {
+                template = new CompiledTemplate(freemarker.getTemplate(templatePath));
+                templates.put(templatePath, template);
+            } catch (IOException e) {
+                LOGGER.error("Unable to find or parse the template [{}]", templatePath, e);
+            }
+        }
+        return template;
+    }
+
+    private static class CompiledTemplate {
+
+        private final Template template;
+
+        /** size of the largest email rendered so far, to avoid growing the buffer */
+        private volatile int size = 16 * 1024;
+
+        private CompiledTemplate(Template template) {
+            this.template = template;
+        }
+
+        private String render(Map<String, Object> model, StringWriter writer) {
+            try {
+                template.process(model, writer);
+            } catch (IOException | TemplateException e) {
+                LOGGER.error("Unable to process the template [{}]", template.getName(), e);
+                return null;
+            }
+            int length = writer.getBuffer().length();
+            if (length > size) {
+                size = length;
+            }
+            return writer.toString();
+        }
+    }
+
+    private class Globals {
+
+        private final io.cfp.model.Event event;
+
+        private final Map<String, Object> model;
+
+        private Globals(String eventId, io.cfp.model.Event event) {
+            this.event = event;
+
+            Map<String, Object> model = new HashMap<>();
+            model.put("hostname", StringUtils.replace(hostname, "{{event}}", eventId));
+            model.put("event", event);
+            model.put("contactMail", event != null && event.getContactMail() != null ? event.getContactMail() : "contact@cfp.io");
+            this.model = Collections.unmodifiableMap(model);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.email;
+
+import io.cfp.model.OutboxEmail;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A way to actually send emails from the {@link EmailOutbox}, selected by <code>cfp.email.provider</code>
+ */
+public interface MailTransport {
+
+    /**
+     * @return the provider name, as stored with outbox emails
+     */
+    String getName();
+
+    /**
+     * Send emails, with as few calls as possible.
+     *
+     * @return the emails which could not be sent, by id, to be retried later
+     */
+    Map<Integer, Exception> send(List<OutboxEmail> emails);
+}
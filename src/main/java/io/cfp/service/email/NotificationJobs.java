@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.email;
+
+import com.google.common.util.concurrent.RateLimiter;
+import io.cfp.domain.exception.BusyException;
+import io.cfp.entity.Event;
+import io.cfp.entity.Talk;
+import io.cfp.mapper.NotificationJobMapper;
+import io.cfp.model.NotificationJob;
+import io.cfp.repository.TalkRepo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.cfp.model.NotificationJob.Status.*;
+
+/**
+ * Notify speakers of the selection in the background, at <code>cfp.notifications.rate</code> emails per second.
+ * <p>
+ * Talks are notified by increasing id, in chunks of <code>cfp.notifications.chunk</code> rendered in a single pass.
+ * The notifications of a chunk are enqueued in the same transaction as the job progress, so a job interrupted by a
+ * restart is resumed from the next chunk without notifying anyone twice. Jobs run on their own
+ * <code>cfp.notifications.threads</code> threads, a job started while they are all busy is resumed the same way.
+ * An event has at most one job running, so that a retried request doesn't notify every speaker twice.
+ */
+@Service
+public class NotificationJobs {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NotificationJobs.class);
+
+    private final NotificationJobMapper jobs;
+
+    private final TalkRepo talks;
+
+    private final EmailingService emailing;
+
+    private final TransactionTemplate transaction;
+
+    private final TaskExecutor executor;
+
+    private final RateLimiter limiter;
+
+    private final long staleAfter;
+
+    private final int chunkSize;
+
+    private final Set<Integer> running = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public NotificationJobs(NotificationJobMapper jobs, TalkRepo talks, EmailingService emailing,
+                            PlatformTransactionManager transactionManager,
+                            @Qualifier("notificationExecutor") TaskExecutor executor,
+                            @Value("${cfp.notifications.rate:2}") double rate,
+                            @Value("${cfp.notifications.stale-after:300000}") long staleAfter,
+                            @Value("${cfp.notifications.chunk:50}") int chunkSize) {
+        this.jobs = jobs;
+        this.talks = talks;
+        this.emailing = emailing;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.executor = executor;
+        this.limiter = RateLimiter.create(rate);
+        this.staleAfter = staleAfter;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @throws BusyException if a job of the event is still running
+     */
+    public NotificationJob start(String eventId, NotificationJob.Filter filter) {
+        Date now = new Date();
+        NotificationJob job = new NotificationJob()
+            .setEventId(eventId)
+            .setFilter(filter)
+            .setStatus(RUNNING)
+            .setAdded(now)
+            .setUpdated(now);
+        job.setTotal(talks(job).size());
+        try {
+            jobs.insert(job);
+        } catch (DuplicateKeyException e) {
+            throw new BusyException("Speakers of event '" + eventId + "' are already being notified, try again later");
+        }
+
+        submit(job);
+        return job;
+    }
+
+    public NotificationJob get(int id, String eventId) {
+        return jobs.findById(id, eventId);
+    }
+
+    /**
+     * @return <code>false</code> if the job isn't running
+     */
+    public boolean cancel(int id, String eventId) {
+        return jobs.cancel(id, eventId, new Date()) == 1;
+    }
+
+    /**
+     * Resume jobs left running by a stopped instance
+     */
+    @Scheduled(fixedDelayString = "${cfp.notifications.resume:60000}", initialDelayString = "${cfp.notifications.resume:60000}")
+    public void resume() {
+        Date now = new Date();
+        for (NotificationJob job : jobs.findStale(new Date(now.getTime() - staleAfter))) {
+            if (!running.contains(job.getId()) && jobs.claim(job.getId(), job.getUpdated(), now) == 1) {
+                LOGGER.info("Resuming notification job {} of event '{}' after talk {}", job.getId(), job.getEventId(), job.getLastTalk());
+                submit(job);
+            }
+        }
+    }
+
+    private void submit(NotificationJob job) {
+        running.add(job.getId());
+        try {
+            executor.execute(() -> {
+                try {
+                    run(job);
+                } finally {
+                    running.remove(job.getId());
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // left running, so it is resumed once stale
+            LOGGER.warn("Too many notification jobs running, job {} of event '{}' will be resumed later", job.getId(), job.getEventId());
+            running.remove(job.getId());
+        }
+    }
+
+    void run(NotificationJob job) {
+        // pooled threads must not keep the event, their later writes would bump its version
+        String previousEvent = Event.peekCurrent();
+        Event.setCurrent(job.getEventId());
+        try {
+            List<Talk> pending = new ArrayList<>();
+            for (Talk talk : talks(job)) {
+                if (talk.getId() > job.getLastTalk()) {
+                    pending.add(talk);
+                }
+            }
+            for (int from = 0; from < pending.size(); from += chunkSize) {
+                List<Talk> chunk = pending.subList(from, Math.min(from + chunkSize, pending.size()));
+                int lastTalk = chunk.get(chunk.size() - 1).getId();
+                limiter.acquire(chunk.size());
+                boolean notified = transaction.execute(status -> {
+                    if (jobs.progress(job.getId(), lastTalk, chunk.size(), new Date()) == 0) {
+                        return false;
+                    }
+                    emailing.sendSelection(chunk);
+                    return true;
+                });
+                if (!notified) {
+                    LOGGER.info("Notification job {} of event '{}' cancelled", job.getId(), job.getEventId());
+                    return;
+                }
+            }
+            jobs.finish(job.getId(), DONE, new Date());
+        } catch (RuntimeException e) {
+            LOGGER.error("Notification job {} of event '{}' failed", job.getId(), job.getEventId(), e);
+            jobs.finish(job.getId(), FAILED, new Date());
+        } finally {
+            if (previousEvent != null) {
+                Event.setCurrent(previousEvent);
+            } else {
+                Event.unsetCurrent();
+            }
+        }
+    }
+
+    /**
+     * Talks to notify, by increasing id
+     */
+    private List<Talk> talks(NotificationJob job) {
+        Set<Talk.State> states;
+        switch (job.getFilter()) {
+            case ACCEPTED:
+                states = Collections.singleton(Talk.State.ACCEPTED);
+                break;
+            case REFUSED:
+                states = Collections.singleton(Talk.State.REFUSED);
+                break;
+            default:
+                states = EnumSet.of(Talk.State.ACCEPTED, Talk.State.REFUSED);
+        }
+        return talks.findByEventIdAndStatesFetch(job.getEventId(), states);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.email;
+
+import com.google.common.util.concurrent.RateLimiter;
+import io.cfp.mapper.EmailOutboxMapper;
+import io.cfp.model.OutboxEmail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Drain the {@link EmailOutbox} in batches, sending emails from a pool of worker threads.
+ * <p>
+ * Claimed emails are grouped by provider and handed to its {@link MailTransport} in chunks of
+ * <code>cfp.outbox.chunk</code>, sorted so that emails which can be sent together are next to each other.
+ * Emails which fail are retried with an exponential backoff, until <code>cfp.outbox.max-attempts</code>.
+ * Each provider is rate limited to <code>cfp.outbox.rate.{provider}</code> emails per second.
+ */
+@Component
+public class OutboxWorker implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxWorker.class);
+
+    private final EmailOutboxMapper emails;
+
+    private final Map<String, MailTransport> transports = new HashMap<>();
+
+    private final Environment env;
+
+    private final ThreadPoolTaskExecutor workers = new ThreadPoolTaskExecutor();
+
+    private final Map<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+    private final int batchSize;
+
+    private final int chunkSize;
+
+    private final int maxAttempts;
+
+    private final long backoff;
+
+    private final long maxBackoff;
+
+    private final long lease;
+
+    @Autowired
+    public OutboxWorker(EmailOutboxMapper emails, List<MailTransport> transports, Environment env) {
+        this.emails = emails;
+        for (MailTransport transport : transports) {
+            this.transports.put(transport.getName(), transport);
+        }
+        this.env = env;
+        this.batchSize = env.getProperty("cfp.outbox.batch-size", Integer.class, 100);
+        this.chunkSize = env.getProperty("cfp.outbox.chunk", Integer.class, 100);
+        this.maxAttempts = env.getProperty("cfp.outbox.max-attempts", Integer.class, 8);
+        this.backoff = env.getProperty("cfp.outbox.backoff", Long.class, 30_000L);
+        this.maxBackoff = env.getProperty("cfp.outbox.max-backoff", Long.class, 3_600_000L);
+        this.lease = env.getProperty("cfp.outbox.lease", Long.class, 300_000L);
+
+        int size = env.getProperty("cfp.outbox.workers", Integer.class, 4);
+        workers.setThreadNamePrefix("cfp-outbox-");
+        workers.setCorePoolSize(size);
+        workers.setMaxPoolSize(size);
+        workers.initialize();
+    }
+
+    @Scheduled(fixedDelayString = "${cfp.outbox.poll:5000}", initialDelayString = "${cfp.outbox.poll:5000}")
+    public void drain() {
+        List<OutboxEmail> batch;
+        do {
+            Date now = new Date();
+            batch = emails.findDue(now, batchSize);
+
+            Map<String, List<OutboxEmail>> claimed = new HashMap<>();
+            for (OutboxEmail email : batch) {
+                if (emails.claim(email.getId(), email.getNextAttempt(), new Date(now.getTime() + lease)) == 1) {
+                    claimed.computeIfAbsent(email.getProvider(), p -> new ArrayList<>()).add(email);
+                }
+            }
+
+            List<Future<?>> sending = new ArrayList<>();
+            for (List<OutboxEmail> provided : claimed.values()) {
+                provided.sort(Comparator.comparing(OutboxEmail::getBatchKey, Comparator.nullsLast(Comparator.naturalOrder())));
+                for (int from = 0; from < provided.size(); from += chunkSize) {
+                    List<OutboxEmail> chunk = provided.subList(from, Math.min(from + chunkSize, provided.size()));
+                    sending.add(workers.submit(() -> send(chunk)));
+                }
+            }
+            for (Future<?> future : sending) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    LOGGER.error("Unexpected failure while sending emails", e.getCause());
+                }
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    /**
+     * Send emails of the same provider
+     */
+    void send(List<OutboxEmail> chunk) {
+        String provider = chunk.get(0).getProvider();
+        limiter(provider).acquire(chunk.size());
+
+        Map<Integer, Exception> failures;
+        MailTransport transport = transports.get(provider);
+        if (transport == null) {
+            IllegalStateException unknown = new IllegalStateException("Unknown email provider " + provider);
+            failures = new HashMap<>();
+            chunk.forEach(email -> failures.put(email.getId(), unknown));
+        } else {
+            failures = transport.send(chunk);
+        }
+
+        Date now = new Date();
+        for (OutboxEmail email : chunk) {
+            Exception failure = failures.get(email.getId());
+            if (failure == null) {
+                emails.markSent(email.getId(), now);
+            } else {
+                failed(email, failure);
+            }
+        }
+    }
+
+    private void failed(OutboxEmail email, Exception e) {
+        MDC.put("event.id", email.getEventId());
+        try {
+            int attempts = email.getAttempts() + 1;
+            String error = e.getMessage() != null && e.getMessage().length() > 1000 ? e.getMessage().substring(0, 1000) : e.getMessage();
+            if (attempts >= maxAttempts) {
+                LOGGER.error("Giving up sending e-mail {} to '{}' after {} attempts: {}", email.getId(), email.getRecipient(), attempts, error);
+                emails.markFailed(email.getId(), attempts, error);
+            } else {
+                long delay = Math.min(maxBackoff, backoff << Math.min(attempts - 1, 30));
+                LOGGER.warn("E-mail {} could not be sent to '{}', retrying in {}s: {}", email.getId(), email.getRecipient(), delay / 1000, error);
+                emails.markRetry(email.getId(), attempts, new Date(System.currentTimeMillis() + delay), error);
+            }
+        } finally {
+            MDC.remove("event.id");
+        }
+    }
+
+    private RateLimiter limiter(String provider) {
+        return limiters.computeIfAbsent(provider, p -> {
+            double rate = env.getProperty("cfp.outbox.rate." + p, Double.class,
+                env.getProperty("cfp.outbox.rate", Double.class, 10d));
+            return RateLimiter.create(rate);
+        });
+    }
+
+    @Override
+    public void destroy() {
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.email;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The content of an email as rendered with substitution tags in place of the recipient's own values, with those
+ * values. Emails sharing the same tagged content can be sent by a provider in a single multi-recipient call.
+ */
+public class Personalization {
+
+    private final String content;
+
+    private final Map<String, String> values;
+
+    Personalization(String content, Map<String, String> values) {
+        this.content = content;
+        this.values = values;
+    }
+
+    /**
+     * @return the content with a substitution tag per value
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return the values of this recipient, by substitution tag
+     */
+    public Map<String, String> getValues() {
+        return values;
+    }
+
+    static String tag(String param) {
+        return "[%" + param + "%]";
+    }
+
+    /**
+     * Find the values of the tags by matching the tagged content against the actual content, as rendered values may
+     * have been escaped
+     *
+     * @return <code>null</code> if values can't be found unambiguously
+     */
+    static Personalization extract(String tagged, String content, Collection<String> params) {
+        Extractor extractor = Extractor.compile(tagged, params);
+        return extractor != null ? extractor.extract(content) : null;
+    }
+
+    /**
+     * A tagged content compiled once, to extract the values of many recipients rendered from the same template
+     */
+    static class Extractor {
+
+        private final String tagged;
+
+        private final List<String> tags;
+
+        private final Pattern pattern;
+
+        private Extractor(String tagged, List<String> tags, Pattern pattern) {
+            this.tagged = tagged;
+            this.tags = tags;
+            this.pattern = pattern;
+        }
+
+        /**
+         * @return <code>null</code> if there is no tag in the content
+         */
+        static Extractor compile(String tagged, Collection<String> params) {
+            if (tagged == null) {
+                return null;
+            }
+
+            List<String> tags = new ArrayList<>();
+            StringBuilder regex = new StringBuilder();
+            Matcher matcher = tagPattern(params).matcher(tagged);
+            int last = 0;
+            while (matcher.find()) {
+                regex.append(Pattern.quote(tagged.substring(last, matcher.start()))).append("(.*?)");
+                tags.add(matcher.group());
+                last = matcher.end();
+            }
+            if (tags.isEmpty()) {
+                return null;
+            }
+            regex.append(Pattern.quote(tagged.substring(last)));
+            return new Extractor(tagged, tags, Pattern.compile(regex.toString(), Pattern.DOTALL));
+        }
+
+        /**
+         * @return <code>null</code> if values can't be found unambiguously
+         */
+        Personalization extract(String content) {
+            if (content == null) {
+                return null;
+            }
+            Matcher values = pattern.matcher(content);
+            if (!values.matches()) {
+                return null;
+            }
+            Map<String, String> byTag = new LinkedHashMap<>();
+            for (int i = 0; i < tags.size(); i++) {
+                String previous = byTag.put(tags.get(i), values.group(i + 1));
+                if (previous != null && !previous.equals(values.group(i + 1))) {
+                    return null;
+                }
+            }
+
+            Personalization personalization = new Personalization(tagged, byTag);
+            return content.equals(personalization.apply()) ? personalization : null;
+        }
+    }
+
+    /**
+     * @return the content for this recipient
+     */
+    String apply() {
+        String result = content;
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            result = result.replace(value.getKey(), value.getValue());
+        }
+        return result;
+    }
+
+    private static Pattern tagPattern(Collection<String> params) {
+        StringBuilder alternatives = new StringBuilder();
+        for (String param : params) {
+            if (alternatives.length() > 0) {
+                alternatives.append('|');
+            }
+            alternatives.append(Pattern.quote(tag(param)));
+        }
+        return Pattern.compile(alternatives.toString());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.email;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sendgrid.SendGrid;
+import com.sendgrid.SendGridException;
+import io.cfp.model.OutboxEmail;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Send emails with the SendGrid web API, over a pool of kept-alive connections.
+ * <p>
+ * Emails sharing the same {@link OutboxEmail#getBatchKey() batch key} are sent in a single call, up to 1000
+ * recipients, with their own values as SMTP API substitutions.
+ */
+@Component
+public class SendGridTransport implements MailTransport, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SendGridTransport.class);
+
+    /** SendGrid's limit of recipients per SMTP API header */
+    static final int MAX_RECIPIENTS = 1000;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final CloseableHttpClient client;
+
+    private final SendGrid sendgrid;
+
+    private final String emailSender;
+
+    @Autowired
+    public SendGridTransport(@Value("${cfp.email.sendgrid.apikey}") String apiKey,
+                             @Value("${cfp.email.sendgrid.url:}") String url,
+                             @Value("${cfp.email.sendgrid.connections:20}") int connections,
+                             @Value("${cfp.email.emailsender}") String emailSender) {
+        PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+        pool.setMaxTotal(connections);
+        pool.setDefaultMaxPerRoute(connections);
+        this.client = HttpClientBuilder.create()
+            .setConnectionManager(pool)
+            .setUserAgent("sendgrid/" + new SendGrid(apiKey).getVersion() + ";java")
+            .build();
+        this.sendgrid = new SendGrid(apiKey).setClient(client);
+        if (StringUtils.hasText(url)) {
+            sendgrid.setUrl(url);
+        }
+        this.emailSender = emailSender;
+    }
+
+    @Override
+    public String getName() {
+        return "sendgrid";
+    }
+
+    @Override
+    public Map<Integer, Exception> send(List<OutboxEmail> emails) {
+        Map<Integer, Exception> failures = new HashMap<>();
+        for (List<OutboxEmail> batch : batches(emails)) {
+            try {
+                if (batch.size() == 1) {
+                    send(single(batch.get(0)));
+                } else {
+                    send(personalized(batch));
+                }
+            } catch (Exception e) {
+                for (OutboxEmail email : batch) {
+                    failures.put(email.getId(), e);
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Group consecutive emails with the same batch key
+     */
+    static List<List<OutboxEmail>> batches(List<OutboxEmail> emails) {
+        List<List<OutboxEmail>> batches = new ArrayList<>();
+        List<OutboxEmail> current = null;
+        for (OutboxEmail email : emails) {
+            if (current == null || email.getBatchKey() == null || current.size() == MAX_RECIPIENTS
+                || !Objects.equals(email.getBatchKey(), current.get(0).getBatchKey())) {
+                current = new ArrayList<>();
+                batches.add(current);
+            }
+            current.add(email);
+        }
+        return batches;
+    }
+
+    private SendGrid.Email single(OutboxEmail mail) {
+        SendGrid.Email email = new SendGrid.Email()
+            .setFrom(emailSender)
+            .setFromName("CFP.io")
+            .setReplyTo(mail.getReplyTo())
+            .addTo(mail.getRecipient())
+            .setSubject(mail.getSubject())
+            .setHtml(mail.getContent());
+        if (mail.getCc() != null) {
+            email.addCc(StringUtils.commaDelimitedListToStringArray(mail.getCc()));
+        }
+        if (mail.getBcc() != null) {
+            email.addBcc(StringUtils.commaDelimitedListToStringArray(mail.getBcc()));
+        }
+        return email;
+    }
+
+    private SendGrid.Email personalized(List<OutboxEmail> batch) throws IOException {
+        OutboxEmail first = batch.get(0);
+        SendGrid.Email email = new SendGrid.Email()
+            .setFrom(emailSender)
+            .setFromName("CFP.io")
+            .setReplyTo(first.getReplyTo())
+            .setSubject(first.getSubject())
+            .setHtml(first.getBatchContent());
+
+        Map<String, String[]> substitutions = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxEmail mail = batch.get(i);
+            email.addSmtpApiTo(mail.getRecipient());
+            Map<String, String> values = JSON.readValue(mail.getSubstitutions(), new TypeReference<Map<String, String>>() {});
+            for (Map.Entry<String, String> value : values.entrySet()) {
+                substitutions.computeIfAbsent(value.getKey(), tag -> new String[batch.size()])[i] = value.getValue();
+            }
+        }
+        for (Map.Entry<String, String[]> substitution : substitutions.entrySet()) {
+            email.addSubstitution(substitution.getKey(), substitution.getValue());
+        }
+        return email;
+    }
+
+    private void send(SendGrid.Email email) throws SendGridException {
+        SendGrid.Response response = sendgrid.send(email);
+        if (!response.getStatus()) {
+            throw new SendGridException(new IOException(response.getCode() + " " + response.getMessage()));
+        }
+        LOGGER.debug("Sent e-mail '{}' with status {}", email.getSubject(), response.getCode());
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        client.close();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.email;
+
+import io.cfp.model.OutboxEmail;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Send emails to the SMTP server configured with <code>spring.mail.*</code>, all the emails of a chunk over a
+ * single connection
+ */
+@Component
+public class SmtpTransport implements MailTransport {
+
+    private final ObjectProvider<JavaMailSender> mailSender;
+
+    private final String emailSender;
+
+    @Autowired
+    public SmtpTransport(ObjectProvider<JavaMailSender> mailSender, @Value("${cfp.email.emailsender}") String emailSender) {
+        this.mailSender = mailSender;
+        this.emailSender = emailSender;
+    }
+
+    @Override
+    public String getName() {
+        return "smtp";
+    }
+
+    @Override
+    public Map<Integer, Exception> send(List<OutboxEmail> emails) {
+        Map<Integer, Exception> failures = new HashMap<>();
+        JavaMailSender sender = mailSender.getIfAvailable();
+        if (sender == null) {
+            IllegalStateException missing = new IllegalStateException("No SMTP server configured with spring.mail.host");
+            emails.forEach(email -> failures.put(email.getId(), missing));
+            return failures;
+        }
+
+        List<MimeMessage> messages = new ArrayList<>();
+        Map<MimeMessage, Integer> ids = new HashMap<>();
+        for (OutboxEmail email : emails) {
+            try {
+                MimeMessage message = message(sender, email);
+                messages.add(message);
+                ids.put(message, email.getId());
+            } catch (MessagingException | UnsupportedEncodingException e) {
+                failures.put(email.getId(), e);
+            }
+        }
+        if (messages.isEmpty()) {
+            return failures;
+        }
+
+        try {
+            sender.send(messages.toArray(new MimeMessage[messages.size()]));
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                ids.values().forEach(id -> failures.put(id, e));
+            }
+            e.getFailedMessages().forEach((message, cause) -> failures.put(ids.get(message), cause));
+        } catch (MailException e) {
+            ids.values().forEach(id -> failures.put(id, e));
+        }
+        return failures;
+    }
+
+    private MimeMessage message(JavaMailSender sender, OutboxEmail email) throws MessagingException, UnsupportedEncodingException {
+        MimeMessage message = sender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, StandardCharsets.UTF_8.name());
+        helper.setFrom(emailSender, "CFP.io");
+        if (email.getReplyTo() != null) {
+            helper.setReplyTo(email.getReplyTo());
+        }
+        helper.setTo(email.getRecipient());
+        if (email.getCc() != null) {
+            helper.setCc(StringUtils.commaDelimitedListToStringArray(email.getCc()));
+        }
+        if (email.getBcc() != null) {
+            helper.setBcc(StringUtils.commaDelimitedListToStringArray(email.getBcc()));
+        }
+        helper.setSubject(email.getSubject());
+        helper.setText(email.getContent(), true);
+        return message;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.schedule;
+
+import java.util.function.Consumer;
+
+/**
+ * AVL tree of half-open intervals <code>[start, end)</code> ordered by start then id, each node keeping the largest
+ * end of its subtree so that overlapping intervals are found in O(log n + matches).
+ * <p>
+ * Not thread safe.
+ */
+final class IntervalTree<T> {
+
+    private Node<T> root;
+
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    void add(long start, long end, int id, T value) {
+        root = add(root, new Node<>(start, end, id, value));
+        size++;
+    }
+
+    /**
+     * @return if an interval with this start and id was removed
+     */
+    boolean remove(long start, int id) {
+        int before = size;
+        root = remove(root, start, id);
+        return size < before;
+    }
+
+    /**
+     * Calls <code>found</code> with the value of each interval overlapping <code>[start, end)</code>
+     */
+    void overlapping(long start, long end, Consumer<T> found) {
+        overlapping(root, start, end, found);
+    }
+
+    private static <T> void overlapping(Node<T> node, long start, long end, Consumer<T> found) {
+        if (node == null || node.maxEnd <= start) {
+            return;
+        }
+        overlapping(node.left, start, end, found);
+        if (node.start >= end) {
+            // the right subtree starts even later
+            return;
+        }
+        if (node.end > start) {
+            found.accept(node.value);
+        }
+        overlapping(node.right, start, end, found);
+    }
+
+    private static <T> Node<T> add(Node<T> node, Node<T> added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.start, added.id, node) < 0) {
+            node.left = add(node.left, added);
+        } else {
+            node.right = add(node.right, added);
+        }
+        return balance(node);
+    }
+
+    private Node<T> remove(Node<T> node, long start, int id) {
+        if (node == null) {
+            return null;
+        }
+        int compared = compare(start, id, node);
+        if (compared < 0) {
+            node.left = remove(node.left, start, id);
+        } else if (compared > 0) {
+            node.right = remove(node.right, start, id);
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            Node<T> next = node.right;
+            while (next.left != null) {
+                next = next.left;
+            }
+            next.right = removeFirst(node.right);
+            next.left = node.left;
+            return balance(next);
+        }
+        return balance(node);
+    }
+
+    private static <T> Node<T> removeFirst(Node<T> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeFirst(node.left);
+        return balance(node);
+    }
+
+    private static int compare(long start, int id, Node<?> node) {
+        int compared = Long.compare(start, node.start);
+        return compared != 0 ? compared : Integer.compare(id, node.id);
+    }
+
+    private static <T> Node<T> balance(Node<T> node) {
+        node.update();
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static <T> Node<T> rotateRight(Node<T> node) {
+        Node<T> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        left.update();
+        return left;
+    }
+
+    private static <T> Node<T> rotateLeft(Node<T> node) {
+        Node<T> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        right.update();
+        return right;
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static final class Node<T> {
+
+        private final long start;
+
+        private final long end;
+
+        private final int id;
+
+        private final T value;
+
+        private long maxEnd;
+
+        private int height = 1;
+
+        private Node<T> left;
+
+        private Node<T> right;
+
+        private Node(long start, long end, int id, T value) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.value = value;
+            this.maxEnd = end;
+        }
+
+        private void update() {
+            height = 1 + Math.max(height(left), height(right));
+            maxEnd = end;
+            if (left != null && left.maxEnd > maxEnd) {
+                maxEnd = left.maxEnd;
+            }
+            if (right != null && right.maxEnd > maxEnd) {
+                maxEnd = right.maxEnd;
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.schedule;
+
+import io.cfp.dto.ScheduleChanges;
+import io.cfp.entity.Talk;
+import io.cfp.repository.TalkRepo;
+import io.cfp.service.version.EventVersionService;
+import io.cfp.service.version.EventVersionService.Scope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Compact log of schedule changes: one row per talk holding the {@link Scope#SCHEDULE schedule version} of its last
+ * change, so clients only fetch the talks changed since the version they hold.
+ * <p>
+ * Writes which add a talk to the schedule, move it or remove it must call {@link #record(String, Collection)} within
+ * their transaction, as must writes to the rooms, formats, tracks and speakers sent with the talks. Rows not changed
+ * for <code>cfp.schedule.changes.retention</code> days are pruned, clients
+ * holding a version older than the pruned ones get the whole schedule instead.
+ * <p>
+ * Uses plain JDBC, like {@link EventVersionService}, as rows are written while the transaction commits.
+ */
+@Service
+public class ScheduleChangeLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduleChangeLog.class);
+
+    private final JdbcTemplate jdbc;
+
+    private final EventVersionService versions;
+
+    private final TalkRepo talks;
+
+    private final TransactionTemplate transaction;
+
+    private final int retention;
+
+    @Autowired
+    public ScheduleChangeLog(JdbcTemplate jdbc, EventVersionService versions, TalkRepo talks,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${cfp.schedule.changes.retention:30}") int retention) {
+        this.jdbc = jdbc;
+        this.versions = versions;
+        this.talks = talks;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setReadOnly(true);
+        this.retention = retention;
+    }
+
+    public void record(String eventId, int talkId) {
+        record(eventId, Collections.singletonList(talkId));
+    }
+
+    /**
+     * Record talks changed at the version of the current transaction, written as it commits
+     */
+    public void record(String eventId, Collection<Integer> talkIds) {
+        if (talkIds.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = new ArrayList<>(new HashSet<>(talkIds));
+        versions.beforeCommit(eventId, Scope.SCHEDULE, version -> {
+            Timestamp now = Timestamp.from(Instant.now());
+
+            // writers of an event are serialized by the lock on its version, rows can't be inserted concurrently
+            int[] updated = jdbc.batchUpdate("UPDATE schedule_changes SET version = ?, changed = ? WHERE event_id = ? AND talk_id = ?",
+                ids.stream().map(id -> new Object[]{version, now, eventId, id}).collect(toList()));
+            List<Object[]> inserts = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (updated[i] == 0) {
+                    inserts.add(new Object[]{eventId, ids.get(i), version, now});
+                }
+            }
+            if (!inserts.isEmpty()) {
+                jdbc.batchUpdate("INSERT INTO schedule_changes (event_id, talk_id, version, changed) VALUES (?, ?, ?, ?)", inserts);
+            }
+        });
+    }
+
+    /**
+     * Record the scheduled talks of a room renamed in the current transaction, as they are sent with its name
+     */
+    public void roomChanged(String eventId, int roomId) {
+        recordScheduled("p.event_id = ? AND p.room_id = ?", eventId, roomId);
+    }
+
+    /**
+     * Record the scheduled talks of a format changed in the current transaction, as they are sent with its name and
+     * duration
+     */
+    public void formatChanged(String eventId, int formatId) {
+        recordScheduled("p.event_id = ? AND p.format = ?", eventId, formatId);
+    }
+
+    /**
+     * Record the scheduled talks of a track renamed in the current transaction, as they are sent with its name
+     */
+    public void trackChanged(String eventId, int trackId) {
+        recordScheduled("p.event_id = ? AND p.track = ?", eventId, trackId);
+    }
+
+    /**
+     * Record the scheduled talks of a speaker or cospeaker whose profile changed in the current transaction, in every
+     * event
+     */
+    public void speakerChanged(int userId) {
+        recordScheduled("(p.user = ? OR p.id IN (SELECT c.proposal_id FROM cospeakers c WHERE c.user_id = ?))", userId, userId);
+    }
+
+    private void recordScheduled(String where, Object... args) {
+        Map<String, List<Integer>> talkIds = new HashMap<>();
+        jdbc.query("SELECT p.event_id, p.id FROM proposals p WHERE p.state = 'ACCEPTED' AND p.schedule_date IS NOT NULL AND " + where,
+            (RowCallbackHandler) rs -> talkIds.computeIfAbsent(rs.getString(1), id -> new ArrayList<>()).add(rs.getInt(2)), args);
+        talkIds.forEach(this::record);
+    }
+
+    /**
+     * Forget all changes of an event, its clients will reload the whole schedule
+     */
+    public void reset(String eventId) {
+        versions.beforeCommit(eventId, Scope.SCHEDULE, version -> {
+            floor(eventId, version);
+            jdbc.update("DELETE FROM schedule_changes WHERE event_id = ?", eventId);
+        });
+    }
+
+    /**
+     * @param since version held by the client, its whole schedule is sent if <code>null</code>
+     */
+    public ScheduleChanges changes(String eventId, Long since) {
+        return transaction.execute(status -> {
+            ScheduleChanges changes = new ScheduleChanges().setVersion(versions.current(eventId, Scope.SCHEDULE));
+            List<Long> floors = jdbc.queryForList("SELECT version FROM schedule_change_floors WHERE event_id = ?", Long.class, eventId);
+            long floor = floors.isEmpty() ? 0 : floors.get(0);
+
+            if (since == null || since < floor || since > changes.getVersion()) {
+                changes.setReset(true);
+                talks.findByEventIdAndStatesFetch(eventId, Collections.singleton(Talk.State.ACCEPTED)).stream()
+                    .filter(t -> t.getDate() != null)
+                    .map(ScheduleSnapshots::schedule)
+                    .forEach(changes.getTalks()::add);
+                return changes;
+            }
+
+            List<Integer> changed = jdbc.queryForList("SELECT talk_id FROM schedule_changes WHERE event_id = ? AND version > ?",
+                Integer.class, eventId, since);
+            Set<Integer> removed = new HashSet<>(changed);
+            if (!changed.isEmpty()) {
+                for (Talk talk : talks.findByEventIdAndStatesAndIdsFetch(eventId, Collections.singleton(Talk.State.ACCEPTED), changed)) {
+                    if (talk.getDate() != null) {
+                        changes.getTalks().add(ScheduleSnapshots.schedule(talk));
+                        removed.remove(talk.getId());
+                    }
+                }
+            }
+            changes.getRemoved().addAll(removed);
+            Collections.sort(changes.getRemoved());
+            return changes;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${cfp.schedule.changes.prune:3600000}", initialDelayString = "${cfp.schedule.changes.prune:3600000}")
+    public void prune() {
+        Timestamp before = Timestamp.from(Instant.now().minus(retention, ChronoUnit.DAYS));
+        List<Map<String, Object>> expired = jdbc.queryForList(
+            "SELECT event_id, MAX(version) AS version FROM schedule_changes WHERE changed < ? GROUP BY event_id", before);
+        for (Map<String, Object> event : expired) {
+            String eventId = (String) event.get("event_id");
+            long version = ((Number) event.get("version")).longValue();
+            floor(eventId, version);
+            int pruned = jdbc.update("DELETE FROM schedule_changes WHERE event_id = ? AND version <= ?", eventId, version);
+            LOGGER.info("Pruned {} schedule changes of event '{}' up to version {}", pruned, eventId, version);
+        }
+    }
+
+    private void floor(String eventId, long version) {
+        if (jdbc.update("UPDATE schedule_change_floors SET version = ? WHERE event_id = ? AND version < ?", version, eventId, version) == 0
+            && jdbc.queryForObject("SELECT COUNT(*) FROM schedule_change_floors WHERE event_id = ?", Integer.class, eventId) == 0) {
+            jdbc.update("INSERT INTO schedule_change_floors (event_id, version) VALUES (?, ?)", eventId, version);
+        }
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.schedule;
+
+import io.cfp.domain.exception.ScheduleConflictException;
+import io.cfp.entity.Talk;
+import io.cfp.entity.User;
+import io.cfp.model.ScheduleConflict;
+import io.cfp.repository.TalkRepo;
+import io.cfp.service.version.EventVersionService;
+import io.cfp.service.version.EventVersionService.Scope;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Scheduled talks of each event in interval trees, one per room and one per speaker or cospeaker, to find
+ * overlapping talks in O(log n).
+ * <p>
+ * An index is built from the accepted and confirmed talks on first use, and rebuilt when the
+ * {@link Scope#SCHEDULE schedule version} of the event shows writes to talks, rooms or formats it doesn't know about. Schedule writes made through {@link #updated(String, Talk)} and
+ * {@link #moved(String, int, Integer, Date)} are applied to it once committed, so it stays current without being
+ * rebuilt. Whole schedules are checked with {@link #check(String, Collection)} before being imported.
+ */
+@Service
+public class ScheduleConflicts {
+
+    private static final List<Talk.State> SCHEDULED = Arrays.asList(Talk.State.ACCEPTED, Talk.State.CONFIRMED);
+
+    private final TalkRepo talks;
+
+    private final EventVersionService versions;
+
+    private final ConcurrentMap<String, Index> indexes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ScheduleConflicts(TalkRepo talks, EventVersionService versions) {
+        this.talks = talks;
+        this.versions = versions;
+    }
+
+    /**
+     * @return the talks overlapping this talk in its room or for one of its speakers, as set on the entity
+     */
+    public List<ScheduleConflict> check(String eventId, Talk talk) {
+        Slot slot = new Slot(talk);
+        if (slot.start == null) {
+            return new ArrayList<>();
+        }
+        Index index = index(eventId);
+        synchronized (index) {
+            return index.conflicts(slot, slot.room, slot.start);
+        }
+    }
+
+    /**
+     * Check a talk about to be saved with its room, time, format and speakers as set on the entity. Overlaps it
+     * already had are tolerated, so that a talk in conflict can still be edited.
+     *
+     * @throws ScheduleConflictException if the talk would overlap other talks
+     */
+    public void validate(String eventId, Talk talk) {
+        List<ScheduleConflict> conflicts = check(eventId, talk);
+        if (conflicts.isEmpty()) {
+            return;
+        }
+        Index index = index(eventId);
+        synchronized (index) {
+            Slot previous = index.talks.get(talk.getId());
+            if (previous != null && previous.start != null) {
+                Set<String> known = index.conflicts(previous, previous.room, previous.start).stream()
+                    .map(ScheduleConflicts::key)
+                    .collect(toSet());
+                conflicts.removeIf(c -> known.contains(key(c)));
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            throw new ScheduleConflictException(conflicts);
+        }
+    }
+
+    /**
+     * Check talks moved together as a single placement: each one against the others at their new place and against
+     * the talks which don't move. As in {@link #validate(String, Talk)}, overlaps a talk already had are tolerated.
+     *
+     * @return the new overlaps of each moved talk, talks without any left out
+     */
+    public Map<Integer, List<ScheduleConflict>> check(String eventId, Collection<Move> moves) {
+        Index index = index(eventId);
+        Set<Integer> unknown;
+        synchronized (index) {
+            unknown = moves.stream().map(m -> m.talkId).filter(id -> !index.talks.containsKey(id)).collect(toSet());
+        }
+        // talks not scheduled until now aren't indexed, their speakers are needed
+        Map<Integer, Slot> loaded = new HashMap<>();
+        if (!unknown.isEmpty()) {
+            for (Talk talk : talks.findByEventIdAndStatesAndIdsFetch(eventId, EnumSet.allOf(Talk.State.class), unknown)) {
+                loaded.put(talk.getId(), new Slot(talk));
+            }
+        }
+
+        synchronized (index) {
+            Map<Integer, Slot> previous = new HashMap<>();
+            Map<Integer, Set<String>> known = new HashMap<>();
+            List<Slot> placed = new ArrayList<>();
+            for (Move move : moves) {
+                Slot slot = index.talks.containsKey(move.talkId) ? index.talks.get(move.talkId) : loaded.get(move.talkId);
+                if (slot == null) {
+                    // deleted meanwhile, reported by the import
+                    continue;
+                }
+                Slot current = index.talks.get(move.talkId);
+                previous.put(move.talkId, current);
+                if (current != null && current.start != null) {
+                    known.put(move.talkId, index.conflicts(current, current.room, current.start).stream()
+                        .map(ScheduleConflicts::key)
+                        .collect(toSet()));
+                }
+                placed.add(slot.moved(move.roomId != null ? move.roomId : slot.room, move.start));
+            }
+
+            placed.forEach(index::put);
+            try {
+                Map<Integer, List<ScheduleConflict>> conflicts = new LinkedHashMap<>();
+                for (Slot slot : placed) {
+                    if (slot.start == null) {
+                        continue;
+                    }
+                    List<ScheduleConflict> found = index.conflicts(slot, slot.room, slot.start);
+                    Set<String> tolerated = known.getOrDefault(slot.id, Collections.emptySet());
+                    found.removeIf(c -> tolerated.contains(key(c)));
+                    if (!found.isEmpty()) {
+                        conflicts.put(slot.id, found);
+                    }
+                }
+                return conflicts;
+            } finally {
+                previous.forEach((id, slot) -> {
+                    if (slot != null) {
+                        index.put(slot);
+                    } else {
+                        index.remove(id);
+                    }
+                });
+            }
+        }
+    }
+
+    private static String key(ScheduleConflict conflict) {
+        return conflict.getOtherTalkId() + ":" + conflict.getType() + ":" + conflict.getResourceId();
+    }
+
+    /**
+     * @return all overlapping talks of the event, each pair once
+     */
+    public List<ScheduleConflict> report(String eventId) {
+        Index index = index(eventId);
+        synchronized (index) {
+            List<ScheduleConflict> conflicts = new ArrayList<>();
+            for (Slot slot : index.talks.values()) {
+                if (slot.start != null) {
+                    index.conflicts(slot, slot.room, slot.start).stream()
+                        .filter(c -> c.getTalkId() < c.getOtherTalkId())
+                        .forEach(conflicts::add);
+                }
+            }
+            return conflicts;
+        }
+    }
+
+    /**
+     * Record a talk whose schedule, format or speakers were saved, to update the index once committed
+     */
+    public void updated(String eventId, Talk talk) {
+        Slot slot = new Slot(talk);
+        afterCommit(eventId, index -> {
+            index.put(slot);
+            return true;
+        });
+    }
+
+    /**
+     * Record a talk moved to another room or time, to update the index once committed
+     *
+     * @param roomId <code>null</code> if the talk kept its room
+     */
+    public void moved(String eventId, int talkId, Integer roomId, Date start) {
+        afterCommit(eventId, index -> {
+            Slot slot = index.talks.get(talkId);
+            if (slot == null) {
+                // not accepted until now, its speakers are unknown
+                return false;
+            }
+            index.put(slot.moved(roomId != null ? roomId : slot.room, start));
+            return true;
+        });
+    }
+
+    private Index index(String eventId) {
+        long version = versions.current(eventId, Scope.SCHEDULE);
+        Index index = indexes.get(eventId);
+        if (index == null || index.version != version) {
+            index = new Index(version);
+            for (Talk talk : talks.findByEventIdAndStatesFetch(eventId, SCHEDULED)) {
+                index.put(new Slot(talk));
+            }
+            indexes.put(eventId, index);
+        }
+        return index;
+    }
+
+    /**
+     * Apply a change once committed, with the other changes of its transaction to the same event
+     */
+    @SuppressWarnings("unchecked")
+    private void afterCommit(String eventId, Predicate<Index> change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            versions.afterCommit(eventId, Scope.SCHEDULE, version -> apply(eventId, version, change));
+            return;
+        }
+        Map<String, List<Predicate<Index>>> pending = (Map<String, List<Predicate<Index>>>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ScheduleConflicts.this);
+                }
+            });
+        }
+        List<Predicate<Index>> changes = pending.get(eventId);
+        if (changes == null) {
+            List<Predicate<Index>> committed = new ArrayList<>();
+            versions.afterCommit(eventId, Scope.SCHEDULE,
+                version -> apply(eventId, version, index -> committed.stream().allMatch(c -> c.test(index))));
+            pending.put(eventId, committed);
+            changes = committed;
+        }
+        changes.add(change);
+    }
+
+    /**
+     * Apply committed changes if they are the only schedule writes since the index was built, otherwise drop it
+     *
+     * @param version schedule version the changes were committed at
+     */
+    private void apply(String eventId, long version, Predicate<Index> changes) {
+        Index index = indexes.get(eventId);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            if (version == index.version + 1 && changes.test(index)) {
+                index.version = version;
+            } else if (version > index.version) {
+                indexes.remove(eventId, index);
+            }
+            // otherwise the index was built once these changes were committed
+        }
+    }
+
+    private static final class Index {
+
+        private long version;
+
+        private final Map<Integer, Slot> talks = new HashMap<>();
+
+        private final Map<Integer, IntervalTree<Slot>> rooms = new HashMap<>();
+
+        private final Map<Integer, IntervalTree<Slot>> speakers = new HashMap<>();
+
+        private Index(long version) {
+            this.version = version;
+        }
+
+        private void put(Slot slot) {
+            unindex(talks.put(slot.id, slot));
+            if (slot.start != null) {
+                if (slot.room != null) {
+                    rooms.computeIfAbsent(slot.room, r -> new IntervalTree<>()).add(slot.start, slot.end(slot.start), slot.id, slot);
+                }
+                for (int speaker : slot.speakers) {
+                    speakers.computeIfAbsent(speaker, s -> new IntervalTree<>()).add(slot.start, slot.end(slot.start), slot.id, slot);
+                }
+            }
+        }
+
+        private void remove(int id) {
+            unindex(talks.remove(id));
+        }
+
+        private void unindex(Slot slot) {
+            if (slot != null && slot.start != null) {
+                if (slot.room != null) {
+                    rooms.get(slot.room).remove(slot.start, slot.id);
+                }
+                for (int speaker : slot.speakers) {
+                    speakers.get(speaker).remove(slot.start, slot.id);
+                }
+            }
+        }
+
+        private List<ScheduleConflict> conflicts(Slot slot, Integer room, long start) {
+            long end = slot.end(start);
+            List<ScheduleConflict> conflicts = new ArrayList<>();
+            if (room != null && rooms.containsKey(room)) {
+                rooms.get(room).overlapping(start, end, other -> {
+                    if (other.id != slot.id) {
+                        conflicts.add(conflict(slot, other, ScheduleConflict.Type.ROOM, room));
+                    }
+                });
+            }
+            for (int speaker : slot.speakers) {
+                if (speakers.containsKey(speaker)) {
+                    speakers.get(speaker).overlapping(start, end, other -> {
+                        if (other.id != slot.id) {
+                            conflicts.add(conflict(slot, other, ScheduleConflict.Type.SPEAKER, speaker));
+                        }
+                    });
+                }
+            }
+            return conflicts;
+        }
+
+        private static ScheduleConflict conflict(Slot slot, Slot other, ScheduleConflict.Type type, int resourceId) {
+            return new ScheduleConflict()
+                .setTalkId(slot.id)
+                .setTalkName(slot.name)
+                .setOtherTalkId(other.id)
+                .setOtherTalkName(other.name)
+                .setType(type)
+                .setResourceId(resourceId);
+        }
+    }
+
+    /**
+     * A talk placed in a room at some time
+     */
+    public static final class Move {
+
+        private final int talkId;
+
+        private final Integer roomId;
+
+        private final Date start;
+
+        /**
+         * @param roomId <code>null</code> if the talk keeps its room
+         */
+        public Move(int talkId, Integer roomId, Date start) {
+            this.talkId = talkId;
+            this.roomId = roomId;
+            this.start = start;
+        }
+    }
+
+    /**
+     * A talk with its room and start, if scheduled
+     */
+    private static final class Slot {
+
+        private final int id;
+
+        private final String name;
+
+        private final long duration;
+
+        private final int[] speakers;
+
+        private final Integer room;
+
+        private final Long start;
+
+        private Slot(Talk talk) {
+            this.id = talk.getId();
+            this.name = talk.getName();
+            this.duration = talk.getFormat() != null ? talk.getDuree() * 60_000L : 0;
+            List<Integer> ids = new ArrayList<>();
+            if (talk.getUser() != null) {
+                ids.add(talk.getUser().getId());
+            }
+            if (talk.getCospeakers() != null) {
+                talk.getCospeakers().stream().map(User::getId).filter(s -> !ids.contains(s)).forEach(ids::add);
+            }
+            this.speakers = ids.stream().mapToInt(Integer::intValue).toArray();
+            this.room = talk.getRoom() != null ? talk.getRoom().getId() : null;
+            this.start = talk.getDate() != null ? talk.getDate().getTime() : null;
+        }
+
+        private Slot(Slot slot, Integer room, Date start) {
+            this.id = slot.id;
+            this.name = slot.name;
+            this.duration = slot.duration;
+            this.speakers = slot.speakers;
+            this.room = room;
+            this.start = start != null ? start.getTime() : null;
+        }
+
+        private Slot moved(Integer room, Date start) {
+            return new Slot(this, room, start);
+        }
+
+        private long end(long start) {
+            // talks without duration still occupy their start
+            return start + Math.max(duration, 1);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.schedule;
+
+import io.cfp.mapper.ProposalMapper;
+import io.cfp.mapper.RoomMapper;
+import io.cfp.model.Room;
+import io.cfp.model.ScheduleConflict;
+import io.cfp.model.ScheduleSlot;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Imports a whole schedule at once: the talks and rooms of the event are read once, every slot is checked, then
+ * all slots are written with JDBC batches in one transaction. Nothing is written if any slot is invalid or would
+ * overlap another talk.
+ * <p>
+ * MyBatis can't switch executor type within a transaction: the transaction must not use
+ * the regular mappers before calling this service.
+ */
+@Service
+public class ScheduleImportService {
+
+    static final int BATCH_SIZE = 500;
+
+    private static final DateTimeFormatter HOUR = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final SqlSessionTemplate batchSession;
+
+    private final ScheduleConflicts conflicts;
+
+    private final ScheduleChangeLog scheduleChanges;
+
+    @Autowired
+    public ScheduleImportService(SqlSessionFactory sqlSessionFactory, ScheduleConflicts conflicts,
+                                 ScheduleChangeLog scheduleChanges) {
+        this.batchSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        this.conflicts = conflicts;
+        this.scheduleChanges = scheduleChanges;
+    }
+
+    /**
+     * @return the slots which can't be imported, with their error, empty once the schedule is imported
+     */
+    @Transactional
+    public List<ScheduleSlot> apply(String eventId, List<ScheduleSlot> slots) {
+        ProposalMapper proposals = batchSession.getMapper(ProposalMapper.class);
+        Set<Integer> talks = new HashSet<>(proposals.findIds(eventId));
+        Set<Integer> rooms = batchSession.getMapper(RoomMapper.class).findByEvent(eventId).stream()
+            .map(Room::getId)
+            .collect(toSet());
+
+        List<ScheduleSlot> errors = new ArrayList<>();
+        List<Update> updates = new ArrayList<>(slots.size());
+        Set<Integer> scheduled = new HashSet<>();
+        for (ScheduleSlot slot : slots) {
+            Update update = check(slot, talks, rooms, scheduled);
+            if (slot.getError() != null) {
+                errors.add(slot);
+            } else {
+                updates.add(update);
+            }
+        }
+        // the valid rows are placed together, so that talks swapping places don't conflict
+        Map<Integer, List<ScheduleConflict>> overlaps = conflicts.check(eventId, updates.stream()
+            .map(u -> new ScheduleConflicts.Move(u.slot.getId(), u.roomId, u.date))
+            .collect(toList()));
+        for (Update update : updates) {
+            List<ScheduleConflict> overlapping = overlaps.get(update.slot.getId());
+            if (overlapping != null) {
+                errors.add(update.slot.setError(overlapping.stream()
+                    .map(c -> "'" + c.getOtherTalkName() + "' (" + c.getType().name().toLowerCase() + " " + c.getResourceId() + ")")
+                    .collect(joining(", ", "Overlaps ", ""))));
+            }
+        }
+        if (!errors.isEmpty()) {
+            errors.sort(comparing(ScheduleSlot::getRow));
+            return errors;
+        }
+
+        for (int from = 0; from < updates.size(); from += BATCH_SIZE) {
+            List<Update> batch = updates.subList(from, Math.min(from + BATCH_SIZE, updates.size()));
+            for (Update update : batch) {
+                proposals.updateSchedule(update.slot.getId(), eventId, update.date, update.hour, update.roomId);
+            }
+
+            int index = 0;
+            for (BatchResult result : batchSession.flushStatements()) {
+                for (int count : result.getUpdateCounts()) {
+                    ScheduleSlot slot = batch.get(index++).slot;
+                    if (count == 0) {
+                        // deleted since read
+                        errors.add(slot.setError("Unknown talk"));
+                    }
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return errors;
+        }
+        for (Update update : updates) {
+            conflicts.moved(eventId, update.slot.getId(), update.roomId, update.date);
+        }
+        scheduleChanges.record(eventId, updates.stream().map(u -> u.slot.getId()).collect(toList()));
+        return errors;
+    }
+
+    private static Update check(ScheduleSlot slot, Set<Integer> talks, Set<Integer> rooms, Set<Integer> scheduled) {
+        if (!talks.contains(slot.getId())) {
+            slot.setError("Unknown talk");
+            return null;
+        }
+        if (!scheduled.add(slot.getId())) {
+            slot.setError("Talk scheduled twice");
+            return null;
+        }
+
+        LocalDateTime start;
+        try {
+            start = LocalDateTime.parse(slot.getStart(), DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        } catch (DateTimeParseException | NullPointerException e) {
+            slot.setError("Invalid start: " + slot.getStart());
+            return null;
+        }
+
+        Integer roomId = null;
+        if (StringUtils.hasText(slot.getRoomId())) {
+            try {
+                roomId = Integer.valueOf(slot.getRoomId());
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            if (roomId == null || !rooms.contains(roomId)) {
+                slot.setError("Unknown room: " + slot.getRoomId());
+                return null;
+            }
+        }
+
+        return new Update(slot, Date.from(start.atZone(ZoneId.systemDefault()).toInstant()), start.format(HOUR), roomId);
+    }
+
+    private static class Update {
+
+        private final ScheduleSlot slot;
+
+        private final Date date;
+
+        private final String hour;
+
+        private final Integer roomId;
+
+        private Update(ScheduleSlot slot, Date date, String hour, Integer roomId) {
+            this.slot = slot;
+            this.date = date;
+            this.hour = hour;
+            this.roomId = roomId;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.schedule;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Talks to place in rooms and start times, as plain arrays so that moves can be evaluated without allocating.
+ * <p>
+ * Times are minutes from midnight of the first day. Rooms are indexes, the first rooms being the largest. A placement
+ * costs {@link #HARD} for each broken hard constraint (two talks in the same room or sharing a speaker at the same
+ * time, a talk running late) plus its soft penalties: talks of a track spread over several rooms on the same day and
+ * well rated talks in small rooms.
+ */
+final class ScheduleProblem {
+
+    static final long HARD = 1L << 40;
+
+    static final int DAY = 24 * 60;
+
+    /** penalty for two talks of the same track in different rooms the same day */
+    static final int TRACK = 20;
+
+    private final int[] durations;
+
+    private final int[] tracks;
+
+    private final int[] scores;
+
+    private final boolean[][] together;
+
+    private final int rooms;
+
+    private final int dayStart;
+
+    private final int dayEnd;
+
+    /** possible start times of each talk */
+    private final int[][] starts;
+
+    /**
+     * @param durations in minutes
+     * @param tracks    track of each talk
+     * @param speakers  speaker and cospeaker ids of each talk
+     * @param scores    rating of each talk, higher is better
+     * @param rooms     number of rooms
+     * @param days      number of days
+     * @param dayStart  first start time of a day, in minutes
+     * @param dayEnd    last end time of a day, in minutes
+     * @param step      minutes between two possible start times
+     */
+    ScheduleProblem(int[] durations, int[] tracks, int[][] speakers, int[] scores,
+                    int rooms, int days, int dayStart, int dayEnd, int step) {
+        this.durations = durations;
+        this.tracks = tracks;
+        this.scores = scores;
+        this.rooms = rooms;
+        this.dayStart = dayStart;
+        this.dayEnd = dayEnd;
+
+        int size = durations.length;
+        this.together = new boolean[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                together[i][j] = together[j][i] = shareAny(speakers[i], speakers[j]);
+            }
+        }
+
+        this.starts = new int[size][];
+        for (int i = 0; i < size; i++) {
+            int latest = Math.max(dayStart, dayEnd - durations[i]);
+            int perDay = (latest - dayStart) / step + 1;
+            starts[i] = new int[perDay * days];
+            for (int day = 0; day < days; day++) {
+                for (int slot = 0; slot < perDay; slot++) {
+                    starts[i][day * perDay + slot] = day * DAY + dayStart + slot * step;
+                }
+            }
+        }
+    }
+
+    private static boolean shareAny(int[] some, int[] others) {
+        for (int a : some) {
+            for (int b : others) {
+                if (a == b) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return durations.length;
+    }
+
+    int rooms() {
+        return rooms;
+    }
+
+    int duration(int talk) {
+        return durations[talk];
+    }
+
+    int randomStart(int talk, Random random) {
+        return starts[talk][random.nextInt(starts[talk].length)];
+    }
+
+    /**
+     * @return if the talk can start at this time
+     */
+    boolean fits(int talk, int start) {
+        int time = start % DAY;
+        return time >= dayStart && (time + durations[talk] <= dayEnd || time == dayStart);
+    }
+
+    long cost(int[] room, int[] start) {
+        long cost = 0;
+        for (int i = 0; i < size(); i++) {
+            cost += unary(i, room[i], start[i]);
+            for (int j = i + 1; j < size(); j++) {
+                cost += pair(i, room[i], start[i], j, room[j], start[j]);
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * @return the cost of a talk placed in a room at a time, against all other talks but <code>skip</code>
+     */
+    long cost(int talk, int r, int s, int[] room, int[] start, int skip) {
+        long cost = unary(talk, r, s);
+        for (int j = 0; j < size(); j++) {
+            if (j != talk && j != skip) {
+                cost += pair(talk, r, s, j, room[j], start[j]);
+            }
+        }
+        return cost;
+    }
+
+    long unary(int talk, int r, int s) {
+        long cost = (long) scores[talk] * r;
+        if (s % DAY + durations[talk] > dayEnd) {
+            cost += HARD;
+        }
+        return cost;
+    }
+
+    long pair(int i, int ri, int si, int j, int rj, int sj) {
+        long cost = 0;
+        if (si < sj + durations[j] && sj < si + durations[i]) {
+            if (ri == rj) {
+                cost += HARD;
+            }
+            if (together[i][j]) {
+                cost += HARD;
+            }
+        }
+        if (tracks[i] == tracks[j] && ri != rj && si / DAY == sj / DAY) {
+            cost += TRACK;
+        }
+        return cost;
+    }
+
+    /**
+     * A placement of all talks
+     */
+    static final class Solution {
+
+        private final int[] room;
+
+        private final int[] start;
+
+        private final long cost;
+
+        Solution(int[] room, int[] start, long cost) {
+            this.room = Arrays.copyOf(room, room.length);
+            this.start = Arrays.copyOf(start, start.length);
+            this.cost = cost;
+        }
+
+        int room(int talk) {
+            return room[talk];
+        }
+
+        int start(int talk) {
+            return start[talk];
+        }
+
+        long getCost() {
+            return cost;
+        }
+
+        /**
+         * @return the number of broken hard constraints
+         */
+        int getConflicts() {
+            return (int) (cost / HARD);
+        }
+
+        long getPenalty() {
+            return cost % HARD;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.schedule;
+
+import io.cfp.service.schedule.ScheduleProblem.Solution;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Late acceptance hill climbing from a random placement, until a deadline. A move is accepted when it doesn't make
+ * the placement worse than it currently is, or than it was {@link #HISTORY} iterations ago.
+ * <p>
+ * Moves are either placing a talk in another room and time or swapping two talks, evaluated in O(talks).
+ */
+class ScheduleSearch extends RecursiveTask<Solution> {
+
+    static final int HISTORY = 2000;
+
+    private final ScheduleProblem problem;
+
+    private final long deadline;
+
+    private final long seed;
+
+    /**
+     * @param deadline as given by {@link System#nanoTime()}
+     */
+    ScheduleSearch(ScheduleProblem problem, long deadline, long seed) {
+        this.problem = problem;
+        this.deadline = deadline;
+        this.seed = seed;
+    }
+
+    @Override
+    protected Solution compute() {
+        Random random = new Random(seed);
+        int size = problem.size();
+        int[] room = new int[size];
+        int[] start = new int[size];
+        for (int i = 0; i < size; i++) {
+            room[i] = random.nextInt(problem.rooms());
+            start[i] = problem.randomStart(i, random);
+        }
+
+        long cost = problem.cost(room, start);
+        Solution best = new Solution(room, start, cost);
+        if (size == 0) {
+            return best;
+        }
+
+        long[] history = new long[HISTORY];
+        Arrays.fill(history, cost);
+        for (long iteration = 0; cost > 0 && ((iteration & 0xff) != 0 || System.nanoTime() < deadline); iteration++) {
+            long candidate;
+            int i = random.nextInt(size);
+            int j = random.nextInt(size);
+            if (size == 1 || random.nextBoolean()) {
+                int r = random.nextInt(problem.rooms());
+                int s = problem.randomStart(i, random);
+                candidate = cost - problem.cost(i, room[i], start[i], room, start, -1)
+                    + problem.cost(i, r, s, room, start, -1);
+                if (accept(candidate, cost, history, iteration)) {
+                    room[i] = r;
+                    start[i] = s;
+                    cost = candidate;
+                }
+            } else if (i != j && problem.fits(i, start[j]) && problem.fits(j, start[i])) {
+                long before = problem.cost(i, room[i], start[i], room, start, j)
+                    + problem.cost(j, room[j], start[j], room, start, i)
+                    + problem.pair(i, room[i], start[i], j, room[j], start[j]);
+                long after = problem.cost(i, room[j], start[j], room, start, j)
+                    + problem.cost(j, room[i], start[i], room, start, i)
+                    + problem.pair(i, room[j], start[j], j, room[i], start[i]);
+                candidate = cost - before + after;
+                if (accept(candidate, cost, history, iteration)) {
+                    int r = room[i];
+                    int s = start[i];
+                    room[i] = room[j];
+                    start[i] = start[j];
+                    room[j] = r;
+                    start[j] = s;
+                    cost = candidate;
+                }
+            }
+            history[(int) (iteration % HISTORY)] = cost;
+            if (cost < best.getCost()) {
+                best = new Solution(room, start, cost);
+            }
+        }
+        return best;
+    }
+
+    private static boolean accept(long candidate, long cost, long[] history, long iteration) {
+        return candidate <= cost || candidate <= history[(int) (iteration % HISTORY)];
+    }
+}
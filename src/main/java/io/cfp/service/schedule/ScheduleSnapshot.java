@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.schedule;
+
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The public schedule of an event, serialized once and kept both raw and gzipped, to be written as is
+ */
+public class ScheduleSnapshot {
+
+    private final long version;
+
+    private final byte[] json;
+
+    private final byte[] gzip;
+
+    private final String etag;
+
+    ScheduleSnapshot(long version, byte[] json) {
+        this.version = version;
+        this.json = json;
+        this.gzip = gzip(json);
+        this.etag = DigestUtils.md5DigestAsHex(json);
+    }
+
+    /**
+     * @return the event version it was built from
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the serialized schedule, not to be modified
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * @return the serialized schedule, gzipped, not to be modified
+     */
+    public byte[] getGzip() {
+        return gzip;
+    }
+
+    /**
+     * @return a strong ETag, which only changes with the content
+     */
+    public String getEtag(boolean gzipped) {
+        return "\"" + etag + (gzipped ? "-gzip" : "") + "\"";
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
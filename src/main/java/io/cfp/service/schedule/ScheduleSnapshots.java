@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.schedule;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.cfp.dto.user.Schedule;
+import io.cfp.entity.Talk;
+import io.cfp.repository.TalkRepo;
+import io.cfp.service.version.EventVersionChanged;
+import io.cfp.service.version.EventVersionService;
+import io.cfp.service.version.EventVersionService.Scope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Public schedule of each event, built on first read and then served from memory.
+ * <p>
+ * Snapshots follow the {@link Scope#SCHEDULE schedule version} of their event, and are rebuilt in the background
+ * when a write to talks, rooms or formats commits on this instance, and when the schedule version moved because of
+ * writes made by other instances, checked every <code>cfp.schedule.snapshot.check</code> ms.
+ */
+@Service
+public class ScheduleSnapshots {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduleSnapshots.class);
+
+    private final TalkRepo talks;
+
+    private final EventVersionService versions;
+
+    private final ObjectMapper json;
+
+    private final TransactionTemplate transaction;
+
+    private final TaskExecutor executor;
+
+    private final ConcurrentMap<String, ScheduleSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, CompletableFuture<ScheduleSnapshot>> loading = new ConcurrentHashMap<>();
+
+    private final Set<String> stale = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> rebuilding = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public ScheduleSnapshots(TalkRepo talks, EventVersionService versions, ObjectMapper json,
+                             PlatformTransactionManager transactionManager,
+                             @Qualifier("asyncExecutor") TaskExecutor executor) {
+        this.talks = talks;
+        this.versions = versions;
+        this.json = json;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setReadOnly(true);
+        this.executor = executor;
+    }
+
+    public ScheduleSnapshot get(String eventId) {
+        ScheduleSnapshot snapshot = snapshots.get(eventId);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        // first read, built once by the first caller while the others wait for it
+        CompletableFuture<ScheduleSnapshot> built = new CompletableFuture<>();
+        CompletableFuture<ScheduleSnapshot> building = loading.putIfAbsent(eventId, built);
+        if (building != null) {
+            try {
+                return building.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            snapshot = build(eventId);
+            // unless a rebuild already stored a newer one
+            ScheduleSnapshot current = snapshots.putIfAbsent(eventId, snapshot);
+            built.complete(current != null ? current : snapshot);
+            return current != null ? current : snapshot;
+        } catch (RuntimeException e) {
+            built.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(eventId, built);
+        }
+    }
+
+    @EventListener
+    public void changed(EventVersionChanged change) {
+        if (change.affects(Scope.SCHEDULE) && snapshots.containsKey(change.getEventId())) {
+            rebuild(change.getEventId());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cfp.schedule.snapshot.check:10000}", initialDelayString = "${cfp.schedule.snapshot.check:10000}")
+    public void check() {
+        snapshots.forEach((eventId, snapshot) -> {
+            if (stale.contains(eventId) || versions.current(eventId, Scope.SCHEDULE) != snapshot.getVersion()) {
+                rebuild(eventId);
+            }
+        });
+    }
+
+    /**
+     * Rebuild a snapshot unless a rebuild is already running, in which case it runs once more
+     */
+    private void rebuild(String eventId) {
+        stale.add(eventId);
+        if (!rebuilding.add(eventId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    while (stale.remove(eventId)) {
+                        snapshots.put(eventId, build(eventId));
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.error("Unable to rebuild the schedule of event '{}'", eventId, e);
+                } finally {
+                    rebuilding.remove(eventId);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // still stale, retried by the next check
+            LOGGER.warn("Executor saturated, schedule of event '{}' will be rebuilt later", eventId);
+            rebuilding.remove(eventId);
+        }
+    }
+
+    private ScheduleSnapshot build(String eventId) {
+        long start = System.currentTimeMillis();
+        ScheduleSnapshot snapshot = transaction.execute(status -> {
+            long version = versions.current(eventId, Scope.SCHEDULE);
+            List<Schedule> schedule = talks.findByEventIdAndStatesFetch(eventId, Collections.singleton(Talk.State.ACCEPTED))
+                .stream()
+                .filter(t -> t.getDate() != null)
+                .map(ScheduleSnapshots::schedule)
+                .collect(toList());
+            try {
+                return new ScheduleSnapshot(version, json.writeValueAsBytes(schedule));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        LOGGER.debug("Built schedule of event '{}' at version {} in {} ms", eventId, snapshot.getVersion(), System.currentTimeMillis() - start);
+        return snapshot;
+    }
+
+    static Schedule schedule(Talk t) {
+        Schedule schedule = new Schedule(t.getId(), t.getName(), t.getDescription());
+
+        // speakers
+        String spreakers = t.getUser().getFirstname() + " " + t.getUser().getLastname();
+        if (t.getCospeakers() != null) {
+            spreakers += ", " + t.getCospeakers().stream().map(c -> c.getFirstname() + " " + c.getLastname()).collect(Collectors.joining(", "));
+        }
+        schedule.setSpeakers(spreakers);
+
+        schedule.setEventType(t.getTrack().getLibelle());
+        schedule.setFormat(t.getFormat().getName());
+
+        schedule.setEventStart(DateTimeFormatter.ISO_INSTANT.format(t.getDate().toInstant()));
+        schedule.setEventEnd(DateTimeFormatter.ISO_INSTANT.format(t.getDate().toInstant().plus(t.getDuree(), ChronoUnit.MINUTES)));
+        schedule.setVenue(t.getRoom() != null ? t.getRoom().getName() : "TBD");
+        schedule.setVenueId(t.getRoom() != null ? String.valueOf(t.getRoom().getId()) : null);
+        schedule.setMedia(t.getVideo() != null ? t.getVideo() : t.getSlides());
+
+        final Map<String, Object> p = schedule.getAdditionalProperties();
+        if (t.getVideo() != null) {
+            p.put("video", t.getVideo());
+        }
+        if (t.getSlides() != null) {
+            p.put("slides", t.getSlides());
+        }
+
+        return schedule;
+    }
+}
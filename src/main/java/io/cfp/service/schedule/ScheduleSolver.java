@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.schedule;
+
+import io.cfp.domain.exception.BadRequestException;
+import io.cfp.domain.exception.BusyException;
+import io.cfp.dto.FullCalendar;
+import io.cfp.dto.ScheduleProposal;
+import io.cfp.entity.Event;
+import io.cfp.entity.Room;
+import io.cfp.entity.Talk;
+import io.cfp.entity.User;
+import io.cfp.mapper.ScoreMapper;
+import io.cfp.model.Score;
+import io.cfp.repository.EventRepository;
+import io.cfp.repository.RoomRepo;
+import io.cfp.repository.TalkRepo;
+import io.cfp.service.schedule.ScheduleProblem.Solution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Places the accepted talks of an event in its rooms, between <code>cfp.schedule.solver.day-start</code> and
+ * <code>day-end</code> of each day of the event, starting every <code>cfp.schedule.solver.step</code> minutes.
+ * <p>
+ * One {@link ScheduleSearch} per thread of a fork-join pool runs from its own random placement for
+ * <code>cfp.schedule.solver.budget</code> ms, the best placement found is kept. Talks are loaded in a short read-only
+ * transaction, the search runs after it ended. Rooms have no capacity: they are
+ * ranked by id, the first created being considered the largest.
+ */
+@Service
+public class ScheduleSolver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduleSolver.class);
+
+    private final TalkRepo talks;
+
+    private final RoomRepo rooms;
+
+    private final EventRepository events;
+
+    private final ScoreMapper scores;
+
+    private final TransactionTemplate transaction;
+
+    private final ForkJoinPool pool;
+
+    private final long budget;
+
+    private final int dayStart;
+
+    private final int dayEnd;
+
+    private final int step;
+
+    private final Random seeds = new Random();
+
+    private final Semaphore solving = new Semaphore(1);
+
+    @Autowired
+    public ScheduleSolver(TalkRepo talks, RoomRepo rooms, EventRepository events, ScoreMapper scores,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${cfp.schedule.solver.threads:0}") int threads,
+                          @Value("${cfp.schedule.solver.budget:10000}") long budget,
+                          @Value("${cfp.schedule.solver.day-start:09:00}") String dayStart,
+                          @Value("${cfp.schedule.solver.day-end:18:00}") String dayEnd,
+                          @Value("${cfp.schedule.solver.step:15}") int step) {
+        this.talks = talks;
+        this.rooms = rooms;
+        this.events = events;
+        this.scores = scores;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setReadOnly(true);
+        this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        this.budget = budget;
+        this.dayStart = LocalTime.parse(dayStart).toSecondOfDay() / 60;
+        this.dayEnd = LocalTime.parse(dayEnd).toSecondOfDay() / 60;
+        this.step = step;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Compute a schedule of the accepted talks, nothing is saved. Searches use the whole pool, so solves run one
+     * at a time.
+     */
+    public ScheduleProposal solve(String eventId) {
+        if (!solving.tryAcquire()) {
+            throw new BusyException("A schedule is already being computed, try again later");
+        }
+        try {
+            // only load in the transaction, so the search doesn't hold a connection for its whole budget
+            Input input = transaction.execute(status -> load(eventId));
+
+            long start = System.currentTimeMillis();
+            Solution solution = search(input.problem);
+            LOGGER.info("Scheduled {} talks of event '{}' in {} rooms in {} ms, {} conflicts, penalty {}", input.events.size(),
+                eventId, input.calendar.getResources().size(), System.currentTimeMillis() - start, solution.getConflicts(), solution.getPenalty());
+
+            return proposal(input, solution);
+        } finally {
+            solving.release();
+        }
+    }
+
+    private Input load(String eventId) {
+        Event event = events.findOne(eventId);
+        if (event == null || event.getDate() == null) {
+            throw new BadRequestException("The event has no date");
+        }
+        List<Room> roomList = rooms.findByEventId(eventId).stream()
+            .sorted(Comparator.comparingInt(Room::getId))
+            .collect(toList());
+        if (roomList.isEmpty()) {
+            throw new BadRequestException("The event has no room");
+        }
+        List<Talk> talkList = talks.findByEventIdAndStatesFetch(eventId, Collections.singleton(Talk.State.ACCEPTED));
+        Map<Integer, Score> scoreByTalk = scores.findByEvent(eventId).stream()
+            .collect(toMap(Score::getProposalId, s -> s));
+
+        Input input = new Input();
+        input.problem = problem(talkList, scoreByTalk, roomList.size(), Math.max(1, event.getDuration()));
+        input.calendar = new FullCalendar();
+        input.calendar.setResources(roomList.stream().map(FullCalendar.Resource::new).collect(toList()));
+        input.events = talkList.stream().map(FullCalendar.Event::new).collect(toList());
+        input.firstDay = Instant.ofEpochMilli(event.getDate().getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+        return input;
+    }
+
+    Solution search(ScheduleProblem problem) {
+        long deadline = System.nanoTime() + budget * 1_000_000;
+        List<ScheduleSearch> searches = new ArrayList<>();
+        for (int i = 0; i < pool.getParallelism(); i++) {
+            searches.add(new ScheduleSearch(problem, deadline, seeds.nextLong()));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(searches)));
+        return searches.stream()
+            .map(ForkJoinTask::join)
+            .min(Comparator.comparingLong(Solution::getCost))
+            .get();
+    }
+
+    private ScheduleProblem problem(List<Talk> talkList, Map<Integer, Score> scoreByTalk, int roomCount, int days) {
+        int size = talkList.size();
+        int[] durations = new int[size];
+        int[] tracks = new int[size];
+        int[][] speakers = new int[size][];
+        int[] rates = new int[size];
+        for (int i = 0; i < size; i++) {
+            Talk talk = talkList.get(i);
+            durations[i] = Math.max(step, talk.getDuree());
+            tracks[i] = talk.getTrack() != null ? talk.getTrack().getId() : -1 - i;
+            List<Integer> ids = new ArrayList<>();
+            ids.add(talk.getUser().getId());
+            if (talk.getCospeakers() != null) {
+                talk.getCospeakers().stream().map(User::getId).forEach(ids::add);
+            }
+            speakers[i] = ids.stream().mapToInt(Integer::intValue).toArray();
+            Score score = scoreByTalk.get(talk.getId());
+            rates[i] = score != null && score.getVotes() > 0 ? Math.round(10f * score.getTotal() / score.getVotes()) : 0;
+        }
+        return new ScheduleProblem(durations, tracks, speakers, rates, roomCount, days, dayStart, dayEnd, step);
+    }
+
+    private static ScheduleProposal proposal(Input input, Solution solution) {
+        for (int i = 0; i < input.events.size(); i++) {
+            FullCalendar.Event event = input.events.get(i);
+            ZonedDateTime start = input.firstDay.atStartOfDay(ZoneId.systemDefault()).plusMinutes(solution.start(i));
+            event.setResourceId(input.calendar.getResources().get(solution.room(i)).getId());
+            event.setStart(start.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+            event.setEnd(start.plusMinutes(event.getDuration()).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        }
+        input.calendar.setEvents(input.events);
+        return new ScheduleProposal()
+            .setCalendar(input.calendar)
+            .setConflicts(solution.getConflicts())
+            .setPenalty(solution.getPenalty());
+    }
+
+    /**
+     * What the search needs from the database, loaded before it starts
+     */
+    private static class Input {
+
+        private ScheduleProblem problem;
+
+        private FullCalendar calendar;
+
+        private List<FullCalendar.Event> events;
+
+        private LocalDate firstDay;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.search;
+
+import io.cfp.model.Proposal;
+import io.cfp.model.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Inverted index over the proposals of one event, ranked with BM25.
+ * Matches on the name or the speakers weigh more than matches in the description.
+ */
+class ProposalIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private static final float NAME_WEIGHT = 3;
+    private static final float SPEAKER_WEIGHT = 2;
+    private static final float TEXT_WEIGHT = 1;
+
+    /** event version the index is up to date with */
+    private volatile long version;
+
+    private final Map<String, Map<Integer, Float>> postings = new HashMap<>();
+
+    private final Map<Integer, Document> documents = new HashMap<>();
+
+    private float totalLength;
+
+    private static class Document {
+        private final Proposal summary;
+        private final Map<String, Float> frequencies;
+        private final float length;
+
+        Document(Proposal summary, Map<String, Float> frequencies) {
+            this.summary = summary;
+            this.frequencies = frequencies;
+            this.length = (float) frequencies.values().stream().mapToDouble(Float::doubleValue).sum();
+        }
+    }
+
+    ProposalIndex(long version) {
+        this.version = version;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    void setVersion(long version) {
+        this.version = version;
+    }
+
+    synchronized int size() {
+        return documents.size();
+    }
+
+    synchronized void put(Proposal proposal) {
+        remove(proposal.getId());
+
+        Map<String, Float> frequencies = new HashMap<>();
+        count(frequencies, proposal.getName(), NAME_WEIGHT);
+        count(frequencies, proposal.getDescription(), TEXT_WEIGHT);
+        count(frequencies, proposal.getReferences(), TEXT_WEIGHT);
+        for (User speaker : speakers(proposal)) {
+            count(frequencies, speaker.getFirstname(), SPEAKER_WEIGHT);
+            count(frequencies, speaker.getLastname(), SPEAKER_WEIGHT);
+        }
+
+        Document document = new Document(summarize(proposal), frequencies);
+        documents.put(proposal.getId(), document);
+        totalLength += document.length;
+        frequencies.forEach((term, frequency) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(proposal.getId(), frequency));
+    }
+
+    synchronized void remove(int id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        totalLength -= document.length;
+        for (String term : document.frequencies.keySet()) {
+            Map<Integer, Float> posting = postings.get(term);
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    /**
+     * @return proposals matching at least one of the terms, best match first
+     */
+    synchronized List<Proposal> search(Collection<String> terms, int limit) {
+        if (documents.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int count = documents.size();
+        float averageLength = totalLength / count;
+
+        Map<Integer, Float> scores = new HashMap<>();
+        for (String term : terms) {
+            Map<Integer, Float> posting = postings.get(term);
+            if (posting == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (count - posting.size() + 0.5) / (posting.size() + 0.5));
+            posting.forEach((id, frequency) -> {
+                float length = documents.get(id).length;
+                double score = idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+                scores.merge(id, (float) score, Float::sum);
+            });
+        }
+
+        return scores.entrySet().stream()
+            .sorted(Map.Entry.<Integer, Float>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+            .limit(limit)
+            .map(e -> documents.get(e.getKey()).summary)
+            .collect(Collectors.toList());
+    }
+
+    private static void count(Map<String, Float> frequencies, String text, float weight) {
+        for (String term : TextAnalyzer.analyze(text)) {
+            frequencies.merge(term, weight, Float::sum);
+        }
+    }
+
+    private static Set<User> speakers(Proposal proposal) {
+        Set<User> speakers = new LinkedHashSet<>();
+        if (proposal.getSpeaker() != null) {
+            speakers.add(proposal.getSpeaker());
+        }
+        if (proposal.getCospeakers() != null) {
+            speakers.addAll(proposal.getCospeakers());
+        }
+        return speakers;
+    }
+
+    /**
+     * Only keep what is needed to list the results, descriptions are the bulk of the proposals
+     */
+    private static Proposal summarize(Proposal proposal) {
+        return new Proposal()
+            .setId(proposal.getId())
+            .setEventId(proposal.getEventId())
+            .setState(proposal.getState())
+            .setName(proposal.getName())
+            .setLanguage(proposal.getLanguage())
+            .setTrackId(proposal.getTrackId())
+            .setTrackLabel(proposal.getTrackLabel())
+            .setFormat(proposal.getFormat())
+            .setDifficulty(proposal.getDifficulty())
+            .setAdded(proposal.getAdded())
+            .setSpeaker(summarize(proposal.getSpeaker()))
+            .setCospeakers(proposal.getCospeakers() == null ? null
+                : proposal.getCospeakers().stream().map(ProposalIndex::summarize).collect(Collectors.toSet()));
+    }
+
+    private static User summarize(User user) {
+        if (user == null) {
+            return null;
+        }
+        return new User()
+            .setId(user.getId())
+            .setEmail(user.getEmail())
+            .setFirstname(user.getFirstname())
+            .setLastname(user.getLastname());
+    }
+}
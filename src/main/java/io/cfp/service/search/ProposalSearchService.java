@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.search;
+
+import io.cfp.mapper.ProposalMapper;
+import io.cfp.model.Proposal;
+import io.cfp.model.queries.ProposalQuery;
+import io.cfp.service.ProposalLoader;
+import io.cfp.service.version.EventVersionService;
+import io.cfp.service.version.EventVersionService.Scope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Full text search over the proposals of each event, from an in memory index built on first search.
+ * <p>
+ * The index follows the {@link Scope#SEARCH search version} of the event, moved by writes to proposals, their
+ * speakers and tracks but not by rates or comments. Writes made through {@link #refresh} are applied to the index
+ * as they commit. Any other one moves the search version past the index one, and the index is then rebuilt on
+ * next search.
+ */
+@Service
+public class ProposalSearchService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProposalSearchService.class);
+
+    private final ProposalLoader loader;
+
+    private final ProposalMapper proposals;
+
+    private final EventVersionService versions;
+
+    private final ConcurrentMap<String, ProposalIndex> indexes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ProposalSearchService(ProposalLoader loader, ProposalMapper proposals, EventVersionService versions) {
+        this.loader = loader;
+        this.proposals = proposals;
+        this.versions = versions;
+    }
+
+    public List<Proposal> search(String eventId, String text, int limit) {
+        Set<String> terms = new LinkedHashSet<>(TextAnalyzer.analyze(text));
+        return index(eventId).search(terms, limit);
+    }
+
+    /**
+     * Reindex a proposal after it has been written, or remove it if it no longer exists.
+     * Must be called after the write, in the same transaction if any.
+     */
+    public void refresh(String eventId, int proposalId) {
+        ProposalIndex index = indexes.get(eventId);
+        if (index == null) {
+            return;
+        }
+        Proposal proposal = proposals.findById(proposalId, eventId);
+        // writes are serialized by the lock they take on the version while committing, so the index is one version
+        // behind ours unless other writes were missed
+        versions.afterCommit(eventId, Scope.SEARCH, version -> {
+            synchronized (index) {
+                if (index.getVersion() != version - 1) {
+                    // other writes were missed, or a rebuild already has this one
+                    return;
+                }
+                if (proposal == null) {
+                    index.remove(proposalId);
+                } else {
+                    index.put(proposal);
+                }
+                index.setVersion(version);
+            }
+        });
+    }
+
+    private ProposalIndex index(String eventId) {
+        long version = versions.current(eventId, Scope.SEARCH);
+        ProposalIndex index = indexes.get(eventId);
+        if (index != null && index.getVersion() == version) {
+            return index;
+        }
+        return indexes.compute(eventId, (id, current) ->
+            current != null && current.getVersion() == version ? current : build(id, version));
+    }
+
+    private ProposalIndex build(String eventId, long version) {
+        long start = System.currentTimeMillis();
+        ProposalIndex index = new ProposalIndex(version);
+        loader.stream(new ProposalQuery().setEventId(eventId), index::put);
+        LOGGER.info("Indexed {} proposals of event {} in {} ms", index.size(), eventId, System.currentTimeMillis() - start);
+        return index;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Turns French or English text into index terms: lower case without accents, stop words removed,
+ * then a light stemming stripping the most common inflections of both languages so that
+ * <i>développement</i>, <i>developers</i> and <i>developing</i> all end up as <i>develop</i>.
+ */
+final class TextAnalyzer {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+        // english
+        "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "how", "in", "is", "it", "of", "on", "or",
+        "that", "the", "this", "to", "we", "what", "with", "you", "your",
+        // french
+        "au", "aux", "avec", "ce", "ces", "dans", "de", "des", "du", "en", "est", "et", "il", "la", "le", "les",
+        "leur", "mais", "ne", "nous", "ou", "par", "pas", "pour", "qui", "que", "sa", "se", "son", "sur", "un",
+        "une", "vous"));
+
+    private static final String[] SUFFIXES = { "ement", "ment", "ing", "eur", "er", "ed", "ly" };
+
+    private static final int MIN_STEM = 3;
+
+    private TextAnalyzer() {
+    }
+
+    static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+        for (String token : SEPARATORS.split(folded)) {
+            if (token.length() > 1 && !STOP_WORDS.contains(token)) {
+                terms.add(stem(token));
+            }
+        }
+        return terms;
+    }
+
+    static String stem(String token) {
+        String stem = token;
+
+        // plural
+        if (stem.endsWith("ies") && stem.length() > 4) {
+            stem = stem.substring(0, stem.length() - 3) + "y";
+        } else if (stem.endsWith("aux") && stem.length() > 4) {
+            stem = stem.substring(0, stem.length() - 3) + "al";
+        } else if ((stem.endsWith("s") || stem.endsWith("x")) && stem.length() > MIN_STEM
+            && !stem.endsWith("ss") && !stem.endsWith("us") && !stem.endsWith("is")) {
+            stem = stem.substring(0, stem.length() - 1);
+        }
+
+        // adverbs, gerunds, participles, agents
+        for (String suffix : SUFFIXES) {
+            if (stem.endsWith(suffix) && stem.length() - suffix.length() >= MIN_STEM) {
+                stem = stem.substring(0, stem.length() - suffix.length());
+                break;
+            }
+        }
+
+        // feminine, infinitive
+        if (stem.endsWith("e") && stem.length() > MIN_STEM) {
+            stem = stem.substring(0, stem.length() - 1);
+        }
+
+        // developp -> develop, runn -> run
+        int length = stem.length();
+        if (length > MIN_STEM && stem.charAt(length - 1) == stem.charAt(length - 2) && !isVowel(stem.charAt(length - 1))) {
+            stem = stem.substring(0, length - 1);
+        }
+
+        return stem;
+    }
+
+    private static boolean isVowel(char c) {
+        return "aeiouy".indexOf(c) >= 0;
+    }
+}
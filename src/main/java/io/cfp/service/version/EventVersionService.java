@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.version;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Per event versions, incremented by writes so read endpoints can answer <code>If-None-Match</code>
+ * and caches can tell they are stale without querying the data they serve.
+ * <p>
+ * Every write moves the {@link Scope#EVENT event} version, and the narrower scopes of the tables it writes. A
+ * transaction increments each version once, right before it commits, so the version row is only locked while
+ * committing. Uses plain JDBC as it is called from within MyBatis and Hibernate while they write. Once the write
+ * commits, an {@link EventVersionChanged} is published for caches of this instance to refresh.
+ */
+@Service
+public class EventVersionService {
+
+    public enum Scope {
+        /** Any data of the event */
+        EVENT("version"),
+        /** Proposals and their speakers and tracks, as indexed by the proposal search */
+        SEARCH("search_version"),
+        /** Talks, their speakers, tracks, formats and rooms, as served by the schedule */
+        SCHEDULE("schedule_version");
+
+        private static final Pattern WRITE = Pattern.compile(
+            "^\\s*(?:insert\\s+into|update|delete\\s+from)\\s+[`\"]?(\\w+)", Pattern.CASE_INSENSITIVE);
+
+        private static final Map<String, Set<Scope>> TABLES = new HashMap<>();
+
+        static {
+            for (String table : Arrays.asList("proposals", "cospeakers", "tracks", "users")) {
+                TABLES.put(table, EnumSet.of(SEARCH, SCHEDULE));
+            }
+            for (String table : Arrays.asList("formats", "rooms")) {
+                TABLES.put(table, EnumSet.of(SCHEDULE));
+            }
+        }
+
+        /** Tables without event, written for all the events at once */
+        private static final Set<String> SHARED = Collections.singleton("users");
+
+        private final String column;
+
+        Scope(String column) {
+            this.column = column;
+        }
+
+        /**
+         * @return the narrower scopes changed by an insert, update or delete statement
+         */
+        public static Set<Scope> written(String sql) {
+            return TABLES.getOrDefault(table(sql), Collections.emptySet());
+        }
+
+        /**
+         * @return whether an insert, update or delete statement writes a table shared by all the events
+         */
+        public static boolean shared(String sql) {
+            return SHARED.contains(table(sql));
+        }
+
+        private static String table(String sql) {
+            Matcher matcher = WRITE.matcher(sql);
+            return matcher.find() ? matcher.group(1).toLowerCase() : "";
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+
+    private final ApplicationEventPublisher publisher;
+
+    @Autowired
+    public EventVersionService(JdbcTemplate jdbc, ApplicationEventPublisher publisher) {
+        this.jdbc = jdbc;
+        this.publisher = publisher;
+    }
+
+    public long current(String eventId) {
+        return current(eventId, Scope.EVENT);
+    }
+
+    public long current(String eventId, Scope scope) {
+        List<Long> versions = jdbc.queryForList("SELECT " + scope.column + " FROM event_versions WHERE event_id = ?", Long.class, eventId);
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    public String etag(String eventId) {
+        return etag(eventId, Scope.EVENT);
+    }
+
+    public String etag(String eventId, Scope scope) {
+        return "\"" + current(eventId, scope) + "\"";
+    }
+
+    /**
+     * Increment the versions of an event once per transaction, right before it commits
+     * @param scopes narrower scopes written, besides the event one
+     */
+    public void bump(String eventId, Scope... scopes) {
+        bump(eventId, Arrays.asList(scopes));
+    }
+
+    public void bump(String eventId, Collection<Scope> scopes) {
+        Set<Scope> written = EnumSet.of(Scope.EVENT);
+        written.addAll(scopes);
+        Bumps bumps = bumps();
+        if (bumps == null) {
+            increment(eventId, written);
+            publisher.publishEvent(new EventVersionChanged(eventId, written));
+        } else {
+            bumps.add(eventId, written);
+        }
+    }
+
+    /**
+     * Increment the version of every event, after a write which isn't scoped to the current one
+     */
+    public void bumpAll(Scope... scopes) {
+        bumpAll(Arrays.asList(scopes));
+    }
+
+    public void bumpAll(Collection<Scope> scopes) {
+        jdbc.queryForList("SELECT id FROM events", String.class).forEach(id -> bump(id, scopes));
+    }
+
+    /**
+     * Bump the versions changed by an insert, update or delete statement: those of the current event, or those of
+     * every event for the tables they share, e.g. a speaker of several events editing their profile
+     *
+     * @param eventId current event, <code>null</code> if none
+     */
+    public void written(String eventId, String sql) {
+        if (Scope.shared(sql)) {
+            bumpAll(Scope.written(sql));
+        } else if (eventId != null) {
+            bump(eventId, Scope.written(sql));
+        }
+    }
+
+    /**
+     * Bump a scope of an event, then run an action with the version it moved to, before the transaction commits
+     * so it can write data tagged with this version. Outside of a transaction, the action runs immediately.
+     */
+    public void beforeCommit(String eventId, Scope scope, LongConsumer action) {
+        bump(eventId, scope);
+        Bumps bumps = bumps();
+        if (bumps == null) {
+            action.accept(current(eventId, scope));
+        } else {
+            bumps.beforeCommitActions.add(() -> action.accept(current(eventId, scope)));
+            bumps.apply();
+        }
+    }
+
+    /**
+     * Bump a scope of an event, then run an action with the version it moved to, once the transaction has
+     * committed. Outside of a transaction, the action runs immediately.
+     */
+    public void afterCommit(String eventId, Scope scope, LongConsumer action) {
+        bump(eventId, scope);
+        Bumps bumps = bumps();
+        if (bumps == null) {
+            action.accept(current(eventId, scope));
+        } else {
+            bumps.beforeCommitActions.add(() -> {
+                long version = current(eventId, scope);
+                bumps.afterCommitActions.add(() -> action.accept(version));
+            });
+            bumps.apply();
+        }
+    }
+
+    private void increment(String eventId, Set<Scope> scopes) {
+        String columns = scopes.stream().map(scope -> scope.column + " = " + scope.column + " + 1").collect(joining(", "));
+        if (jdbc.update("UPDATE event_versions SET " + columns + " WHERE event_id = ?", eventId) == 0) {
+            try {
+                jdbc.update("INSERT INTO event_versions (event_id, "
+                    + scopes.stream().map(scope -> scope.column).collect(joining(", ")) + ") VALUES (?"
+                    + scopes.stream().map(scope -> ", 1").collect(joining()) + ")", eventId);
+            } catch (DuplicateKeyException e) {
+                // created concurrently
+                jdbc.update("UPDATE event_versions SET " + columns + " WHERE event_id = ?", eventId);
+            }
+        }
+    }
+
+    /**
+     * @return the bumps of the current transaction, or <code>null</code> outside of a transaction
+     */
+    private Bumps bumps() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Bumps bumps = (Bumps) TransactionSynchronizationManager.getResource(this);
+        if (bumps == null) {
+            bumps = new Bumps();
+            TransactionSynchronizationManager.bindResource(this, bumps);
+            TransactionSynchronizationManager.registerSynchronization(bumps);
+        }
+        return bumps;
+    }
+
+    private class Bumps extends TransactionSynchronizationAdapter {
+
+        private final Map<String, Set<Scope>> written = new LinkedHashMap<>();
+
+        private final Map<String, Set<Scope>> incremented = new HashMap<>();
+
+        private final List<Runnable> beforeCommitActions = new ArrayList<>();
+
+        private final List<Runnable> afterCommitActions = new ArrayList<>();
+
+        private boolean committing;
+
+        void add(String eventId, Set<Scope> scopes) {
+            written.computeIfAbsent(eventId, id -> EnumSet.noneOf(Scope.class)).addAll(scopes);
+            apply();
+        }
+
+        /**
+         * Once committing, writes still come from the ORM flush and are incremented as they come
+         */
+        void apply() {
+            if (!committing) {
+                return;
+            }
+            written.forEach((eventId, scopes) -> {
+                Set<Scope> done = incremented.computeIfAbsent(eventId, id -> EnumSet.noneOf(Scope.class));
+                Set<Scope> pending = EnumSet.copyOf(scopes);
+                pending.removeAll(done);
+                if (!pending.isEmpty()) {
+                    increment(eventId, pending);
+                    done.addAll(pending);
+                }
+            });
+            List<Runnable> actions = new ArrayList<>(beforeCommitActions);
+            beforeCommitActions.clear();
+            actions.forEach(Runnable::run);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            committing = true;
+            apply();
+        }
+
+        @Override
+        public void afterCommit() {
+            written.forEach((eventId, scopes) -> publisher.publishEvent(new EventVersionChanged(eventId, scopes)));
+            afterCommitActions.forEach(Runnable::run);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(EventVersionService.this);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.version;
+
+import io.cfp.entity.Event;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bump the versions of the current event on every insert, update or delete sent by Hibernate,
+ * including dirty checking and <code>@Modifying</code> queries of the JPA repositories.
+ * Writes made without a current event bump the events they write themselves, writes to users bump every event.
+ */
+@Component
+public class JpaWriteInspector implements StatementInspector, BeanPostProcessor {
+
+    private final ObjectProvider<EventVersionService> versions;
+
+    public JpaWriteInspector(ObjectProvider<EventVersionService> versions) {
+        this.versions = versions;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        String statement = sql.trim();
+        if ((statement.regionMatches(true, 0, "insert", 0, 6)
+            || statement.regionMatches(true, 0, "update", 0, 6)
+            || statement.regionMatches(true, 0, "delete", 0, 6))) {
+            versions.getObject().written(Event.peekCurrent(), statement);
+        }
+        return sql;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof LocalContainerEntityManagerFactoryBean) {
+            ((LocalContainerEntityManagerFactoryBean) bean).getJpaPropertyMap().put(AvailableSettings.STATEMENT_INSPECTOR, this);
+        }
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 BreizhCamp
+ * [http://breizhcamp.org]
+ *
+ * This file is part of CFP.io.
+ *
+ * CFP.io is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.cfp.service.version;
+
+import io.cfp.entity.Event;
+import io.cfp.mapper.EmailOutboxMapper;
+import io.cfp.mapper.NotificationJobMapper;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Bump the versions of the current event on every insert, update or delete made through MyBatis mappers,
+ * but the outbox and notification jobs which aren't exposed by versioned read endpoints.
+ * Writes made without a current event, e.g. by scheduled tasks, bump the events they write themselves. Writes to
+ * users bump every event, as a speaker's profile is served by each event they speak at.
+ */
+@Component
+@Intercepts(@Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }))
+public class MapperWriteInterceptor implements Interceptor {
+
+    private static final List<String> UNVERSIONED = Arrays.asList(
+        EmailOutboxMapper.class.getName() + ".",
+        NotificationJobMapper.class.getName() + ".");
+
+    private final EventVersionService versions;
+
+    @Autowired
+    public MapperWriteInterceptor(EventVersionService versions) {
+        this.versions = versions;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        if (UNVERSIONED.stream().noneMatch(statement.getId()::startsWith)) {
+            versions.written(Event.peekCurrent(), statement.getBoundSql(invocation.getArgs()[1]).getSql());
+        }
+        return result;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+}
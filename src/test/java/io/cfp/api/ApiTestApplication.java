@@ -4,13 +4,18 @@ import io.cfp.SecurityConfiguration;
 import io.cfp.WebConfiguration;
 import io.cfp.config.exception.GlobalControllerExceptionHandler;
 import io.cfp.config.filter.AuthFilter;
+import io.cfp.mapper.EventMapper;
+import io.cfp.multitenant.TenantRegistry;
+import io.cfp.multitenant.TenantThrottle;
 import io.cfp.repository.RoleRepository;
 import io.cfp.repository.UserRepo;
 import io.cfp.service.auth.AuthUtils;
+import io.cfp.service.auth.PrincipalCache;
 import io.cfp.service.user.SecurityUserService;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
 import static org.mockito.Mockito.mock;
@@ -39,7 +44,6 @@ class ApiTestApplication {
     public AuthFilter authFilter() {
         AuthFilter authFilter = new AuthFilter();
         authFilter.setAuthUtils(authUtils());
-        authFilter.setRoleRepository(roleRepository());
         return authFilter;
     }
 
@@ -48,6 +52,22 @@ class ApiTestApplication {
         return new AuthUtils();
     }
 
+    @Bean
+    public TenantRegistry tenantRegistry() {
+        return new TenantRegistry(mock(EventMapper.class));
+    }
+
+    @Bean
+    public TenantThrottle tenantThrottle(Environment env) {
+        return new TenantThrottle(env);
+    }
+
+    @Bean
+    public PrincipalCache principalCache() {
+        // tests change the roles of the same user from one test to the other
+        return new PrincipalCache(0);
+    }
+
     @Bean
     public GlobalControllerExceptionHandler exceptionHandler() {
         return new GlobalControllerExceptionHandler();
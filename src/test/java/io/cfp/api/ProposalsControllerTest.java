@@ -3,35 +3,50 @@ package io.cfp.api;
 import io.cfp.mapper.CoSpeakerMapper;
 import io.cfp.mapper.ProposalMapper;
 import io.cfp.mapper.RateMapper;
+import io.cfp.mapper.ScoreMapper;
 import io.cfp.mapper.UserMapper;
 import io.cfp.model.Proposal;
 import io.cfp.model.Role;
+import io.cfp.model.Score;
+import io.cfp.model.StateChange;
 import io.cfp.model.User;
 import io.cfp.model.queries.ProposalQuery;
+import io.cfp.model.queries.RateQuery;
+import io.cfp.service.ProposalLoader;
+import io.cfp.service.ProposalStateService;
+import io.cfp.service.schedule.ScheduleChangeLog;
 import io.cfp.service.email.EmailingService;
+import io.cfp.service.search.ProposalSearchService;
+import io.cfp.service.version.EventVersionService;
 import io.cfp.utils.Utils;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
 import static org.mockito.Matchers.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(ProposalsController.class)
+@Import(ProposalLoader.class)
 public class ProposalsControllerTest {
 
     @MockBean
@@ -43,12 +58,27 @@ public class ProposalsControllerTest {
     @MockBean
     private RateMapper rateMapper;
 
+    @MockBean
+    private ScoreMapper scoreMapper;
+
     @MockBean
     private CoSpeakerMapper coSpeakerMapper;
 
     @MockBean
     private EmailingService emailingService;
 
+    @MockBean
+    private EventVersionService versions;
+
+    @MockBean
+    private ProposalSearchService searchService;
+
+    @MockBean
+    private ProposalStateService stateService;
+
+    @MockBean
+    private ScheduleChangeLog scheduleChanges;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -109,6 +139,287 @@ public class ProposalsControllerTest {
         ;
     }
 
+    @Test
+    public void should_search_proposals_by_text() throws Exception {
+
+        User user = new User();
+        user.setEmail("EMAIL");
+        user.addRole(Role.REVIEWER);
+        String token = Utils.createTokenForUser(user);
+
+        when(userMapper.findByEmail("EMAIL")).thenReturn(user);
+        when(searchService.search("demo", "kotlin", 5)).thenReturn(Arrays.asList(proposal));
+
+        mockMvc.perform(get("/api/proposals/search?q=kotlin&limit=5")
+            .header("Authorization", "Bearer "+token)
+        )
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].id").value("10"));
+
+        mockMvc.perform(get("/api/proposals/search?q=kotlin&limit=0")
+            .header("Authorization", "Bearer "+token)
+        )
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void should_change_states_in_batch() throws Exception {
+
+        User user = new User();
+        user.setEmail("EMAIL");
+        user.addRole(Role.ADMIN);
+        String token = Utils.createTokenForUser(user);
+
+        when(userMapper.findByEmail("EMAIL")).thenReturn(user);
+        when(stateService.apply(eq("demo"), anyListOf(StateChange.class))).thenAnswer(invocation -> {
+            List<StateChange> changes = invocation.getArgumentAt(1, List.class);
+            changes.get(0).setResult(StateChange.Result.UPDATED);
+            changes.get(1).setResult(StateChange.Result.NOT_FOUND);
+            return changes;
+        });
+
+        mockMvc.perform(post("/api/proposals/states")
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .header("Authorization", "Bearer "+token)
+            .content("[{\"id\":10,\"state\":\"ACCEPTED\"},{\"id\":11,\"state\":\"REFUSED\"}]")
+        )
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].id").value("10"))
+            .andExpect(jsonPath("$[0].result").value("UPDATED"))
+            .andExpect(jsonPath("$[1].result").value("NOT_FOUND"));
+
+        mockMvc.perform(post("/api/proposals/states")
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .header("Authorization", "Bearer "+token)
+            .content("[{\"id\":10,\"state\":\"DRAFT\"}]")
+        )
+            .andExpect(status().isBadRequest());
+
+        verify(stateService, times(1)).apply(anyString(), anyListOf(StateChange.class));
+    }
+
+    @Test
+    public void should_get_next_proposals_to_rate() throws Exception {
+
+        User user = new User();
+        user.setId(42);
+        user.setEmail("EMAIL");
+        user.addRole(Role.REVIEWER);
+        String token = Utils.createTokenForUser(user);
+
+        when(userMapper.findByEmail("EMAIL")).thenReturn(user);
+        when(proposalMapper.findAll(any(ProposalQuery.class))).thenReturn(Arrays.asList(proposal));
+
+        mockMvc.perform(get("/api/proposals/queue/next?count=5&sort=votes")
+            .header("Authorization", "Bearer "+token)
+        )
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].id").value("10"));
+
+        verify(proposalMapper).findAll(argThat(new ArgumentMatcher<ProposalQuery>() {
+            @Override
+            public boolean matches(Object argument) {
+                ProposalQuery query = (ProposalQuery) argument;
+                return query.getUnratedBy() == 42
+                    && query.getStates().equals(Arrays.asList(Proposal.State.CONFIRMED))
+                    && query.getSort() == ProposalQuery.Sort.VOTES
+                    && query.getLimit() == 5;
+            }
+        }));
+
+        mockMvc.perform(get("/api/proposals/queue/next?count=0")
+            .header("Authorization", "Bearer "+token)
+        )
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void should_answer_not_modified_while_event_version_is_unchanged() throws Exception {
+
+        User user = new User();
+        user.setEmail("EMAIL");
+        user.addRole(Role.ADMIN);
+        String token = Utils.createTokenForUser(user);
+
+        when(userMapper.findByEmail("EMAIL")).thenReturn(user);
+        when(versions.etag(anyString())).thenReturn("\"7\"");
+
+        mockMvc.perform(get("/api/proposals")
+            .header("Authorization", "Bearer "+token)
+            .header("If-None-Match", "\"7\"")
+        )
+            .andExpect(status().isNotModified());
+
+        verifyZeroInteractions(proposalMapper, rateMapper);
+
+        mockMvc.perform(get("/api/proposals")
+            .header("Authorization", "Bearer "+token)
+            .header("If-None-Match", "\"6\"")
+        )
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", "\"7\""));
+    }
+
+    @Test
+    public void should_aggregate_rates_with_a_single_query_whatever_the_number_of_proposals() throws Exception {
+
+        User user = new User();
+        user.setEmail("EMAIL");
+        user.addRole(Role.ADMIN);
+        String token = Utils.createTokenForUser(user);
+
+        when(userMapper.findByEmail("EMAIL")).thenReturn(user);
+
+        for (int count : new int[] { 1, 100 }) {
+            reset(rateMapper);
+
+            List<Proposal> proposals = new ArrayList<>();
+            List<Score> scores = new ArrayList<>();
+            for (int i = 1; i <= count; i++) {
+                proposals.add(new Proposal().setId(i).setName("NAME_" + i));
+                scores.add(new Score().setProposalId(i).setTotal(7).setVotes(2).setVoters(Arrays.asList("A", "B", "C")));
+            }
+            when(proposalMapper.findAll(any(ProposalQuery.class))).thenReturn(proposals);
+            when(rateMapper.findScores(any(RateQuery.class))).thenReturn(scores);
+
+            mockMvc.perform(get("/api/proposals")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header("Authorization", "Bearer "+token)
+            )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(count))
+                .andExpect(jsonPath("$[0].mean").value("3.5"))
+                .andExpect(jsonPath("$[0].voteUsersEmail.length()").value(3))
+            ;
+
+            verify(rateMapper, times(1)).findScores(any(RateQuery.class));
+            verify(rateMapper, never()).findAll(any(RateQuery.class));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_stream_proposals() throws Exception {
+
+        User user = new User();
+        user.setEmail("EMAIL");
+        user.addRole(Role.ADMIN);
+        String token = Utils.createTokenForUser(user);
+
+        when(userMapper.findByEmail("EMAIL")).thenReturn(user);
+        when(rateMapper.findScores(any(RateQuery.class)))
+            .thenReturn(Arrays.asList(new Score().setProposalId(10).setTotal(3).setVotes(2)));
+        doAnswer(invocation -> {
+            ResultHandler<Proposal> handler = invocation.getArgumentAt(1, ResultHandler.class);
+            DefaultResultContext<Proposal> context = new DefaultResultContext<>();
+            context.nextResultObject(proposal);
+            handler.handleResult(context);
+            context.nextResultObject(new Proposal().setId(11).setName("OTHER"));
+            handler.handleResult(context);
+            return null;
+        }).when(proposalMapper).streamAll(any(ProposalQuery.class), any(ResultHandler.class));
+
+        mockMvc.perform(get("/api/proposals")
+            .param("stream", "true")
+            .param("after", "9")
+            .param("limit", "2")
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+            .header("Authorization", "Bearer "+token)
+        )
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+            .andExpect(jsonPath("$.length()").value(2))
+            .andExpect(jsonPath("$[0].id").value("10"))
+            .andExpect(jsonPath("$[0].mean").value("1.5"))
+            .andExpect(jsonPath("$[1].id").value("11"))
+            .andExpect(jsonPath("$[1].voteUsersEmail.length()").value(0))
+        ;
+
+        verify(proposalMapper).streamAll(argThat(new ArgumentMatcher<ProposalQuery>() {
+            @Override
+            public boolean matches(Object query) {
+                return Integer.valueOf(9).equals(((ProposalQuery) query).getAfter())
+                    && Integer.valueOf(2).equals(((ProposalQuery) query).getLimit());
+            }
+        }), any(ResultHandler.class));
+        verify(proposalMapper, never()).findAll(any(ProposalQuery.class));
+    }
+
+    @Test
+    public void should_search_proposals_with_summary_view() throws Exception {
+
+        User user = new User();
+        user.setEmail("EMAIL");
+        user.addRole(Role.ADMIN);
+        String token = Utils.createTokenForUser(user);
+
+        when(userMapper.findByEmail("EMAIL")).thenReturn(user);
+
+        mockMvc.perform(get("/api/proposals")
+            .param("view", "summary")
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+            .header("Authorization", "Bearer "+token)
+        )
+            .andExpect(status().isOk())
+        ;
+
+        verify(proposalMapper).findAll(argThat(new ArgumentMatcher<ProposalQuery>() {
+            @Override
+            public boolean matches(Object query) {
+                return ((ProposalQuery) query).getProjection() == ProposalQuery.Projection.SUMMARY;
+            }
+        }));
+
+        mockMvc.perform(get("/api/proposals")
+            .param("view", "unknown")
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+            .header("Authorization", "Bearer "+token)
+        )
+            .andExpect(status().isBadRequest())
+        ;
+    }
+
+    @Test
+    public void should_reject_non_positive_limit() throws Exception {
+
+        User user = new User();
+        user.setEmail("EMAIL");
+        user.addRole(Role.ADMIN);
+        String token = Utils.createTokenForUser(user);
+
+        when(userMapper.findByEmail("EMAIL")).thenReturn(user);
+
+        mockMvc.perform(get("/api/proposals")
+            .param("limit", "0")
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+            .header("Authorization", "Bearer "+token)
+        )
+            .andExpect(status().isBadRequest())
+        ;
+    }
+
+    @Test
+    public void should_reject_unknown_sort() throws Exception {
+
+        User user = new User();
+        user.setEmail("EMAIL");
+        user.addRole(Role.ADMIN);
+        String token = Utils.createTokenForUser(user);
+
+        when(userMapper.findByEmail("EMAIL")).thenReturn(user);
+
+        mockMvc.perform(get("/api/proposals")
+            .param("sort", "description")
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+            .header("Authorization", "Bearer "+token)
+        )
+            .andExpect(status().isBadRequest())
+        ;
+
+        verify(proposalMapper, never()).findAll(any(ProposalQuery.class));
+    }
+
     @Test
     public void should_get_proposal_by_id() throws Exception {
 
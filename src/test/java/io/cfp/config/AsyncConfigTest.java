@@ -0,0 +1,111 @@
+package io.cfp.config;
+
+import io.cfp.entity.Event;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.AsyncResult;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = AsyncConfigTest.Config.class)
+@TestPropertySource(properties = {"cfp.async.core-size=1", "cfp.async.max-size=1", "cfp.async.queue-capacity=1"})
+public class AsyncConfigTest {
+
+    @Autowired
+    private AsyncConfig config;
+
+    @Autowired
+    private Worker worker;
+
+    @After
+    public void tearDown() {
+        Event.unsetCurrent();
+        MDC.clear();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void should_propagate_context_to_worker_thread() throws Exception {
+        Event.setCurrent("breizhcamp");
+        MDC.put("event.id", "breizhcamp");
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("john", null));
+
+        Future<String> context = worker.context();
+        SecurityContextHolder.getContext().setAuthentication(null);
+
+        assertThat(context.get(5, TimeUnit.SECONDS)).isEqualTo("cfp-async-1 breizhcamp breizhcamp john");
+    }
+
+    @Test
+    public void should_reject_when_saturated() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        worker.block(started, release);
+        started.await(5, TimeUnit.SECONDS);
+        worker.block(new CountDownLatch(1), release);
+
+        try {
+            worker.context();
+            fail("Expected the task to be rejected");
+        } catch (TaskRejectedException e) {
+            // expected
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(config.metrics()).extracting("name", "value").contains(tuple("async.rejected", 1L));
+    }
+
+    @Configuration
+    @Import(AsyncConfig.class)
+    static class Config {
+
+        @Bean
+        public static PropertySourcesPlaceholderConfigurer placeholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean
+        public Worker worker() {
+            return new Worker();
+        }
+    }
+
+    static class Worker {
+
+        @Async
+        public Future<String> context() {
+            String user = SecurityContextHolder.getContext().getAuthentication() != null
+                ? SecurityContextHolder.getContext().getAuthentication().getName() : null;
+            return new AsyncResult<>(Thread.currentThread().getName() + " " + Event.peekCurrent()
+                + " " + MDC.get("event.id") + " " + user);
+        }
+
+        @Async
+        public void block(CountDownLatch started, CountDownLatch release) throws InterruptedException {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+        }
+    }
+}
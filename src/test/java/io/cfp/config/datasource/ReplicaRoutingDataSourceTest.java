@@ -0,0 +1,113 @@
+package io.cfp.config.datasource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Primary and replica are two distinct H2 databases, holding different data to tell which one was queried
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private DataSource primary = database("primary");
+
+    private DataSource replica = database("replica");
+
+    private ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, Collections.singletonList(replica));
+
+    private JdbcTemplate jdbc;
+
+    private TransactionTemplate transaction;
+
+    @Before
+    public void setUp() {
+        routing.afterPropertiesSet();
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbc = new JdbcTemplate(dataSource);
+        transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @After
+    public void tearDown() {
+        ReplicaRoutingDataSource.endRequest();
+        new JdbcTemplate(primary).execute("DROP ALL OBJECTS");
+        new JdbcTemplate(replica).execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    public void should_read_from_replica_in_read_only_transaction() {
+        transaction.setReadOnly(true);
+        assertThat(inTransaction()).isEqualTo("replica");
+    }
+
+    @Test
+    public void should_use_primary_in_read_write_transaction() {
+        ReplicaRoutingDataSource.readOnlyRequest();
+        assertThat(inTransaction()).isEqualTo("primary");
+    }
+
+    @Test
+    public void should_use_primary_outside_transaction() {
+        assertThat(whoami()).isEqualTo("primary");
+    }
+
+    @Test
+    public void should_read_from_replica_during_read_only_request() {
+        ReplicaRoutingDataSource.readOnlyRequest();
+        assertThat(whoami()).isEqualTo("replica");
+
+        ReplicaRoutingDataSource.writing();
+        assertThat(whoami()).isEqualTo("primary");
+    }
+
+    @Test
+    public void should_fallback_to_primary_when_replica_lags() {
+        transaction.setReadOnly(true);
+        routing.setMaxLag(5);
+
+        routing.setLagQuery("SELECT 10");
+        routing.checkReplicas();
+        assertThat(inTransaction()).isEqualTo("primary");
+
+        routing.setLagQuery("SELECT 2");
+        routing.checkReplicas();
+        assertThat(inTransaction()).isEqualTo("replica");
+    }
+
+    @Test
+    public void should_fallback_to_primary_when_replica_is_down() {
+        transaction.setReadOnly(true);
+        routing.setLagQuery("SELECT lag FROM missing_table");
+
+        routing.checkReplicas();
+
+        assertThat(inTransaction()).isEqualTo("primary");
+    }
+
+    private String inTransaction() {
+        return transaction.execute(status -> whoami());
+    }
+
+    private String whoami() {
+        return jdbc.queryForObject("SELECT name FROM whoami", String.class);
+    }
+
+    private static DataSource database(String name) {
+        DataSource dataSource = new SimpleDriverDataSource(new org.h2.Driver(), "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE IF NOT EXISTS whoami (name VARCHAR(10))");
+        jdbc.update("DELETE FROM whoami");
+        jdbc.update("INSERT INTO whoami VALUES (?)", name);
+        return dataSource;
+    }
+}
@@ -23,22 +23,36 @@ package io.cfp.controller.admin;
 import com.jayway.restassured.module.mockmvc.RestAssuredMockMvc;
 import com.jayway.restassured.module.mockmvc.response.MockMvcResponse;
 import io.cfp.controller.ScheduleController;
+import io.cfp.dto.ScheduleChanges;
 import io.cfp.dto.TalkUser;
 import io.cfp.dto.user.CospeakerProfil;
 import io.cfp.dto.user.UserProfil;
 import io.cfp.entity.Talk;
+import io.cfp.model.NotificationJob;
+import io.cfp.model.ScheduleConflict;
+import io.cfp.model.ScheduleSlot;
 import io.cfp.repository.RoomRepo;
 import io.cfp.repository.TalkRepo;
 import io.cfp.repository.UserRepo;
 import io.cfp.service.TalkUserService;
-import io.cfp.service.email.EmailingService;
+import io.cfp.service.email.NotificationJobs;
+import io.cfp.service.schedule.ScheduleChangeLog;
+import io.cfp.service.schedule.ScheduleConflicts;
+import io.cfp.service.schedule.ScheduleImportService;
+import io.cfp.service.schedule.ScheduleSnapshot;
+import io.cfp.service.schedule.ScheduleSnapshots;
+import io.cfp.service.schedule.ScheduleSolver;
+import io.cfp.service.version.EventVersionService;
+import io.cfp.service.version.EventVersionService.Scope;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -46,6 +60,13 @@ import java.util.Set;
 import static com.jayway.restassured.module.mockmvc.RestAssuredMockMvc.given;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 /**
@@ -59,7 +80,7 @@ public class ScheduleControllerTest {
     private TalkUserService talkUserService;
 
     @Mock
-    private EmailingService emailingService;
+    private NotificationJobs notifications;
 
     @Mock
     private TalkRepo talks;
@@ -70,11 +91,32 @@ public class ScheduleControllerTest {
     @Mock
     private UserRepo users;
 
+    @Mock
+    private EventVersionService versions;
+
+    @Mock
+    private ScheduleSnapshots snapshots;
+
+    @Mock
+    private ScheduleSnapshot snapshot;
+
+    @Mock
+    private ScheduleImportService imports;
+
+    @Mock
+    private ScheduleSolver solver;
+
+    @Mock
+    private ScheduleConflicts conflicts;
+
+    @Mock
+    private ScheduleChangeLog changes;
+
     private ScheduleController scheduleController;
 
     @Before
     public void setup() {
-        scheduleController = new ScheduleController(talkUserService, talks, rooms, users, emailingService);
+        scheduleController = new ScheduleController(talkUserService, talks, rooms, users, notifications, versions, snapshots, imports, solver, conflicts, changes);
         RestAssuredMockMvc.standaloneSetup(scheduleController);
     }
 
@@ -135,4 +177,101 @@ public class ScheduleControllerTest {
                 .body("[1].speakers", containsString("Alain Connu")).body("[2].speakers", equalTo("John Doe"));
     }
 
+    @Test
+    public void should_not_read_talks_when_schedule_is_not_modified() throws Exception {
+        when(versions.etag(anyString(), eq(Scope.SCHEDULE))).thenReturn("\"3\"");
+
+        given().header("If-None-Match", "\"3\"").when().get("/api/schedule/confirmed")
+            .then().statusCode(304);
+
+        verifyZeroInteractions(talkUserService);
+    }
+
+    @Test
+    public void should_serve_schedule_snapshot() throws Exception {
+        when(snapshots.get(anyString())).thenReturn(snapshot);
+        when(snapshot.getEtag(false)).thenReturn("\"abc\"");
+        when(snapshot.getJson()).thenReturn("[{\"id\":1}]".getBytes(StandardCharsets.UTF_8));
+
+        given().when().get("/api/schedule")
+            .then().statusCode(200).header("ETag", "\"abc\"").body("[0].id", equalTo(1));
+    }
+
+    @Test
+    public void should_serve_gzipped_schedule_snapshot() throws Exception {
+        byte[] gzipped = "gzipped".getBytes(StandardCharsets.UTF_8);
+        when(snapshots.get(anyString())).thenReturn(snapshot);
+        when(snapshot.getEtag(true)).thenReturn("\"abc-gzip\"");
+        when(snapshot.getGzip()).thenReturn(gzipped);
+
+        MockMvcResponse response = given().header("Accept-Encoding", "deflate, gzip").when().get("/api/schedule");
+
+        response.then().statusCode(200).header("Content-Encoding", "gzip").header("ETag", "\"abc-gzip\"");
+        assertArrayEquals(gzipped, response.asString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void should_not_send_unmodified_schedule() throws Exception {
+        when(snapshots.get(anyString())).thenReturn(snapshot);
+        when(snapshot.getEtag(false)).thenReturn("\"abc\"");
+
+        given().header("If-None-Match", "\"abc\"").header("Accept-Encoding", "gzip;q=0").when().get("/api/schedule")
+            .then().statusCode(304);
+
+        verify(snapshot, never()).getJson();
+    }
+
+    @Test
+    public void should_report_invalid_schedule_rows() throws Exception {
+        when(imports.apply(anyString(), anyListOf(ScheduleSlot.class))).thenAnswer(invocation -> {
+            List<ScheduleSlot> slots = invocation.getArgumentAt(1, List.class);
+            return Collections.singletonList(slots.get(1).setError("Unknown talk"));
+        });
+
+        given().contentType("application/json")
+            .body("{\"events\":[{\"id\":\"1\",\"start\":\"2043-01-02T09:30:00+01:00\",\"resourceId\":\"5\"},"
+                + "{\"id\":\"99\",\"start\":\"2043-01-02T10:30:00+01:00\"}]}")
+            .when().put("/api/schedule/fullcalendar")
+            .then().statusCode(400).body("size()", equalTo(1)).body("[0].row", equalTo(2)).body("[0].id", equalTo(99))
+            .body("[0].error", equalTo("Unknown talk"));
+    }
+
+    @Test
+    public void should_not_import_schedule_with_invalid_talk_ids() throws Exception {
+        given().contentType("application/json")
+            .body("{\"events\":[{\"id\":\"abc\",\"start\":\"2043-01-02T09:30:00+01:00\"}]}")
+            .when().put("/api/schedule/fullcalendar")
+            .then().statusCode(400).body("[0].error", equalTo("Invalid talk ID: abc"));
+
+        verifyZeroInteractions(imports);
+    }
+
+    @Test
+    public void should_send_changes_since_version() throws Exception {
+        when(changes.changes(anyString(), eq(4L)))
+            .thenReturn(new ScheduleChanges().setVersion(6).setRemoved(Collections.singletonList(3)));
+
+        given().param("since", 4).when().get("/api/schedule/changes")
+            .then().statusCode(200).body("version", equalTo(6)).body("reset", equalTo(false)).body("removed[0]", equalTo(3));
+    }
+
+    @Test
+    public void should_report_conflicts() throws Exception {
+        when(conflicts.report(anyString())).thenReturn(Collections.singletonList(new ScheduleConflict()
+            .setTalkId(1).setOtherTalkId(2).setType(ScheduleConflict.Type.SPEAKER).setResourceId(10)));
+
+        given().when().get("/api/schedule/conflicts")
+            .then().statusCode(200).body("size()", equalTo(1)).body("[0].otherTalkId", equalTo(2))
+            .body("[0].type", equalTo("SPEAKER"));
+    }
+
+    @Test
+    public void should_start_notification_in_background() throws Exception {
+        when(notifications.start(anyString(), eq(NotificationJob.Filter.ACCEPTED)))
+            .thenReturn(new NotificationJob().setId(5).setStatus(NotificationJob.Status.RUNNING).setTotal(300));
+
+        given().param("filter", "accepted").when().post("/api/schedule/notification")
+            .then().statusCode(202).body("id", equalTo(5)).body("total", equalTo(300));
+    }
+
 }
@@ -0,0 +1,36 @@
+package io.cfp.mapper;
+
+import io.cfp.model.CoSpeaker;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@MybatisTest
+public class CoSpeakerMapperTest {
+
+    private static final int PROPOSAL_ID = 20;
+    private static final int OTHER_PROPOSAL_ID = 21;
+    private static final int COSPEAKER_ID = 12;
+
+    @Autowired
+    private CoSpeakerMapper coSpeakerMapper;
+
+    @Test
+    public void should_find_cospeakers_of_proposals() {
+        coSpeakerMapper.insert(OTHER_PROPOSAL_ID, COSPEAKER_ID);
+
+        List<CoSpeaker> cospeakers = coSpeakerMapper.findByProposals(Arrays.asList(PROPOSAL_ID, OTHER_PROPOSAL_ID));
+
+        assertThat(cospeakers).extracting(CoSpeaker::getProposalId).containsOnly(PROPOSAL_ID, OTHER_PROPOSAL_ID);
+        assertThat(cospeakers).extracting(cospeaker -> cospeaker.getUser().getId()).containsOnly(COSPEAKER_ID);
+        assertThat(cospeakers).extracting(cospeaker -> cospeaker.getUser().getEmail()).containsOnly("COSPEAKERS_EMAIL");
+    }
+}
@@ -0,0 +1,107 @@
+package io.cfp.mapper;
+
+import io.cfp.model.OutboxEmail;
+import io.cfp.model.OutboxStats;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Date;
+import java.util.List;
+
+import static io.cfp.model.OutboxEmail.Status.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@RunWith(SpringRunner.class)
+@MybatisTest
+public class EmailOutboxMapperTest {
+
+    private static final String EVENT_ID = "EVENT_ID";
+
+    @Autowired
+    private EmailOutboxMapper emailOutboxMapper;
+
+    private Date now = new Date();
+
+    private OutboxEmail email;
+
+    @Before
+    public void setUp() {
+        email = new OutboxEmail()
+            .setEventId(EVENT_ID)
+            .setProvider("sendgrid")
+            .setReplyTo("contact@cfp.io")
+            .setRecipient("john@doe.net")
+            .setCc("jane@doe.net,joe@doe.net")
+            .setSubject("Hello")
+            .setContent("<p>Hello</p>")
+            .setNextAttempt(now)
+            .setAdded(now);
+        emailOutboxMapper.insert(email);
+    }
+
+    @Test
+    public void should_find_due_emails() {
+        List<OutboxEmail> due = emailOutboxMapper.findDue(new Date(now.getTime() + 1), 10);
+
+        assertThat(due).extracting(OutboxEmail::getId).containsExactly(email.getId());
+        assertThat(due.get(0).getStatus()).isEqualTo(PENDING);
+        assertThat(due.get(0).getCc()).isEqualTo("jane@doe.net,joe@doe.net");
+        assertThat(emailOutboxMapper.findDue(new Date(now.getTime() - 1000), 10)).isEmpty();
+    }
+
+    @Test
+    public void should_claim_an_email_only_once() {
+        OutboxEmail due = emailOutboxMapper.findDue(now, 10).get(0);
+        Date lease = new Date(now.getTime() + 60_000);
+
+        assertThat(emailOutboxMapper.claim(due.getId(), due.getNextAttempt(), lease)).isEqualTo(1);
+        assertThat(emailOutboxMapper.claim(due.getId(), due.getNextAttempt(), lease)).isEqualTo(0);
+        assertThat(emailOutboxMapper.findDue(now, 10)).isEmpty();
+
+        // lease expired, the instance sending it probably died
+        assertThat(emailOutboxMapper.findDue(new Date(lease.getTime() + 1), 10)).hasSize(1);
+    }
+
+    @Test
+    public void should_retry_then_send() {
+        Date later = new Date(now.getTime() + 30_000);
+        emailOutboxMapper.markRetry(email.getId(), 1, later, "503 Service Unavailable");
+
+        OutboxEmail retried = emailOutboxMapper.findById(email.getId());
+        assertThat(retried.getStatus()).isEqualTo(PENDING);
+        assertThat(retried.getAttempts()).isEqualTo(1);
+        assertThat(retried.getLastError()).isEqualTo("503 Service Unavailable");
+        assertThat(emailOutboxMapper.findDue(now, 10)).isEmpty();
+
+        emailOutboxMapper.markSent(email.getId(), later);
+
+        OutboxEmail sent = emailOutboxMapper.findById(email.getId());
+        assertThat(sent.getStatus()).isEqualTo(SENT);
+        assertThat(sent.getAttempts()).isEqualTo(2);
+        assertThat(sent.getLastError()).isNull();
+        assertThat(emailOutboxMapper.findDue(later, 10)).isEmpty();
+    }
+
+    @Test
+    public void should_count_emails_per_status() {
+        OutboxEmail other = new OutboxEmail()
+            .setEventId(EVENT_ID)
+            .setProvider("sendgrid")
+            .setRecipient("jane@doe.net")
+            .setNextAttempt(now)
+            .setAdded(now);
+        emailOutboxMapper.insert(other);
+        emailOutboxMapper.markFailed(other.getId(), 8, "550 No such user");
+
+        List<OutboxStats> stats = emailOutboxMapper.countByStatus(EVENT_ID);
+
+        assertThat(stats).extracting(OutboxStats::getStatus, OutboxStats::getCount)
+            .containsOnly(tuple(PENDING, 1), tuple(FAILED, 1));
+        assertThat(emailOutboxMapper.countByStatus("other")).isEmpty();
+    }
+}
@@ -0,0 +1,100 @@
+package io.cfp.mapper;
+
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.Properties;
+
+/**
+ * Counts rows and column bytes fetched by MyBatis from JDBC result sets.
+ * Register it with <code>@Import</code> on a mapper test.
+ * Bytes are an estimate of the payload: UTF-8 length of strings, length of CLOBs, 4 or 8 bytes for numbers and dates.
+ */
+@Intercepts(@Signature(type = ResultSetHandler.class, method = "handleResultSets", args = Statement.class))
+public class JdbcTrafficCounter implements Interceptor {
+
+    private long rows;
+    private long bytes;
+
+    public void reset() {
+        rows = 0;
+        bytes = 0;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Statement statement = (Statement) invocation.getArgs()[0];
+        Statement counting = proxy(Statement.class, statement, (method, result) ->
+            result instanceof ResultSet ? proxy(ResultSet.class, (ResultSet) result, (next, hasRow) -> {
+                if (next.getName().equals("next") && Boolean.TRUE.equals(hasRow)) {
+                    count((ResultSet) result);
+                }
+                return hasRow;
+            }) : result);
+        return invocation.getMethod().invoke(invocation.getTarget(), counting);
+    }
+
+    /**
+     * Count every column of the current row, whether MyBatis reads it or not: the driver already received it
+     */
+    private void count(ResultSet resultSet) throws SQLException {
+        rows++;
+        for (int column = 1; column <= resultSet.getMetaData().getColumnCount(); column++) {
+            Object value = resultSet.getObject(column);
+            if (value instanceof String) {
+                bytes += ((String) value).getBytes(StandardCharsets.UTF_8).length;
+            } else if (value instanceof Clob) {
+                bytes += ((Clob) value).length();
+            } else if (value instanceof Long || value instanceof Double || value instanceof Date) {
+                bytes += 8;
+            } else if (value instanceof Number) {
+                bytes += 4;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, Callback callback) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            try {
+                return callback.after(method, method.invoke(target, args));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private interface Callback {
+        Object after(Method method, Object result) throws SQLException;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+}
@@ -0,0 +1,94 @@
+package io.cfp.mapper;
+
+import io.cfp.model.NotificationJob;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Date;
+
+import static io.cfp.model.NotificationJob.Status.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringRunner.class)
+@MybatisTest
+public class NotificationJobMapperTest {
+
+    private static final String EVENT_ID = "EVENT_ID";
+
+    @Autowired
+    private NotificationJobMapper notificationJobMapper;
+
+    private Date started = new Date(System.currentTimeMillis() - 600_000);
+
+    private NotificationJob job;
+
+    @Before
+    public void setUp() {
+        job = new NotificationJob()
+            .setEventId(EVENT_ID)
+            .setFilter(NotificationJob.Filter.ALL)
+            .setStatus(RUNNING)
+            .setTotal(2)
+            .setAdded(started)
+            .setUpdated(started);
+        notificationJobMapper.insert(job);
+    }
+
+    @Test
+    public void should_record_progress() {
+        assertThat(notificationJobMapper.progress(job.getId(), 20, 5, new Date())).isEqualTo(1);
+
+        NotificationJob found = notificationJobMapper.findById(job.getId(), EVENT_ID);
+        assertThat(found.getSent()).isEqualTo(5);
+        assertThat(found.getLastTalk()).isEqualTo(20);
+        assertThat(found.getFilter()).isEqualTo(NotificationJob.Filter.ALL);
+        assertThat(notificationJobMapper.findById(job.getId(), "other")).isNull();
+    }
+
+    @Test
+    public void should_stop_progress_once_cancelled() {
+        assertThat(notificationJobMapper.cancel(job.getId(), "other", new Date())).isEqualTo(0);
+        assertThat(notificationJobMapper.cancel(job.getId(), EVENT_ID, new Date())).isEqualTo(1);
+
+        assertThat(notificationJobMapper.progress(job.getId(), 20, 1, new Date())).isEqualTo(0);
+        assertThat(notificationJobMapper.findById(job.getId(), EVENT_ID).getStatus()).isEqualTo(CANCELLED);
+    }
+
+    @Test
+    public void should_claim_stale_job_once() {
+        assertThat(notificationJobMapper.findStale(new Date(started.getTime() - 1))).isEmpty();
+        NotificationJob stale = notificationJobMapper.findStale(new Date()).get(0);
+
+        Date now = new Date();
+        assertThat(notificationJobMapper.claim(stale.getId(), stale.getUpdated(), now)).isEqualTo(1);
+        assertThat(notificationJobMapper.claim(stale.getId(), stale.getUpdated(), now)).isEqualTo(0);
+        assertThat(notificationJobMapper.findStale(new Date(now.getTime() - 1))).isEmpty();
+    }
+
+    @Test
+    public void should_run_one_job_per_event() {
+        NotificationJob second = new NotificationJob()
+            .setEventId(EVENT_ID)
+            .setFilter(NotificationJob.Filter.ACCEPTED)
+            .setStatus(RUNNING)
+            .setAdded(started)
+            .setUpdated(started);
+        assertThatThrownBy(() -> notificationJobMapper.insert(second)).isInstanceOf(DuplicateKeyException.class);
+
+        notificationJobMapper.finish(job.getId(), DONE, new Date());
+        assertThat(notificationJobMapper.insert(second)).isEqualTo(1);
+    }
+
+    @Test
+    public void should_not_find_finished_job_as_stale() {
+        notificationJobMapper.finish(job.getId(), DONE, started);
+
+        assertThat(notificationJobMapper.findStale(new Date())).isEmpty();
+    }
+}
@@ -1,19 +1,48 @@
 package io.cfp.mapper;
 
 import io.cfp.model.Proposal;
+import io.cfp.model.ScheduleConflict;
+import io.cfp.model.ScheduleSlot;
+import io.cfp.model.StateChange;
+import io.cfp.model.User;
 import io.cfp.model.queries.ProposalQuery;
+import io.cfp.service.ProposalLoader;
+import io.cfp.service.ProposalStateService;
+import io.cfp.service.schedule.ScheduleChangeLog;
+import io.cfp.service.schedule.ScheduleConflicts;
+import io.cfp.service.schedule.ScheduleImportService;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
 @MybatisTest
+@Import({ JdbcTrafficCounter.class, ProposalStateService.class, ScheduleImportService.class })
 public class ProposalMapperTest {
 
     private static final int USER_ID = 10;
@@ -26,6 +55,33 @@ public class ProposalMapperTest {
     @Autowired
     private ProposalMapper proposalMapper;
 
+    @Autowired
+    private CoSpeakerMapper coSpeakerMapper;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private JdbcTrafficCounter traffic;
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ProposalStateService stateService;
+
+    @Autowired
+    private ScheduleImportService scheduleImport;
+
+    @MockBean
+    private ScheduleConflicts conflicts;
+
+    @MockBean
+    private ScheduleChangeLog scheduleChanges;
+
     @Test
     public void should_find_all_proposals() {
         List<Proposal> allProposals = proposalMapper.findAll(new ProposalQuery());
@@ -41,6 +97,244 @@ public class ProposalMapperTest {
         assertThat(allProposals).hasSize(2);
     }
 
+    @Test
+    public void should_change_states_in_batch() throws SQLException {
+        // the batch executor must be the only MyBatis session of the transaction, states are checked with JDBC
+        List<StateChange> results = stateService.apply(EVENT_ID, Arrays.asList(
+            new StateChange().setId(PROPOSAL_ID).setState(Proposal.State.REFUSED),
+            new StateChange().setId(21).setState(Proposal.State.BACKUP),
+            new StateChange().setId(999).setState(Proposal.State.ACCEPTED)));
+
+        assertThat(results).extracting(StateChange::getResult).containsExactly(
+            StateChange.Result.UPDATED, StateChange.Result.UPDATED, StateChange.Result.NOT_FOUND);
+        verify(scheduleChanges).record(EVENT_ID, Arrays.asList(PROPOSAL_ID, 21));
+
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try (PreparedStatement statement = connection.prepareStatement("SELECT state FROM proposals WHERE id IN (20, 21) ORDER BY id");
+             ResultSet states = statement.executeQuery()) {
+            List<String> found = new ArrayList<>();
+            while (states.next()) {
+                found.add(states.getString(1));
+            }
+            assertThat(found).containsExactly("REFUSED", "BACKUP");
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    @Test
+    public void should_import_schedule_in_batch() throws SQLException {
+        List<ScheduleSlot> errors = scheduleImport.apply(EVENT_ID, Arrays.asList(
+            new ScheduleSlot().setRow(1).setId(PROPOSAL_ID).setStart("2043-01-02T09:30:00+01:00").setRoomId(String.valueOf(ROOM_ID)),
+            new ScheduleSlot().setRow(2).setId(21).setStart("2043-01-02T14:00:00+01:00")));
+
+        assertThat(errors).isEmpty();
+        assertThat(scheduledHours()).containsExactly("09:30", "14:00");
+    }
+
+    @Test
+    public void should_not_import_schedule_with_invalid_rows() throws SQLException {
+        List<ScheduleSlot> errors = scheduleImport.apply(EVENT_ID, Arrays.asList(
+            new ScheduleSlot().setRow(1).setId(PROPOSAL_ID).setStart("tomorrow"),
+            new ScheduleSlot().setRow(2).setId(999).setStart("2043-01-02T09:30:00+01:00"),
+            new ScheduleSlot().setRow(3).setId(PROPOSAL_ID).setStart("2043-01-02T09:30:00+01:00"),
+            new ScheduleSlot().setRow(4).setId(21).setStart("2043-01-02T09:30:00+01:00").setRoomId("51"),
+            new ScheduleSlot().setRow(5).setId(999).setStart("2043-01-02T09:30:00+01:00").setRoomId("")));
+
+        assertThat(errors).extracting(ScheduleSlot::getRow).containsExactly(1, 2, 3, 4, 5);
+        assertThat(errors).extracting(ScheduleSlot::getError).containsExactly(
+            "Invalid start: tomorrow", "Unknown talk", "Talk scheduled twice", "Unknown room: 51", "Unknown talk");
+        assertThat(scheduledHours()).containsExactly("12H00", "12H00");
+    }
+
+    @Test
+    public void should_not_import_overlapping_schedule() throws SQLException {
+        when(conflicts.check(eq(EVENT_ID), anyCollectionOf(ScheduleConflicts.Move.class))).thenReturn(
+            Collections.singletonMap(21, Collections.singletonList(new ScheduleConflict()
+                .setTalkId(21)
+                .setOtherTalkId(PROPOSAL_ID)
+                .setOtherTalkName("Talk")
+                .setType(ScheduleConflict.Type.ROOM)
+                .setResourceId(ROOM_ID))));
+
+        List<ScheduleSlot> errors = scheduleImport.apply(EVENT_ID, Arrays.asList(
+            new ScheduleSlot().setRow(1).setId(PROPOSAL_ID).setStart("2043-01-02T09:30:00+01:00").setRoomId(String.valueOf(ROOM_ID)),
+            new ScheduleSlot().setRow(2).setId(21).setStart("2043-01-02T09:30:00+01:00").setRoomId(String.valueOf(ROOM_ID)),
+            new ScheduleSlot().setRow(3).setId(999).setStart("2043-01-02T09:30:00+01:00")));
+
+        assertThat(errors).extracting(ScheduleSlot::getRow).containsExactly(2, 3);
+        assertThat(errors).extracting(ScheduleSlot::getError).containsExactly(
+            "Overlaps 'Talk' (room " + ROOM_ID + ")", "Unknown talk");
+        assertThat(scheduledHours()).containsExactly("12H00", "12H00");
+    }
+
+    private List<String> scheduledHours() throws SQLException {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try (PreparedStatement statement = connection.prepareStatement("SELECT schedule_heure FROM proposals WHERE id IN (20, 21) ORDER BY id");
+             ResultSet hours = statement.executeQuery()) {
+            List<String> found = new ArrayList<>();
+            while (hours.next()) {
+                found.add(hours.getString(1));
+            }
+            return found;
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    @Test
+    public void should_paginate_proposals_by_id() {
+        ProposalQuery proposalQuery = new ProposalQuery()
+            .setEventId(EVENT_ID)
+            .setLimit(1);
+        List<Proposal> firstPage = proposalMapper.findAll(proposalQuery);
+        assertThat(firstPage).extracting(Proposal::getId).containsExactly(20);
+
+        List<Proposal> secondPage = proposalMapper.findAll(proposalQuery.setAfter(20));
+        assertThat(secondPage).extracting(Proposal::getId).containsExactly(21);
+
+        List<Proposal> lastPage = proposalMapper.findAll(proposalQuery.setAfter(21));
+        assertThat(lastPage).isEmpty();
+    }
+
+    @Test
+    public void should_stream_proposals_ordered_by_id() {
+        List<Proposal> streamed = new ArrayList<>();
+        proposalMapper.streamAll(new ProposalQuery().setEventId(EVENT_ID), context -> streamed.add(context.getResultObject()));
+
+        assertThat(streamed).extracting(Proposal::getId).containsExactly(20, 21);
+    }
+
+    @Test
+    public void should_only_select_summary_columns() {
+        ProposalQuery proposalQuery = new ProposalQuery()
+            .setEventId(EVENT_ID)
+            .setProjection(ProposalQuery.Projection.SUMMARY);
+        List<Proposal> allProposals = proposalMapper.findAll(proposalQuery);
+
+        assertThat(allProposals).hasSize(2);
+        Proposal proposal = allProposals.stream().filter(p -> p.getId() == PROPOSAL_ID).findFirst().get();
+        assertThat(proposal.getName()).isEqualTo("PROPOSAL_NAME");
+        assertThat(proposal.getState()).isEqualTo(Proposal.State.ACCEPTED);
+        assertThat(proposal.getTrackLabel()).isEqualTo("TRACK_LIBELLE");
+        assertThat(proposal.getRoomId()).isEqualTo(ROOM_ID);
+        assertThat(proposal.getSpeaker().getEmail()).isEqualTo("EMAIL");
+        assertThat(proposal.getDescription()).isNull();
+        assertThat(proposal.getReferences()).isNull();
+        assertThat(proposal.getSpeaker().getBio()).isNull();
+        assertThat(proposal.getSpeaker().getPhone()).isNull();
+    }
+
+    @Test
+    public void should_read_each_proposal_once_when_loading_cospeakers_separately() {
+        final int proposals = 10;
+        final int cospeakers = 5;
+        final String description = String.join("", Collections.nCopies(2000, "x"));
+
+        User speaker = new User().setEmail("HEAVY_SPEAKER");
+        userMapper.insert(speaker);
+        List<User> others = new ArrayList<>();
+        for (int i = 0; i < cospeakers; i++) {
+            User cospeaker = new User().setEmail("HEAVY_COSPEAKER_" + i);
+            userMapper.insert(cospeaker);
+            others.add(cospeaker);
+        }
+        for (int i = 0; i < proposals; i++) {
+            Proposal proposal = new Proposal()
+                .setState(Proposal.State.CONFIRMED)
+                .setName("HEAVY_" + i)
+                .setEventId(EVENT_ID)
+                .setDescription(description)
+                .setSpeaker(speaker);
+            proposalMapper.insert(proposal);
+            others.forEach(cospeaker -> coSpeakerMapper.insert(proposal.getId(), cospeaker.getId()));
+        }
+
+        ProposalLoader loader = new ProposalLoader(proposalMapper, coSpeakerMapper);
+        traffic.reset();
+        List<Proposal> loaded = loader.findAll(new ProposalQuery().setEventId(EVENT_ID).setUserId(speaker.getId()));
+
+        assertThat(loaded).hasSize(proposals);
+        for (Proposal proposal : loaded) {
+            assertThat(proposal.getCospeakers()).hasSize(cospeakers);
+        }
+        assertThat(traffic.getRows()).isEqualTo(proposals + proposals * cospeakers);
+        assertThat(traffic.getBytes()).isBetween((long) proposals * description.length(), 2L * proposals * description.length());
+
+        // single query join repeats the proposal for each cospeaker
+        traffic.reset();
+        Proposal joined = proposalMapper.findById(loaded.get(0).getId(), EVENT_ID);
+
+        assertThat(joined.getCospeakers()).hasSize(cospeakers);
+        assertThat(traffic.getRows()).isEqualTo(cospeakers);
+        assertThat(traffic.getBytes()).isGreaterThan((long) cospeakers * description.length());
+    }
+
+    @Test
+    public void should_sort_proposals() {
+        ProposalQuery proposalQuery = new ProposalQuery().setEventId(EVENT_ID);
+
+        assertThat(proposalMapper.findAll(proposalQuery.setSort(ProposalQuery.Sort.STATE)))
+            .extracting(Proposal::getState).containsExactly(Proposal.State.ACCEPTED, Proposal.State.CONFIRMED);
+        assertThat(proposalMapper.findAll(proposalQuery.setSort(ProposalQuery.Sort.STATE).setOrder("desc")))
+            .extracting(Proposal::getState).containsExactly(Proposal.State.CONFIRMED, Proposal.State.ACCEPTED);
+        assertThat(proposalMapper.findAll(proposalQuery.setSort(ProposalQuery.Sort.MEAN).setOrder("desc")))
+            .extracting(Proposal::getId).containsExactly(PROPOSAL_ID, 21);
+    }
+
+    @Test
+    public void should_find_proposals_not_rated_by_reviewer() {
+        ProposalQuery proposalQuery = new ProposalQuery().setEventId(EVENT_ID).setUnratedBy(USER_ID);
+
+        assertThat(proposalMapper.findAll(proposalQuery)).extracting(Proposal::getId).containsExactly(21);
+        assertThat(proposalMapper.count(proposalQuery)).isEqualTo(1);
+
+        proposalQuery.setUnratedBy(11).setSort(ProposalQuery.Sort.VOTES).setLimit(2);
+        assertThat(proposalMapper.findAll(proposalQuery)).extracting(Proposal::getId).containsExactly(21, PROPOSAL_ID);
+    }
+
+    @Test
+    public void should_filter_proposals_by_track_and_format() {
+        ProposalQuery proposalQuery = new ProposalQuery().setEventId(EVENT_ID).setTrack(TRACK_ID).setFormat(FORMAT_ID);
+
+        assertThat(proposalMapper.findAll(proposalQuery)).hasSize(2);
+        assertThat(proposalMapper.count(proposalQuery)).isEqualTo(2);
+        assertThat(proposalMapper.findAll(proposalQuery.setTrack(41))).isEmpty();
+        assertThat(proposalMapper.count(proposalQuery)).isEqualTo(0);
+    }
+
+    @Test
+    public void should_sort_proposals_with_an_index() throws SQLException {
+        for (ProposalQuery.Sort sort : Arrays.asList(ProposalQuery.Sort.ADDED, ProposalQuery.Sort.NAME, ProposalQuery.Sort.STATE,
+                                                     ProposalQuery.Sort.TRACK, ProposalQuery.Sort.FORMAT)) {
+            assertThat(explain(new ProposalQuery().setEventId(EVENT_ID).setSort(sort)))
+                .as("sort by %s", sort).contains("index sorted");
+        }
+        for (ProposalQuery.Sort sort : Arrays.asList(ProposalQuery.Sort.ADDED, ProposalQuery.Sort.NAME)) {
+            assertThat(explain(new ProposalQuery().setEventId(EVENT_ID).addStates(Proposal.State.CONFIRMED).setSort(sort)))
+                .as("state filter, sort by %s", sort).contains("index sorted");
+        }
+        assertThat(explain(new ProposalQuery().setEventId(EVENT_ID).setTrack(TRACK_ID).setSort(ProposalQuery.Sort.ADDED)))
+            .as("track filter").contains("index sorted");
+        assertThat(explain(new ProposalQuery().setEventId(EVENT_ID).setFormat(FORMAT_ID).setSort(ProposalQuery.Sort.ADDED)))
+            .as("format filter").contains("index sorted");
+    }
+
+    private String explain(ProposalQuery query) throws SQLException {
+        MappedStatement statement = sqlSessionFactory.getConfiguration().getMappedStatement("io.cfp.mapper.ProposalMapper.findAll");
+        BoundSql sql = statement.getBoundSql(query);
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql.getSql())) {
+            new DefaultParameterHandler(statement, query, sql).setParameters(explain);
+            try (ResultSet plan = explain.executeQuery()) {
+                plan.next();
+                return plan.getString(1);
+            }
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
     @Test
     public void should_count_all_proposals() {
         Integer numberOfProposals = proposalMapper.count(new ProposalQuery());
@@ -1,8 +1,11 @@
 package io.cfp.mapper;
 
+import io.cfp.model.Proposal;
 import io.cfp.model.Rate;
+import io.cfp.model.Score;
 import io.cfp.model.Stat;
 import io.cfp.model.User;
+import io.cfp.model.queries.RateQuery;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
@@ -21,10 +24,15 @@ public class RateMapperTest {
     private static final int RATE_ID = 71;
     private static final String EVENT_ID = "EVENT_ID";
     private static final int USER_ID = 10;
+    private static final int OTHER_USER_ID = 12;
+    private static final int PROPOSAL_ID = 20;
 
     @Autowired
     private RateMapper rateMapper;
 
+    @Autowired
+    private ScoreMapper scoreMapper;
+
     @Test
     public void should_get_rates_group_by_email() {
         List<Stat> ratesByEmail = rateMapper.getRateByEmailUsers(EVENT_ID);
@@ -38,6 +46,22 @@ public class RateMapperTest {
         assertThat(deletedLines).isEqualTo(1);
     }
 
+    @Test
+    public void should_find_a_rate_by_id() {
+        Rate rate = rateMapper.findById(RATE_ID, EVENT_ID);
+
+        assertThat(rate.getRate()).isEqualTo(2);
+        assertThat(rate.getTalk().getId()).isEqualTo(PROPOSAL_ID);
+        assertThat(rateMapper.findById(RATE_ID, "OTHER_EVENT")).isNull();
+    }
+
+    @Test
+    public void should_delete_all_rates_of_an_event() {
+        int deletedLines = rateMapper.deleteAllForEvent(EVENT_ID);
+
+        assertThat(deletedLines).isEqualTo(1);
+    }
+
     @Test
     public void should_update_the_rate() {
         Rate rate = new Rate();
@@ -51,5 +75,28 @@ public class RateMapperTest {
         assertThat(updatedLines).isEqualTo(1);
     }
 
+    @Test
+    public void should_aggregate_scores_by_proposal() {
+        Rate abstention = new Rate()
+            .setRate(0)
+            .setAdded(new Date())
+            .setTalk(new Proposal().setId(PROPOSAL_ID))
+            .setUser(new User().setId(OTHER_USER_ID))
+            .setEventId(EVENT_ID);
+        rateMapper.insert(abstention);
+        scoreMapper.refresh(PROPOSAL_ID);
+
+        List<Score> scores = rateMapper.findScores(new RateQuery().setEventId(EVENT_ID));
+
+        assertThat(scores).hasSize(1);
+        Score score = scores.get(0);
+        assertThat(score.getProposalId()).isEqualTo(PROPOSAL_ID);
+        assertThat(score.getTotal()).isEqualTo(2);
+        assertThat(score.getVotes()).isEqualTo(1);
+        assertThat(score.getMean()).isEqualTo("2.0");
+        assertThat(score.getHates()).isEqualTo(1);
+        assertThat(score.getVoters()).containsOnly("EMAIL", "COSPEAKERS_EMAIL");
+    }
+
 
 }
@@ -0,0 +1,90 @@
+package io.cfp.mapper;
+
+import io.cfp.model.Proposal;
+import io.cfp.model.Rate;
+import io.cfp.model.Score;
+import io.cfp.model.User;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@RunWith(SpringRunner.class)
+@MybatisTest
+public class ScoreMapperTest {
+
+    private static final String EVENT_ID = "EVENT_ID";
+    private static final int RATE_ID = 71;
+    private static final int OTHER_USER_ID = 12;
+    private static final int PROPOSAL_ID = 20;
+    private static final int OTHER_PROPOSAL_ID = 21;
+
+    @Autowired
+    private ScoreMapper scoreMapper;
+
+    @Autowired
+    private RateMapper rateMapper;
+
+    @Test
+    public void should_find_scores_of_an_event() {
+        List<Score> scores = scoreMapper.findByEvent(EVENT_ID);
+
+        assertThat(scores).hasSize(1);
+        Score score = scores.get(0);
+        assertThat(score.getProposalId()).isEqualTo(PROPOSAL_ID);
+        assertThat(score.getTotal()).isEqualTo(2);
+        assertThat(score.getVotes()).isEqualTo(1);
+        assertThat(score.getHates()).isEqualTo(1);
+        assertThat(score.getLastRated()).isNotNull();
+    }
+
+    @Test
+    public void should_refresh_the_score_of_a_proposal() {
+        rateMapper.insert(new Rate()
+            .setRate(5)
+            .setLove(true)
+            .setAdded(new Date())
+            .setTalk(new Proposal().setId(OTHER_PROPOSAL_ID))
+            .setUser(new User().setId(OTHER_USER_ID))
+            .setEventId(EVENT_ID));
+        scoreMapper.refresh(OTHER_PROPOSAL_ID);
+
+        rateMapper.deleteForEvent(RATE_ID, EVENT_ID);
+        scoreMapper.refresh(PROPOSAL_ID);
+
+        List<Score> scores = scoreMapper.findByEvent(EVENT_ID);
+        assertThat(scores).hasSize(1);
+        Score score = scores.get(0);
+        assertThat(score.getProposalId()).isEqualTo(OTHER_PROPOSAL_ID);
+        assertThat(score.getTotal()).isEqualTo(5);
+        assertThat(score.getVotes()).isEqualTo(1);
+        assertThat(score.getLoves()).isEqualTo(1);
+        assertThat(score.getMean()).isEqualTo("5.0");
+    }
+
+    @Test
+    public void should_delete_scores_of_an_event() {
+        int deletedLines = scoreMapper.deleteAllForEvent(EVENT_ID);
+
+        assertThat(deletedLines).isEqualTo(1);
+        assertThat(scoreMapper.findByEvent(EVENT_ID)).isEmpty();
+    }
+
+    @Test
+    public void should_rebuild_scores_from_rates() {
+        scoreMapper.deleteAllForEvent(EVENT_ID);
+
+        scoreMapper.rebuild();
+
+        assertThat(scoreMapper.findByEvent(EVENT_ID))
+            .extracting(Score::getProposalId, Score::getTotal, Score::getVotes)
+            .containsExactly(tuple(PROPOSAL_ID, 2, 1));
+    }
+}
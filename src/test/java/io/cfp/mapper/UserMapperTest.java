@@ -1,12 +1,19 @@
 package io.cfp.mapper;
 
+import io.cfp.entity.Event;
 import io.cfp.model.User;
 import io.cfp.model.queries.UserQuery;
+import io.cfp.service.version.EventVersionService;
+import io.cfp.service.version.EventVersionService.Scope;
+import io.cfp.service.version.MapperWriteInterceptor;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -14,6 +21,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 @RunWith(SpringRunner.class)
 @MybatisTest
+@Import({ MapperWriteInterceptor.class, EventVersionService.class })
 public class UserMapperTest {
 
     private static final int USER_ID = 10;
@@ -22,6 +30,9 @@ public class UserMapperTest {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private EventVersionService versions;
+
     @Test
     public void should_find_all_users() {
         List<User> allUsers = userMapper.findAll(new UserQuery());
@@ -94,6 +105,25 @@ public class UserMapperTest {
         assertThat(foundUser.getTshirtSize()).isEqualTo(User.TshirtSize.M);
     }
 
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void should_bump_schedule_of_every_event_on_update() {
+        long schedule = versions.current("demo", Scope.SCHEDULE);
+        long search = versions.current("demo", Scope.SEARCH);
+        User user = new User();
+        user.setId(USER_ID);
+
+        Event.setCurrent("EVENT_ID");
+        try {
+            userMapper.update(userMapper.findById(user));
+        } finally {
+            Event.unsetCurrent();
+        }
+
+        assertThat(versions.current("demo", Scope.SCHEDULE)).isEqualTo(schedule + 1);
+        assertThat(versions.current("demo", Scope.SEARCH)).isEqualTo(search + 1);
+    }
+
     @Test
     public void should_delete_a_user() {
         User user = new User();
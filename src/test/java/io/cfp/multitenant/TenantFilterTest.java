@@ -20,12 +20,18 @@
 
 package io.cfp.multitenant;
 
+import io.cfp.entity.Event;
 import io.cfp.multitenant.TenantFilter;
 import org.junit.Test;
 import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockFilterChain;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * @author <a href="mailto:nicolas.deloof@gmail.com">Nicolas De Loof</a>
@@ -34,7 +40,11 @@ public class TenantFilterTest {
 
     private MockHttpServletRequest request = new MockHttpServletRequest();
 
-    private TenantFilter filter = new TenantFilter();
+    private TenantRegistry tenants = mock(TenantRegistry.class);
+
+    private MockEnvironment env = new MockEnvironment();
+
+    private TenantFilter filter = new TenantFilter(tenants, new TenantThrottle(env));
 
     @Test
     public void should_retrieve_tenant_from_Origin() {
@@ -63,4 +73,101 @@ public class TenantFilterTest {
         assertEquals("test", filter.extractTenant(request));
     }
 
+    @Test
+    public void should_reject_unknown_tenant_on_api() throws Exception {
+        request.setRequestURI("/api/proposals");
+        request.addHeader(TenantFilter.TENANT_HEADER, "unknown");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(404, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    public void should_list_events_from_unknown_tenant() throws Exception {
+        request.setRequestURI("/api/events");
+        request.addHeader(HttpHeaders.ORIGIN, "https://www.cfp.io");
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+        assertEquals("demo", Event.current());
+    }
+
+    @Test
+    public void should_accept_known_tenant() throws Exception {
+        when(tenants.exists("test")).thenReturn(true);
+        request.setRequestURI("/api/proposals");
+        request.addHeader(TenantFilter.TENANT_HEADER, "Test");
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+        assertEquals("test", request.getAttribute("tenantId"));
+    }
+
+    @Test
+    public void should_serve_static_resources_whatever_the_tenant() throws Exception {
+        request.setRequestURI("/index.html");
+        request.setServerName("unknown.cfp.io");
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    public void should_fallback_to_demo_without_tenant() throws Exception {
+        request.setRequestURI("/api/events");
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+        assertEquals("demo", Event.current());
+    }
+
+    @Test
+    public void should_reject_tenant_over_its_budget() throws Exception {
+        when(tenants.exists("test")).thenReturn(true);
+        env.setProperty("cfp.tenants.limits.events.test.burst", "1");
+        env.setProperty("cfp.tenants.limits.events.test.rate", "1");
+        filter = new TenantFilter(tenants, new TenantThrottle(env));
+        request.setRequestURI("/api/proposals");
+        request.addHeader(TenantFilter.TENANT_HEADER, "test");
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+
+        assertEquals(429, response.getStatus());
+        assertEquals("1", response.getHeader(HttpHeaders.RETRY_AFTER));
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    public void should_not_count_preflight_requests() throws Exception {
+        when(tenants.exists("test")).thenReturn(true);
+        env.setProperty("cfp.tenants.limits.events.test.burst", "1");
+        env.setProperty("cfp.tenants.limits.events.test.rate", "1");
+        filter = new TenantFilter(tenants, new TenantThrottle(env));
+        request.setMethod("OPTIONS");
+        request.setRequestURI("/api/proposals");
+        request.addHeader(HttpHeaders.ORIGIN, "https://test.cfp.io");
+        request.addHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "GET");
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+    }
+
 }
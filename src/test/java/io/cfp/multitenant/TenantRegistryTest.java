@@ -0,0 +1,66 @@
+package io.cfp.multitenant;
+
+import io.cfp.mapper.EventMapper;
+import io.cfp.model.Event;
+import io.cfp.model.queries.EventQuery;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TenantRegistryTest {
+
+    @Mock
+    private EventMapper events;
+
+    private TenantRegistry tenants;
+
+    @Before
+    public void setUp() {
+        tenants = new TenantRegistry(events);
+        when(events.findAll(any(EventQuery.class))).thenReturn(Arrays.asList(
+            new Event().setId("demo").setName("Demo"),
+            new Event().setId("breizhcamp").setName("BreizhCamp")));
+    }
+
+    @Test
+    public void should_load_all_events_once() {
+        assertThat(tenants.exists("demo")).isTrue();
+        assertThat(tenants.exists("unknown")).isFalse();
+        assertThat(tenants.get("breizhcamp").getName()).isEqualTo("BreizhCamp");
+
+        verify(events, times(1)).findAll(any(EventQuery.class));
+    }
+
+    @Test
+    public void should_refresh_one_event() {
+        tenants.reload();
+        when(events.findOne("devoxx")).thenReturn(new Event().setId("devoxx"));
+        when(events.findOne("demo")).thenReturn(new Event().setId("demo").setName("Renamed"));
+
+        tenants.refresh("devoxx");
+        tenants.refresh("demo");
+
+        assertThat(tenants.exists("devoxx")).isTrue();
+        assertThat(tenants.get("demo").getName()).isEqualTo("Renamed");
+    }
+
+    @Test
+    public void should_forget_deleted_event() {
+        tenants.reload();
+
+        tenants.refresh("demo");
+
+        assertThat(tenants.exists("demo")).isFalse();
+    }
+}
@@ -0,0 +1,102 @@
+package io.cfp.multitenant;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TenantThrottleTest {
+
+    private long now = 0;
+
+    private Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return now;
+        }
+    };
+
+    private MockEnvironment env = new MockEnvironment()
+        .withProperty("cfp.tenants.limits.concurrency", "2")
+        .withProperty("cfp.tenants.limits.rate", "2")
+        .withProperty("cfp.tenants.limits.burst", "4");
+
+    @Test
+    public void should_limit_concurrent_requests() {
+        env.setProperty("cfp.tenants.limits.rate", "0");
+        TenantThrottle throttle = new TenantThrottle(env, ticker);
+
+        TenantThrottle.Ticket first = throttle.admit("demo", false);
+        TenantThrottle.Ticket second = throttle.admit("demo", false);
+        assertThat(first.isAdmitted()).isTrue();
+        assertThat(second.isAdmitted()).isTrue();
+        assertThat(throttle.admit("demo", false).isAdmitted()).isFalse();
+
+        first.release();
+        assertThat(throttle.admit("demo", false).isAdmitted()).isTrue();
+    }
+
+    @Test
+    public void should_limit_request_rate() {
+        TenantThrottle throttle = new TenantThrottle(env, ticker);
+
+        for (int i = 0; i < 4; i++) {
+            throttle.admit("demo", false).release();
+        }
+        TenantThrottle.Ticket rejected = throttle.admit("demo", false);
+        assertThat(rejected.isAdmitted()).isFalse();
+        assertThat(rejected.getRetryAfter()).isEqualTo(1);
+
+        now += TimeUnit.MILLISECONDS.toNanos(500);
+        assertThat(throttle.admit("demo", false).isAdmitted()).isTrue();
+        assertThat(throttle.admit("demo", false).isAdmitted()).isFalse();
+    }
+
+    @Test
+    public void should_isolate_tenants_and_heavy_requests() {
+        env.setProperty("cfp.tenants.limits.admin.burst", "1");
+        env.setProperty("cfp.tenants.limits.admin.rate", "1");
+        TenantThrottle throttle = new TenantThrottle(env, ticker);
+
+        assertThat(throttle.admit("demo", true).isAdmitted()).isTrue();
+        assertThat(throttle.admit("demo", true).isAdmitted()).isFalse();
+        assertThat(throttle.admit("demo", false).isAdmitted()).isTrue();
+        assertThat(throttle.admit("other", true).isAdmitted()).isTrue();
+    }
+
+    @Test
+    public void should_override_limits_per_event() {
+        env.setProperty("cfp.tenants.limits.events.big.burst", "10");
+        TenantThrottle throttle = new TenantThrottle(env, ticker);
+
+        for (int i = 0; i < 10; i++) {
+            TenantThrottle.Ticket ticket = throttle.admit("big", false);
+            assertThat(ticket.isAdmitted()).isTrue();
+            ticket.release();
+        }
+        for (int i = 0; i < 4; i++) {
+            throttle.admit("demo", false).release();
+        }
+        assertThat(throttle.admit("demo", false).isAdmitted()).isFalse();
+    }
+
+    @Test
+    public void should_detect_heavy_requests() {
+        TenantThrottle throttle = new TenantThrottle(env, ticker);
+
+        assertThat(throttle.isHeavy(new MockHttpServletRequest("GET", "/api/admin/stats"))).isFalse();
+        assertThat(throttle.isHeavy(new MockHttpServletRequest("GET", "/api/admin/sessions"))).isFalse();
+        assertThat(throttle.isHeavy(new MockHttpServletRequest("GET", "/v1/sessions/export/cards.pdf"))).isTrue();
+        assertThat(throttle.isHeavy(new MockHttpServletRequest("POST", "/v1/proposals/states"))).isTrue();
+        assertThat(throttle.isHeavy(new MockHttpServletRequest("PUT", "/api/admin/sessions/rejectOthers"))).isTrue();
+        assertThat(throttle.isHeavy(new MockHttpServletRequest("GET", "/v1/proposals"))).isFalse();
+
+        MockHttpServletRequest stream = new MockHttpServletRequest("GET", "/v1/proposals");
+        stream.setParameter("stream", "true");
+        assertThat(throttle.isHeavy(stream)).isTrue();
+    }
+}
@@ -4,6 +4,7 @@ import io.cfp.dto.RateAdmin;
 import io.cfp.entity.Rate;
 import io.cfp.entity.Talk;
 import io.cfp.entity.User;
+import io.cfp.mapper.ScoreMapper;
 import io.cfp.repository.EventRepository;
 import io.cfp.repository.RateRepo;
 import io.cfp.repository.TalkRepo;
@@ -13,6 +14,7 @@ import ma.glasnost.orika.impl.DefaultMapperFactory;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -22,6 +24,8 @@ import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.when;
 
 /**
@@ -49,11 +53,14 @@ public class RateAdminServiceTest {
     @Mock
     private UserRepo users;
 
+    @Mock
+    private ScoreMapper scores;
+
     private RateAdminService rateAdminService;
 
     @Before
     public void setup() {
-        rateAdminService = new RateAdminService(rateRepo, talkRepo, mapper, events, users);
+        rateAdminService = new RateAdminService(rateRepo, talkRepo, mapper, events, users, scores);
     }
 
     @Test
@@ -84,6 +91,23 @@ public class RateAdminServiceTest {
         assertThat(rate.isLove()).isEqualTo(false);
     }
 
+    @Test
+    public void delete_should_refresh_score_of_the_talk() throws Exception {
+        // Given
+        Rate rate = createRate(RATE_ID, new Date(), 3, TALK_ID, false, false,
+            "mail@mail.com", "firstname", "lastname");
+        when(rateRepo.findByIdAndEventId(eq(RATE_ID), anyString())).thenReturn(rate);
+
+        // When
+        rateAdminService.delete(RATE_ID);
+
+        // Then
+        InOrder inOrder = inOrder(rateRepo, scores);
+        inOrder.verify(rateRepo).delete(rate);
+        inOrder.verify(rateRepo).flush();
+        inOrder.verify(scores).refresh(TALK_ID);
+    }
+
     private Rate createRate(int id, Date added, int rate, int talkId, boolean love, boolean hate, String email, String firstname, String lastname) {
         Rate result = new Rate();
         result.setId(id);
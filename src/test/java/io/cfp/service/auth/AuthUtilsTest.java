@@ -0,0 +1,123 @@
+package io.cfp.service.auth;
+
+import io.cfp.entity.Role;
+import io.cfp.mapper.UserMapper;
+import io.cfp.model.User;
+import io.cfp.repository.RoleRepository;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AuthUtilsTest {
+
+    private static final String EMAIL = "EMAIL";
+    private static final int USER_ID = 10;
+
+    @Mock
+    private UserMapper userMapper;
+
+    @Mock
+    private RoleRepository roleRepository;
+
+    private AuthUtils authUtils;
+
+    @Before
+    public void setUp() {
+        authUtils = new AuthUtils();
+        ReflectionTestUtils.setField(authUtils, "userMapper", userMapper);
+        ReflectionTestUtils.setField(authUtils, "roleRepository", roleRepository);
+        ReflectionTestUtils.setField(authUtils, "principals", new PrincipalCache(100));
+        ReflectionTestUtils.setField(authUtils, "signingKey", "secret");
+        when(userMapper.findByEmail(EMAIL)).thenReturn(new User().setId(USER_ID).setEmail(EMAIL));
+    }
+
+    @Test
+    public void should_verify_a_token_once() {
+        String token = token(DateTime.now().plusHours(1).toDate(), "secret");
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(authUtils.getAuthUser(request(token)).getEmail()).isEqualTo(EMAIL);
+        }
+
+        assertThat(metric("auth.tokens.miss")).isEqualTo(1L);
+        assertThat(metric("auth.tokens.hit")).isEqualTo(2L);
+        assertThat(metric("auth.tokens.size")).isEqualTo(1L);
+    }
+
+    @Test
+    public void should_resolve_user_and_roles_once_per_event() {
+        Role admin = new Role();
+        admin.setName(Role.ADMIN);
+        when(roleRepository.findByUserIdAndEventId(USER_ID, "demo")).thenReturn(Collections.singletonList(admin));
+        String token = token(DateTime.now().plusHours(1).toDate(), "secret");
+
+        User user = authUtils.getAuthUser(request(token));
+        assertThat(user.getRoles()).containsOnly(Role.AUTHENTICATED, Role.ADMIN, Role.REVIEWER);
+        user.addRole(Role.OWNER);
+
+        assertThat(authUtils.getAuthUser(request(token)).getRoles()).doesNotContain(Role.OWNER);
+        verify(userMapper, times(1)).findByEmail(EMAIL);
+        verify(roleRepository, times(1)).findByUserIdAndEventId(USER_ID, "demo");
+    }
+
+    @Test
+    public void should_not_use_cached_claims_of_an_expired_token() throws InterruptedException {
+        String token = token(new Date(System.currentTimeMillis() + 1000), "secret");
+
+        assertThat(authUtils.getAuthUser(request(token))).isNotNull();
+        Thread.sleep(1100);
+
+        assertThat(authUtils.getAuthUser(request(token))).isNull();
+        assertThat(metric("auth.tokens.size")).isEqualTo(0L);
+    }
+
+    @Test(expected = SignatureException.class)
+    public void should_not_cache_invalid_tokens() {
+        String token = token(DateTime.now().plusHours(1).toDate(), "other");
+
+        try {
+            authUtils.getAuthUser(request(token));
+        } finally {
+            assertThat(metric("auth.tokens.size")).isEqualTo(0L);
+        }
+    }
+
+    private static String token(Date expiration, String key) {
+        return Jwts.builder()
+            .setSubject(EMAIL)
+            .setExpiration(expiration)
+            .signWith(SignatureAlgorithm.HS512, key)
+            .compact();
+    }
+
+    private static MockHttpServletRequest request(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+
+    private Object metric(String name) {
+        return authUtils.metrics().stream()
+            .filter(m -> m.getName().equals(name))
+            .map(Metric::getValue)
+            .findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,84 @@
+package io.cfp.service.auth;
+
+import io.cfp.entity.Role;
+import io.cfp.model.User;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrincipalCacheTest {
+
+    private PrincipalCache principals = new PrincipalCache(100);
+
+    private AtomicInteger loads = new AtomicInteger();
+
+    private User load(String email) {
+        loads.incrementAndGet();
+        return new User().setEmail(email).addRole(Role.AUTHENTICATED);
+    }
+
+    @Test
+    public void should_cache_per_user_and_event() {
+        principals.get("a@b.c", "E1", () -> load("a@b.c"));
+        principals.get("a@b.c", "E1", () -> load("a@b.c"));
+        principals.get("a@b.c", "E2", () -> load("a@b.c"));
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_evict_user_of_all_events() {
+        principals.get("a@b.c", "E1", () -> load("a@b.c"));
+        principals.get("a@b.c", "E2", () -> load("a@b.c"));
+        principals.get("x@y.z", "E1", () -> load("x@y.z"));
+
+        principals.evict("a@b.c");
+
+        principals.get("a@b.c", "E1", () -> load("a@b.c"));
+        principals.get("a@b.c", "E2", () -> load("a@b.c"));
+        principals.get("x@y.z", "E1", () -> load("x@y.z"));
+        assertThat(loads.get()).isEqualTo(5);
+    }
+
+    @Test
+    public void should_evict_users_of_an_event() {
+        principals.get("a@b.c", "E1", () -> load("a@b.c"));
+        principals.get("a@b.c", "E2", () -> load("a@b.c"));
+
+        principals.evictEvent("E1");
+
+        principals.get("a@b.c", "E1", () -> load("a@b.c"));
+        principals.get("a@b.c", "E2", () -> load("a@b.c"));
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void should_evict_after_commit() {
+        principals.get("a@b.c", "E1", () -> load("a@b.c"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            principals.evict("a@b.c");
+            principals.get("a@b.c", "E1", () -> load("a@b.c"));
+            assertThat(loads.get()).isEqualTo(1);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        principals.get("a@b.c", "E1", () -> load("a@b.c"));
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_not_share_cached_user() {
+        principals.get("a@b.c", "E1", () -> load("a@b.c")).addRole(Role.ADMIN);
+
+        assertThat(principals.get("a@b.c", "E1", () -> load("a@b.c")).getRoles()).containsOnly(Role.AUTHENTICATED);
+    }
+}
@@ -31,6 +31,7 @@ import io.cfp.dto.user.UserProfil;
 import io.cfp.entity.Event;
 import io.cfp.entity.Talk;
 import io.cfp.entity.User;
+import io.cfp.multitenant.TenantRegistry;
 import io.cfp.repository.CfpConfigRepo;
 import io.cfp.repository.EventRepository;
 import io.cfp.repository.UserRepo;
@@ -39,6 +40,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
@@ -55,6 +57,9 @@ import java.io.IOException;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -81,7 +86,7 @@ public class EmailingServiceTest {
     private UserRepo users;
 
     @Autowired
-    private EventRepository eventRepo;
+    private TenantRegistry tenants;
 
     @Autowired
     private freemarker.template.Configuration freemarkerCfg;
@@ -96,12 +101,11 @@ public class EmailingServiceTest {
 
     private TalkUser talkUser;
 
-    private Event event;
+    private io.cfp.model.Event event;
 
     @Before
     public void setup() throws IOException {
         emailingService = new EmailingService();
-        emailingService.loadSubjects();
         emailSender = "sender@cfp.io";
 
         user = new User();
@@ -124,25 +128,25 @@ public class EmailingServiceTest {
         talkAdmin.setId(2);
         talkAdmin.setName("My amazing user talk 2");
 
-        event = Event.builder()
-            .id("test")
-            .name("test")
-            .date(new Date())
-            .releaseDate(new Date())
-            .logoUrl("http://localhost/logo.png")
-            .contactMail(CONTACT_MAIL)
-            .build();
+        event = new io.cfp.model.Event()
+            .setId("test")
+            .setName("test")
+            .setDate(new Date())
+            .setReleaseDate(new Date())
+            .setLogoUrl("http://localhost/logo.png")
+            .setContactMail(CONTACT_MAIL);
 
         Event.setCurrent("test");
-        when(eventRepo.findOne("test")).thenReturn(event);
+        when(tenants.get("test")).thenReturn(event);
 
         MockitoAnnotations.initMocks(this);
 
+        MailRenderer renderer = new MailRenderer(freemarkerCfg, tenants, "demo.cfp.io");
+        renderer.compile();
+
         ReflectionTestUtils.setField(emailingService, "users", users);
-        ReflectionTestUtils.setField(emailingService, "eventRepo", eventRepo);
-        ReflectionTestUtils.setField(emailingService, "freemarker", freemarkerCfg);
+        ReflectionTestUtils.setField(emailingService, "renderer", renderer);
         ReflectionTestUtils.setField(emailingService, "emailSender", emailSender);
-        ReflectionTestUtils.setField(emailingService, "hostname", "demo.cfp.io");
 
         testSmtp = new GreenMail(ServerSetupTest.SMTP);
         testSmtp.start();
@@ -162,7 +166,7 @@ public class EmailingServiceTest {
 
         // Then
         verify(emailingService).processTemplate(eq(templatePath), anyMap());
-        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(JOHN_DOE_EMAIL), anyString(), anyString(), isNull(List.class), isNull(List.class));
+        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(JOHN_DOE_EMAIL), anyString(), anyString(), isNull(List.class), isNull(List.class), any(Personalization.class));
     }
 
     @Test
@@ -175,7 +179,7 @@ public class EmailingServiceTest {
 
         // Then
         verify(emailingService).processTemplate(eq(templatePath), anyMap());
-        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(JOHN_DOE_EMAIL), anyString(), anyString(), notNull(List.class), isNull(List.class));
+        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(JOHN_DOE_EMAIL), anyString(), anyString(), notNull(List.class), isNull(List.class), any(Personalization.class));
     }
 
     @Test
@@ -188,7 +192,7 @@ public class EmailingServiceTest {
 
         // Then
         verify(emailingService).processTemplate(eq(templatePath), anyMap());
-        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(emailSender), anyString(), anyString(), isNull(List.class), notNull(List.class));
+        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(emailSender), anyString(), anyString(), isNull(List.class), notNull(List.class), any(Personalization.class));
     }
 
     @Test
@@ -201,7 +205,7 @@ public class EmailingServiceTest {
 
         // Then
         verify(emailingService).processTemplate(eq(templatePath), anyMap());
-        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(JOHN_DOE_EMAIL), anyString(), anyString(), notNull(List.class), isNull(List.class));
+        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(JOHN_DOE_EMAIL), anyString(), anyString(), notNull(List.class), isNull(List.class), any(Personalization.class));
     }
 
     @Test
@@ -214,7 +218,7 @@ public class EmailingServiceTest {
 
         // Then
         verify(emailingService).processTemplate(eq(templatePath), anyMap());
-        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(JOHN_DOE_EMAIL), anyString(), anyString(), notNull(List.class), isNull(List.class));
+        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(JOHN_DOE_EMAIL), anyString(), anyString(), notNull(List.class), isNull(List.class), any(Personalization.class));
     }
 
     @Test
@@ -227,7 +231,7 @@ public class EmailingServiceTest {
 
         // Then
         verify(emailingService).processTemplate(eq(templatePath), anyMap());
-        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(JOHN_DOE_EMAIL), anyString(), anyString(), notNull(List.class), isNull(List.class));
+        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(JOHN_DOE_EMAIL), anyString(), anyString(), notNull(List.class), isNull(List.class), any(Personalization.class));
     }
 
     @Test
@@ -363,6 +367,67 @@ public class EmailingServiceTest {
         assertEquals(false, content.contains("$"));
     }
 
+    @Test
+    public void sendEmailEnqueuesInOutbox() {
+        // Given
+        EmailOutbox outbox = mock(EmailOutbox.class);
+        ReflectionTestUtils.setField(emailingService, "outbox", outbox);
+        ReflectionTestUtils.setField(emailingService, "send", true);
+        List<String> cc = Collections.singletonList("jane@doe.net");
+
+        // When
+        emailingService.sendEmail(CONTACT_MAIL, JOHN_DOE_EMAIL, "subject", "<p>content</p>", cc, null);
+
+        // Then
+        verify(outbox).enqueue(CONTACT_MAIL, JOHN_DOE_EMAIL, "subject", "<p>content</p>", cc, null, null);
+    }
+
+    @Test
+    public void sendSelectionnedIsPersonalized() {
+        // When
+        emailingService.sendSelectionned(talk, Locale.FRENCH);
+
+        // Then
+        ArgumentCaptor<String> content = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Personalization> personalization = ArgumentCaptor.forClass(Personalization.class);
+        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq(JOHN_DOE_EMAIL), anyString(), content.capture(), anyList(), isNull(List.class), personalization.capture());
+        assertNotNull(personalization.getValue());
+        assertTrue(personalization.getValue().getContent().contains(Personalization.tag("name")));
+        assertEquals(content.getValue(), personalization.getValue().apply());
+    }
+
+    @Test
+    public void sendSelectionRendersAllTalks() {
+        // Given
+        User jane = new User();
+        jane.setEmail("jane.doe@gmail.com");
+        jane.setFirstname("jane");
+        Talk refused = new Talk();
+        refused.user(jane).name("Boring talk");
+        refused.setState(Talk.State.REFUSED);
+        talk.setState(Talk.State.ACCEPTED);
+        Talk other = new Talk();
+        other.user(jane).name("Other talk");
+        other.setState(Talk.State.ACCEPTED);
+
+        // When
+        emailingService.sendSelection(Arrays.asList(talk, refused, other));
+
+        // Then
+        ArgumentCaptor<String> content = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Personalization> personalization = ArgumentCaptor.forClass(Personalization.class);
+        verify(emailingService, times(2)).sendEmail(eq(CONTACT_MAIL), anyString(), eq("Your proposal has been accepted"),
+            content.capture(), anyList(), isNull(List.class), personalization.capture());
+        verify(emailingService).sendEmail(eq(CONTACT_MAIL), eq("jane.doe@gmail.com"), eq("Your proposal has been refused"),
+            contains("Boring talk"), anyList(), isNull(List.class), any(Personalization.class));
+        verify(emailingService, never()).processTemplate(anyString(), anyMap());
+
+        assertTrue(content.getAllValues().get(0).contains("Awesome talk"));
+        assertTrue(content.getAllValues().get(1).contains("Other talk"));
+        assertEquals(personalization.getAllValues().get(0).getContent(), personalization.getAllValues().get(1).getContent());
+        assertEquals(content.getAllValues().get(1), personalization.getAllValues().get(1).apply());
+    }
+
     @After
     public void cleanup() {
         testSmtp.stop();
@@ -410,6 +475,11 @@ public class EmailingServiceTest {
             return mock(EventRepository.class);
         }
 
+        @Bean // field injection of EmailingService and ApplicationConfigService
+        public TenantRegistry tenantRegistry() {
+            return mock(TenantRegistry.class);
+        }
+
         @Bean
         public freemarker.template.Configuration freemarkerCfg() {
             freemarker.template.Configuration config = new freemarker.template.Configuration(freemarker.template.Configuration.VERSION_2_3_21);
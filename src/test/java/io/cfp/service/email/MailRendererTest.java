@@ -0,0 +1,95 @@
+package io.cfp.service.email;
+
+import freemarker.template.Configuration;
+import io.cfp.config.MailConfig;
+import io.cfp.entity.Event;
+import io.cfp.multitenant.TenantRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class MailRendererTest {
+
+    private TenantRegistry tenants = mock(TenantRegistry.class);
+
+    private MailRenderer renderer = new MailRenderer(new MailConfig().freemarkerConfig(), tenants, "http://{{event}}.cfp.io");
+
+    private io.cfp.model.Event event = event("contact@breizhcamp.org");
+
+    @Before
+    public void setUp() throws IOException {
+        renderer.compile();
+        Event.setCurrent("breizhcamp");
+        when(tenants.get("breizhcamp")).thenReturn(event);
+    }
+
+    @Test
+    public void should_format_precompiled_subjects() {
+        assertThat(renderer.subject("newMessageAdmin", Locale.ENGLISH, "John Doe", "Java"))
+            .isEqualTo("Speaker John Doe posted a new comment on talk Java");
+        assertThat(renderer.subject("newMessage", Locale.FRENCH, "Java")).isEqualTo("Nouveau commentaire sur le talk Java");
+        assertThat(renderer.subject("selectionned", Locale.GERMAN)).isEqualTo("Your proposal has been accepted");
+        assertThat(renderer.subject("unknown", Locale.ENGLISH)).isNull();
+    }
+
+    @Test
+    public void should_cache_globals_until_event_is_reloaded() {
+        Map<String, Object> globals = renderer.globals();
+
+        assertThat(globals).containsEntry("hostname", "http://breizhcamp.cfp.io")
+            .containsEntry("contactMail", "contact@breizhcamp.org")
+            .containsEntry("event", event);
+        assertThat(renderer.globals()).isSameAs(globals);
+
+        io.cfp.model.Event reloaded = event("orga@breizhcamp.org");
+        when(tenants.get("breizhcamp")).thenReturn(reloaded);
+
+        assertThat(renderer.globals()).containsEntry("contactMail", "orga@breizhcamp.org");
+    }
+
+    @Test
+    public void should_render_many_recipients_like_one() {
+        List<Map<String, Object>> models = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            models.add(model("Speaker " + i, "Talk " + i));
+        }
+
+        List<String> contents = renderer.renderAll("en/selectionned.html", models);
+
+        assertThat(contents).hasSize(10);
+        assertThat(contents.get(3)).contains("Speaker 3", "Talk 3").doesNotContain("Speaker 2");
+        assertThat(contents.get(7)).isEqualTo(renderer.render("en/selectionned.html", model("Speaker 7", "Talk 7")));
+    }
+
+    @Test
+    public void should_not_render_unknown_template() {
+        assertThat(renderer.render("en/unknown.html", model("John", "Java"))).isNull();
+    }
+
+    private static Map<String, Object> model(String name, String talk) {
+        Map<String, Object> model = new HashMap<>();
+        model.put("name", name);
+        model.put("talk", talk);
+        return model;
+    }
+
+    private static io.cfp.model.Event event(String contactMail) {
+        return new io.cfp.model.Event()
+            .setId("breizhcamp")
+            .setName("BreizhCamp")
+            .setDate(new Date())
+            .setReleaseDate(new Date())
+            .setLogoUrl("http://localhost/logo.png")
+            .setContactMail(contactMail);
+    }
+}
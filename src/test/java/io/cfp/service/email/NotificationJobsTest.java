@@ -0,0 +1,152 @@
+package io.cfp.service.email;
+
+import io.cfp.domain.exception.BusyException;
+import io.cfp.entity.Event;
+import io.cfp.entity.Talk;
+import io.cfp.entity.User;
+import io.cfp.mapper.NotificationJobMapper;
+import io.cfp.model.NotificationJob;
+import io.cfp.repository.TalkRepo;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static io.cfp.model.NotificationJob.Status.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class NotificationJobsTest {
+
+    private static final String EVENT_ID = "breizhcamp";
+
+    private NotificationJobMapper jobs = mock(NotificationJobMapper.class);
+
+    private TalkRepo talks = mock(TalkRepo.class);
+
+    private EmailingService emailing = mock(EmailingService.class);
+
+    private NotificationJobs notifications = new NotificationJobs(jobs, talks, emailing, mock(PlatformTransactionManager.class),
+        new SyncTaskExecutor(), 1000, 60_000, 2);
+
+    private Talk accepted = talk(1, Talk.State.ACCEPTED);
+
+    private Talk refused = talk(2, Talk.State.REFUSED);
+
+    private Talk other = talk(3, Talk.State.ACCEPTED);
+
+    @Before
+    public void setUp() {
+        when(talks.findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class)))
+            .thenReturn(Arrays.asList(accepted, refused, other));
+        when(jobs.progress(anyInt(), anyInt(), anyInt(), any(Date.class))).thenReturn(1);
+    }
+
+    @Test
+    public void should_notify_all_speakers() {
+        NotificationJob job = notifications.start(EVENT_ID, NotificationJob.Filter.ALL);
+
+        assertThat(job.getTotal()).isEqualTo(3);
+        assertThat(job.getStatus()).isEqualTo(RUNNING);
+        verify(jobs).insert(job);
+        verify(emailing).sendSelection(Arrays.asList(accepted, refused));
+        verify(emailing).sendSelection(Collections.singletonList(other));
+        verify(jobs).progress(eq(job.getId()), eq(2), eq(2), any(Date.class));
+        verify(jobs).progress(eq(job.getId()), eq(3), eq(1), any(Date.class));
+        verify(jobs).finish(eq(job.getId()), eq(DONE), any(Date.class));
+    }
+
+    @Test
+    public void should_leave_job_running_when_all_threads_are_busy() {
+        TaskExecutor busy = task -> {
+            throw new TaskRejectedException("busy");
+        };
+        notifications = new NotificationJobs(jobs, talks, emailing, mock(PlatformTransactionManager.class), busy, 1000, 60_000, 2);
+
+        NotificationJob job = notifications.start(EVENT_ID, NotificationJob.Filter.ALL);
+
+        assertThat(job.getStatus()).isEqualTo(RUNNING);
+        verify(jobs).insert(job);
+        verifyZeroInteractions(emailing);
+        verify(jobs, never()).finish(anyInt(), any(NotificationJob.Status.class), any(Date.class));
+    }
+
+    @Test
+    public void should_not_leave_event_on_thread() {
+        Event.unsetCurrent();
+
+        notifications.start(EVENT_ID, NotificationJob.Filter.ALL);
+
+        assertThat(Event.peekCurrent()).isNull();
+    }
+
+    @Test
+    public void should_refuse_second_job_of_event() {
+        when(jobs.insert(any(NotificationJob.class))).thenThrow(new DuplicateKeyException("notification_jobs_running"));
+
+        assertThatThrownBy(() -> notifications.start(EVENT_ID, NotificationJob.Filter.ALL))
+            .isInstanceOf(BusyException.class);
+        verifyZeroInteractions(emailing);
+    }
+
+    @Test
+    public void should_stop_when_cancelled() {
+        when(jobs.progress(anyInt(), eq(3), anyInt(), any(Date.class))).thenReturn(0);
+
+        NotificationJob job = notifications.start(EVENT_ID, NotificationJob.Filter.ALL);
+
+        verify(emailing).sendSelection(Arrays.asList(accepted, refused));
+        verify(emailing, never()).sendSelection(Collections.singletonList(other));
+        verify(jobs, never()).finish(eq(job.getId()), any(NotificationJob.Status.class), any(Date.class));
+    }
+
+    @Test
+    public void should_resume_stale_job_after_last_notified_talk() {
+        Date updated = new Date(System.currentTimeMillis() - 120_000);
+        NotificationJob stale = new NotificationJob().setId(7).setEventId(EVENT_ID).setFilter(NotificationJob.Filter.ALL)
+            .setStatus(RUNNING).setLastTalk(1).setUpdated(updated);
+        when(jobs.findStale(any(Date.class))).thenReturn(Arrays.asList(stale));
+        when(jobs.claim(eq(7), eq(updated), any(Date.class))).thenReturn(1);
+
+        notifications.resume();
+
+        verify(emailing).sendSelection(Arrays.asList(refused, other));
+        verify(emailing, times(1)).sendSelection(anyListOf(Talk.class));
+        verify(jobs).finish(eq(7), eq(DONE), any(Date.class));
+    }
+
+    @Test
+    public void should_not_resume_job_claimed_by_another_instance() {
+        NotificationJob stale = new NotificationJob().setId(7).setEventId(EVENT_ID).setFilter(NotificationJob.Filter.ALL)
+            .setStatus(RUNNING).setUpdated(new Date(0));
+        when(jobs.findStale(any(Date.class))).thenReturn(Arrays.asList(stale));
+
+        notifications.resume();
+
+        verifyZeroInteractions(emailing);
+    }
+
+    private static Talk talk(int id, Talk.State state) {
+        User speaker = new User();
+        speaker.setEmail("speaker" + id + "@cfp.io");
+        speaker.setLanguage("français");
+        Talk talk = new Talk();
+        talk.setId(id);
+        talk.setState(state);
+        talk.setUser(speaker);
+        return talk;
+    }
+}
@@ -0,0 +1,128 @@
+package io.cfp.service.email;
+
+import io.cfp.mapper.EmailOutboxMapper;
+import io.cfp.model.OutboxEmail;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class OutboxWorkerTest {
+
+    private EmailOutboxMapper emails = mock(EmailOutboxMapper.class);
+
+    private MailTransport transport = mock(MailTransport.class);
+
+    private MockEnvironment env = new MockEnvironment()
+        .withProperty("cfp.outbox.batch-size", "3")
+        .withProperty("cfp.outbox.chunk", "2")
+        .withProperty("cfp.outbox.max-attempts", "3")
+        .withProperty("cfp.outbox.backoff", "1000");
+
+    private OutboxWorker worker;
+
+    {
+        when(transport.getName()).thenReturn("sendgrid");
+        when(transport.send(anyListOf(OutboxEmail.class))).thenReturn(Collections.emptyMap());
+        worker = new OutboxWorker(emails, Collections.singletonList(transport), env);
+    }
+
+    @After
+    public void tearDown() {
+        worker.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_drain_due_emails_in_chunks() throws Exception {
+        OutboxEmail first = email(1, 0).setBatchKey("b");
+        OutboxEmail second = email(2, 0);
+        OutboxEmail third = email(3, 0).setBatchKey("a");
+        OutboxEmail fourth = email(4, 0);
+        when(emails.findDue(any(Date.class), eq(3)))
+            .thenReturn(Arrays.asList(first, second, third))
+            .thenReturn(Collections.singletonList(fourth));
+        when(emails.claim(anyInt(), any(Date.class), any(Date.class))).thenReturn(1);
+
+        worker.drain();
+
+        ArgumentCaptor<List> chunks = ArgumentCaptor.forClass(List.class);
+        verify(transport, times(3)).send(chunks.capture());
+        assertThat(chunks.getAllValues()).containsOnly(
+            Arrays.asList(third, first),
+            Collections.singletonList(second),
+            Collections.singletonList(fourth));
+        verify(emails, times(4)).markSent(anyInt(), any(Date.class));
+        verify(emails, times(2)).findDue(any(Date.class), eq(3));
+    }
+
+    @Test
+    public void should_skip_emails_claimed_by_another_instance() throws Exception {
+        OutboxEmail email = email(1, 0);
+        when(emails.findDue(any(Date.class), eq(3))).thenReturn(Collections.singletonList(email));
+
+        worker.drain();
+
+        verify(transport, never()).send(anyListOf(OutboxEmail.class));
+    }
+
+    @Test
+    public void should_retry_failures_with_backoff() throws Exception {
+        OutboxEmail sent = email(1, 0);
+        OutboxEmail failed = email(2, 1);
+        when(transport.send(anyListOf(OutboxEmail.class)))
+            .thenReturn(Collections.singletonMap(2, new IOException("503 Service Unavailable")));
+
+        long before = System.currentTimeMillis();
+        worker.send(Arrays.asList(sent, failed));
+
+        ArgumentCaptor<Date> next = ArgumentCaptor.forClass(Date.class);
+        verify(emails).markSent(eq(1), any(Date.class));
+        verify(emails).markRetry(eq(2), eq(2), next.capture(), contains("503"));
+        assertThat(next.getValue().getTime()).isBetween(before + 2000, System.currentTimeMillis() + 2000);
+    }
+
+    @Test
+    public void should_give_up_after_max_attempts() throws Exception {
+        OutboxEmail email = email(1, 2);
+        when(transport.send(anyListOf(OutboxEmail.class)))
+            .thenReturn(Collections.singletonMap(1, new IOException("550 No such user")));
+
+        worker.send(Collections.singletonList(email));
+
+        verify(emails).markFailed(eq(1), eq(3), anyString());
+        verify(emails, never()).markRetry(anyInt(), anyInt(), any(Date.class), anyString());
+    }
+
+    @Test
+    public void should_retry_emails_of_unknown_provider() throws Exception {
+        OutboxEmail email = email(1, 0).setProvider("carrier-pigeon");
+
+        worker.send(Collections.singletonList(email));
+
+        verify(emails).markRetry(eq(1), eq(1), any(Date.class), contains("carrier-pigeon"));
+    }
+
+    private static OutboxEmail email(int id, int attempts) {
+        return new OutboxEmail()
+            .setId(id)
+            .setProvider("sendgrid")
+            .setRecipient("john@doe.net")
+            .setAttempts(attempts)
+            .setNextAttempt(new Date());
+    }
+}
@@ -0,0 +1,42 @@
+package io.cfp.service.email;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class PersonalizationTest {
+
+    @Test
+    public void should_extract_values_of_tags() {
+        String tagged = "<p>Hello [%name%], your talk [%talk%] is accepted</p>";
+        String content = "<p>Hello John, your talk Java &amp; me is accepted</p>";
+
+        Personalization personalization = Personalization.extract(tagged, content, Arrays.asList("name", "talk"));
+
+        assertThat(personalization).isNotNull();
+        assertThat(personalization.getContent()).isEqualTo(tagged);
+        assertThat(personalization.getValues()).containsOnly(entry("[%name%]", "John"), entry("[%talk%]", "Java &amp; me"));
+        assertThat(personalization.apply()).isEqualTo(content);
+    }
+
+    @Test
+    public void should_accept_repeated_tags_with_same_value() {
+        String tagged = "[%name%] and [%name%]";
+
+        Personalization personalization = Personalization.extract(tagged, "John and John", Collections.singleton("name"));
+
+        assertThat(personalization.getValues()).containsOnly(entry("[%name%]", "John"));
+    }
+
+    @Test
+    public void should_not_personalize_when_values_are_ambiguous() {
+        assertThat(Personalization.extract("[%name%] and [%name%]", "John and Jane", Collections.singleton("name"))).isNull();
+        assertThat(Personalization.extract("Hello [%name%]", "Bye John", Collections.singleton("name"))).isNull();
+        assertThat(Personalization.extract("Hello", "Hello", Collections.singleton("name"))).isNull();
+        assertThat(Personalization.extract(null, "Hello", Collections.singleton("name"))).isNull();
+    }
+}
@@ -0,0 +1,139 @@
+package io.cfp.service.email;
+
+import com.sun.net.httpserver.HttpServer;
+import io.cfp.model.OutboxEmail;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SendGridTransportTest {
+
+    private HttpServer server;
+
+    private List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    private int status = 200;
+
+    private long latency;
+
+    private SendGridTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.add(IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"message\":\"success\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        transport = new SendGridTransport("key", "http://localhost:" + server.getAddress().getPort(), 2, "cfp@cfp.io");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    public void should_send_emails_with_same_batch_key_in_one_call() {
+        List<OutboxEmail> emails = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            emails.add(personalized(i, "Speaker " + i));
+        }
+
+        Map<Integer, Exception> failures = transport.send(emails);
+
+        assertThat(failures).isEmpty();
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0))
+            .contains("speaker1@cfp.io", "speaker50@cfp.io", "\"[%name%]\":[\"Speaker 1\"", "Hello [%name%]");
+    }
+
+    @Test
+    public void should_send_other_emails_on_their_own() {
+        OutboxEmail single = new OutboxEmail().setId(3).setRecipient("jane@cfp.io").setSubject("Comment")
+            .setContent("<p>New comment</p>").setCc("john@cfp.io");
+
+        transport.send(Arrays.asList(personalized(1, "John"), personalized(2, "Jane"), single));
+
+        assertThat(requests).hasSize(2);
+        assertThat(requests.get(1)).contains("jane@cfp.io", "<p>New comment</p>", "john@cfp.io");
+    }
+
+    @Test
+    public void should_report_failures_of_a_call_for_all_its_emails() {
+        status = 503;
+
+        Map<Integer, Exception> failures = transport.send(Arrays.asList(personalized(1, "John"), personalized(2, "Jane")));
+
+        assertThat(failures).containsOnlyKeys(1, 2);
+        assertThat(failures.get(1)).hasMessageContaining("503");
+    }
+
+    @Test
+    public void should_split_batches_at_max_recipients() {
+        List<OutboxEmail> emails = new ArrayList<>();
+        for (int i = 1; i <= SendGridTransport.MAX_RECIPIENTS + 1; i++) {
+            emails.add(personalized(i, "Speaker " + i));
+        }
+
+        assertThat(SendGridTransport.batches(emails)).extracting("size").containsExactly(SendGridTransport.MAX_RECIPIENTS, 1);
+    }
+
+    @Test
+    public void should_send_bulk_notifications_ten_times_faster_in_batches() {
+        // a provider taking 10ms per call, whatever its number of recipients
+        latency = 10;
+        List<OutboxEmail> batched = new ArrayList<>();
+        List<OutboxEmail> oneByOne = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            batched.add(personalized(i, "Speaker " + i));
+            oneByOne.add(personalized(i, "Speaker " + i).setBatchKey(null));
+        }
+        // open the pooled connection first
+        transport.send(Collections.singletonList(personalized(0, "Warm up")));
+
+        long start = System.nanoTime();
+        assertThat(transport.send(oneByOne)).isEmpty();
+        long single = System.nanoTime() - start;
+        start = System.nanoTime();
+        assertThat(transport.send(batched)).isEmpty();
+        long batch = System.nanoTime() - start;
+
+        assertThat(requests).hasSize(52);
+        assertThat(single).isGreaterThan(10 * batch);
+    }
+
+    private static OutboxEmail personalized(int id, String name) {
+        return new OutboxEmail()
+            .setId(id)
+            .setReplyTo("contact@cfp.io")
+            .setRecipient("speaker" + id + "@cfp.io")
+            .setSubject("Accepted")
+            .setContent("<p>Hello " + name + "</p>")
+            .setBatchKey("accepted")
+            .setBatchContent("<p>Hello [%name%]</p>")
+            .setSubstitutions("{\"[%name%]\":\"" + name + "\"}");
+    }
+}
@@ -0,0 +1,73 @@
+package io.cfp.service.schedule;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntervalTreeTest {
+
+    @Test
+    public void should_find_overlapping_intervals() {
+        IntervalTree<String> tree = new IntervalTree<>();
+        tree.add(10, 20, 1, "a");
+        tree.add(20, 30, 2, "b");
+        tree.add(15, 40, 3, "c");
+
+        assertThat(overlapping(tree, 0, 10)).isEmpty();
+        assertThat(overlapping(tree, 19, 20)).containsOnly("a", "c");
+        assertThat(overlapping(tree, 30, 35)).containsOnly("c");
+        assertThat(overlapping(tree, 40, 50)).isEmpty();
+    }
+
+    @Test
+    public void should_remove_intervals() {
+        IntervalTree<String> tree = new IntervalTree<>();
+        tree.add(10, 20, 1, "a");
+        tree.add(10, 20, 2, "b");
+
+        assertThat(tree.remove(10, 1)).isTrue();
+        assertThat(tree.remove(10, 1)).isFalse();
+        assertThat(tree.size()).isEqualTo(1);
+        assertThat(overlapping(tree, 10, 11)).containsOnly("b");
+    }
+
+    @Test
+    public void should_match_a_linear_scan() {
+        Random random = new Random(42);
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        List<long[]> intervals = new ArrayList<>();
+        for (int id = 0; id < 2000; id++) {
+            long start = random.nextInt(10_000);
+            long[] interval = {start, start + 1 + random.nextInt(200), id};
+            intervals.add(interval);
+            tree.add(interval[0], interval[1], id, id);
+        }
+        for (int i = 0; i < 500; i++) {
+            long[] removed = intervals.remove(random.nextInt(intervals.size()));
+            assertThat(tree.remove(removed[0], (int) removed[2])).isTrue();
+        }
+        assertThat(tree.size()).isEqualTo(intervals.size());
+
+        for (int i = 0; i < 200; i++) {
+            long start = random.nextInt(10_000);
+            long end = start + 1 + random.nextInt(100);
+            List<Integer> expected = new ArrayList<>();
+            for (long[] interval : intervals) {
+                if (interval[0] < end && interval[1] > start) {
+                    expected.add((int) interval[2]);
+                }
+            }
+            assertThat(overlapping(tree, start, end)).containsOnlyElementsOf(expected).hasSameSizeAs(expected);
+        }
+    }
+
+    private static <T> List<T> overlapping(IntervalTree<T> tree, long start, long end) {
+        List<T> found = new ArrayList<>();
+        tree.overlapping(start, end, found::add);
+        return found;
+    }
+}
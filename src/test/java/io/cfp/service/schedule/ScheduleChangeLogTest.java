@@ -0,0 +1,162 @@
+package io.cfp.service.schedule;
+
+import io.cfp.dto.ScheduleChanges;
+import io.cfp.dto.user.Schedule;
+import io.cfp.entity.Format;
+import io.cfp.entity.Talk;
+import io.cfp.entity.Track;
+import io.cfp.entity.User;
+import io.cfp.repository.TalkRepo;
+import io.cfp.service.version.EventVersionService;
+import io.cfp.service.version.EventVersionService.Scope;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(SpringRunner.class)
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ScheduleChangeLogTest {
+
+    @Configuration
+    @Import({ EventVersionService.class, ScheduleChangeLog.class })
+    static class Config {
+    }
+
+    @MockBean
+    private TalkRepo talks;
+
+    @Autowired
+    private ScheduleChangeLog log;
+
+    @Autowired
+    private EventVersionService versions;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Test
+    public void should_send_talks_changed_since_version() {
+        String eventId = "changes";
+        log.record(eventId, Arrays.asList(1, 2));
+        long version = versions.current(eventId, Scope.SCHEDULE);
+        log.record(eventId, 2);
+        log.record(eventId, 3);
+        when(talks.findByEventIdAndStatesAndIdsFetch(eq(eventId), anyCollectionOf(Talk.State.class), anyCollectionOf(Integer.class)))
+            .thenReturn(Collections.singletonList(talk(2)));
+
+        ScheduleChanges changes = log.changes(eventId, version);
+
+        assertThat(changes.isReset()).isFalse();
+        assertThat(changes.getVersion()).isEqualTo(version + 2);
+        assertThat(changes.getTalks()).extracting(Schedule::getId).containsExactly(2);
+        // not scheduled anymore
+        assertThat(changes.getRemoved()).containsExactly(3);
+        verify(talks).findByEventIdAndStatesAndIdsFetch(eq(eventId), anyCollectionOf(Talk.State.class), eq(Arrays.asList(2, 3)));
+    }
+
+    @Test
+    public void should_send_nothing_to_up_to_date_clients() {
+        String eventId = "uptodate";
+        log.record(eventId, 1);
+
+        ScheduleChanges changes = log.changes(eventId, versions.current(eventId, Scope.SCHEDULE));
+
+        assertThat(changes.isReset()).isFalse();
+        assertThat(changes.getTalks()).isEmpty();
+        assertThat(changes.getRemoved()).isEmpty();
+        verify(talks, never()).findByEventIdAndStatesAndIdsFetch(eq(eventId), anyCollectionOf(Talk.State.class), anyCollectionOf(Integer.class));
+    }
+
+    @Test
+    public void should_send_whole_schedule_once_pruned() {
+        String eventId = "pruned";
+        log.record(eventId, 1);
+        long version = versions.current(eventId, Scope.SCHEDULE);
+        log.record(eventId, 2);
+        jdbc.update("UPDATE schedule_changes SET changed = ? WHERE event_id = ?", new Date(0), eventId);
+        when(talks.findByEventIdAndStatesFetch(eq(eventId), anyCollectionOf(Talk.State.class)))
+            .thenReturn(Arrays.asList(talk(1), talk(2)));
+
+        log.prune();
+
+        ScheduleChanges changes = log.changes(eventId, version);
+        assertThat(changes.isReset()).isTrue();
+        assertThat(changes.getTalks()).extracting(Schedule::getId).containsExactly(1, 2);
+        assertThat(log.changes(eventId, versions.current(eventId, Scope.SCHEDULE)).isReset()).isFalse();
+    }
+
+    @Test
+    public void should_send_whole_schedule_to_unknown_versions() {
+        String eventId = "unknown";
+        log.record(eventId, 1);
+
+        assertThat(log.changes(eventId, null).isReset()).isTrue();
+        assertThat(log.changes(eventId, versions.current(eventId, Scope.SCHEDULE) + 1).isReset()).isTrue();
+    }
+
+    @Test
+    public void should_reset_when_all_talks_are_deleted() {
+        String eventId = "reset";
+        log.record(eventId, 1);
+        long version = versions.current(eventId, Scope.SCHEDULE);
+
+        log.reset(eventId);
+
+        assertThat(log.changes(eventId, version).isReset()).isTrue();
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM schedule_changes WHERE event_id = ?", Integer.class, eventId)).isZero();
+    }
+
+    @Test
+    public void should_send_talks_of_renamed_room() {
+        String eventId = "renamed";
+        jdbc.update("INSERT INTO events (id, short_description, open) VALUES (?, 'Test', true)", eventId);
+        jdbc.update("INSERT INTO rooms (event_id, name) VALUES (?, 'Room')", eventId);
+        int roomId = jdbc.queryForObject("SELECT id FROM rooms WHERE event_id = ?", Integer.class, eventId);
+        jdbc.update("INSERT INTO proposals (state, name, event_id, room_id, schedule_date) VALUES ('ACCEPTED', 'Scheduled', ?, ?, ?)",
+            eventId, roomId, new Date(0));
+        jdbc.update("INSERT INTO proposals (state, name, event_id, room_id) VALUES ('ACCEPTED', 'Unscheduled', ?, ?)", eventId, roomId);
+        int talkId = jdbc.queryForObject("SELECT id FROM proposals WHERE event_id = ? AND name = 'Scheduled'", Integer.class, eventId);
+        long version = versions.current(eventId, Scope.SCHEDULE);
+        when(talks.findByEventIdAndStatesAndIdsFetch(eq(eventId), anyCollectionOf(Talk.State.class), anyCollectionOf(Integer.class)))
+            .thenReturn(Collections.singletonList(talk(talkId)));
+
+        jdbc.update("UPDATE rooms SET name = 'Renamed' WHERE id = ?", roomId);
+        log.roomChanged(eventId, roomId);
+
+        ScheduleChanges changes = log.changes(eventId, version);
+        assertThat(changes.isReset()).isFalse();
+        assertThat(changes.getTalks()).extracting(Schedule::getId).containsExactly(talkId);
+        verify(talks).findByEventIdAndStatesAndIdsFetch(eq(eventId), anyCollectionOf(Talk.State.class), eq(Collections.singletonList(talkId)));
+    }
+
+    private static Talk talk(int id) {
+        Talk talk = new Talk()
+            .id(id)
+            .name("Talk " + id)
+            .user(new User())
+            .track(new Track().libelle("Web"))
+            .format(new Format().name("Conference").duration(45));
+        talk.setDate(new Date(0));
+        return talk;
+    }
+}
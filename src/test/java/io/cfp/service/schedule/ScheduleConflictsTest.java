@@ -0,0 +1,160 @@
+package io.cfp.service.schedule;
+
+import io.cfp.domain.exception.ScheduleConflictException;
+import io.cfp.entity.Format;
+import io.cfp.entity.Room;
+import io.cfp.entity.Talk;
+import io.cfp.entity.User;
+import io.cfp.model.ScheduleConflict;
+import io.cfp.repository.TalkRepo;
+import io.cfp.service.version.EventVersionService;
+import io.cfp.service.version.EventVersionService.Scope;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.groups.Tuple.tuple;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ScheduleConflictsTest {
+
+    private static final String EVENT_ID = "breizhcamp";
+
+    private static final long HOUR = 3_600_000;
+
+    private TalkRepo talks = mock(TalkRepo.class);
+
+    private EventVersionService versions = mock(EventVersionService.class);
+
+    private ScheduleConflicts conflicts = new ScheduleConflicts(talks, versions);
+
+    @Before
+    public void setUp() {
+        when(versions.current(EVENT_ID, Scope.SCHEDULE)).thenReturn(3L);
+        // 1 and 2 in room 50 at the same time, 3 has the speaker of 1 an hour later
+        when(talks.findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class))).thenReturn(Arrays.asList(
+            talk(1, 10, 50, 0L),
+            talk(2, 11, 50, 0L),
+            talk(3, 10, 51, HOUR),
+            talk(4, 12, null, null)));
+    }
+
+    @Test
+    public void should_report_overlapping_talks() {
+        assertThat(conflicts.report(EVENT_ID))
+            .extracting(ScheduleConflict::getTalkId, ScheduleConflict::getOtherTalkId, ScheduleConflict::getType, ScheduleConflict::getResourceId)
+            .containsOnly(tuple(1, 2, ScheduleConflict.Type.ROOM, 50));
+    }
+
+    @Test
+    public void should_find_speaker_conflicts() {
+        assertThat(conflicts.check(EVENT_ID, talk(4, 10, 52, HOUR / 2)))
+            .extracting(ScheduleConflict::getOtherTalkId)
+            .containsOnly(1, 3);
+    }
+
+    @Test
+    public void should_reject_new_overlaps_only() {
+        Throwable rejected = catchThrowable(() -> conflicts.validate(EVENT_ID, talk(3, 10, 50, HOUR / 2)));
+        assertThat(rejected).isInstanceOf(ScheduleConflictException.class);
+        assertThat(((ScheduleConflictException) rejected).getConflicts()).extracting(ScheduleConflict::getOtherTalkId)
+            .containsOnly(1, 2);
+
+        // 1 already overlaps 2, renaming it is fine
+        conflicts.validate(EVENT_ID, talk(1, 10, 50, 0L).name("Renamed"));
+    }
+
+    @Test
+    public void should_check_moves_as_one_placement() {
+        when(talks.findByEventIdAndStatesAndIdsFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class), anyCollectionOf(Integer.class)))
+            .thenReturn(Collections.singletonList(talk(5, 13, null, null)));
+
+        // 2 takes the place 3 leaves, 4 and 5 land where 1 stays
+        Map<Integer, List<ScheduleConflict>> found = conflicts.check(EVENT_ID, Arrays.asList(
+            new ScheduleConflicts.Move(2, 51, new Date(HOUR)),
+            new ScheduleConflicts.Move(3, null, new Date(2 * HOUR)),
+            new ScheduleConflicts.Move(4, 50, new Date(0)),
+            new ScheduleConflicts.Move(5, 50, new Date(HOUR / 2))));
+
+        assertThat(found.keySet()).containsExactly(4, 5);
+        assertThat(found.get(4)).extracting(ScheduleConflict::getOtherTalkId).containsOnly(1, 5);
+        assertThat(found.get(5)).extracting(ScheduleConflict::getOtherTalkId).containsOnly(1, 4);
+        // the index is left as it was
+        assertThat(conflicts.report(EVENT_ID)).extracting(ScheduleConflict::getTalkId, ScheduleConflict::getOtherTalkId)
+            .containsOnly(tuple(1, 2));
+    }
+
+    @Test
+    public void should_apply_committed_moves_without_rebuilding() {
+        conflicts.report(EVENT_ID);
+
+        // outside of a transaction, each write is applied as soon as its version is bumped
+        committedAt(4L);
+        conflicts.moved(EVENT_ID, 2, 51, new Date(2 * HOUR));
+        committedAt(5L);
+        conflicts.updated(EVENT_ID, talk(4, 12, 50, 0L));
+        when(versions.current(EVENT_ID, Scope.SCHEDULE)).thenReturn(5L);
+
+        assertThat(conflicts.report(EVENT_ID)).extracting(ScheduleConflict::getOtherTalkId).containsOnly(4);
+        verify(talks, times(1)).findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class));
+    }
+
+    @Test
+    public void should_keep_index_while_talks_are_rated() {
+        conflicts.report(EVENT_ID);
+        when(versions.current(EVENT_ID)).thenReturn(9L);
+
+        conflicts.report(EVENT_ID);
+
+        verify(talks, times(1)).findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class));
+    }
+
+    @Test
+    public void should_rebuild_after_unknown_writes() {
+        conflicts.report(EVENT_ID);
+        when(versions.current(EVENT_ID, Scope.SCHEDULE)).thenReturn(7L);
+        when(talks.findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class)))
+            .thenReturn(Collections.singletonList(talk(1, 10, 50, 0L)));
+
+        assertThat(conflicts.report(EVENT_ID)).isEmpty();
+    }
+
+    private void committedAt(long version) {
+        doAnswer(invocation -> {
+            invocation.getArgumentAt(2, LongConsumer.class).accept(version);
+            return null;
+        }).when(versions).afterCommit(eq(EVENT_ID), eq(Scope.SCHEDULE), any(LongConsumer.class));
+    }
+
+    private static Talk talk(int id, int speaker, Integer room, Long start) {
+        Talk talk = new Talk()
+            .id(id)
+            .name("Talk " + id)
+            .user(new User().id(speaker))
+            .format(new Format().duration(60));
+        if (room != null) {
+            Room r = new Room();
+            r.setId(room);
+            talk.setRoom(r);
+        }
+        if (start != null) {
+            talk.setDate(new Date(start));
+        }
+        return talk;
+    }
+}
@@ -0,0 +1,179 @@
+package io.cfp.service.schedule;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.cfp.entity.Format;
+import io.cfp.entity.Talk;
+import io.cfp.entity.Track;
+import io.cfp.entity.User;
+import io.cfp.repository.TalkRepo;
+import io.cfp.service.version.EventVersionChanged;
+import io.cfp.service.version.EventVersionService;
+import io.cfp.service.version.EventVersionService.Scope;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ScheduleSnapshotsTest {
+
+    private static final String EVENT_ID = "breizhcamp";
+
+    private TalkRepo talks = mock(TalkRepo.class);
+
+    private EventVersionService versions = mock(EventVersionService.class);
+
+    private ScheduleSnapshots snapshots = new ScheduleSnapshots(talks, versions, new ObjectMapper(),
+        mock(PlatformTransactionManager.class), new SyncTaskExecutor());
+
+    @Before
+    public void setUp() {
+        when(versions.current(EVENT_ID, Scope.SCHEDULE)).thenReturn(3L);
+        when(talks.findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class)))
+            .thenReturn(Arrays.asList(talk(1, "Java", new Date(0)), talk(2, "Unscheduled", null)));
+    }
+
+    @Test
+    public void should_build_snapshot_once() throws IOException {
+        ScheduleSnapshot snapshot = snapshots.get(EVENT_ID);
+
+        assertThat(snapshots.get(EVENT_ID)).isSameAs(snapshot);
+        verify(talks, times(1)).findByEventIdAndStatesFetch(EVENT_ID, Collections.singleton(Talk.State.ACCEPTED));
+
+        String json = new String(snapshot.getJson(), StandardCharsets.UTF_8);
+        assertThat(json).contains("\"name\":\"Java\"", "\"event_start\":\"1970-01-01T00:00:00Z\"", "\"venue\":\"TBD\"")
+            .doesNotContain("Unscheduled");
+        assertThat(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(snapshot.getGzip())))).isEqualTo(snapshot.getJson());
+        assertThat(snapshot.getVersion()).isEqualTo(3);
+    }
+
+    @Test
+    public void should_keep_etag_while_content_is_unchanged() {
+        ScheduleSnapshot first = new ScheduleSnapshot(1, "[]".getBytes(StandardCharsets.UTF_8));
+        ScheduleSnapshot second = new ScheduleSnapshot(2, "[]".getBytes(StandardCharsets.UTF_8));
+        ScheduleSnapshot changed = new ScheduleSnapshot(3, "[{}]".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(second.getEtag(false)).isEqualTo(first.getEtag(false)).isNotEqualTo(changed.getEtag(false));
+        assertThat(first.getEtag(true)).isNotEqualTo(first.getEtag(false));
+    }
+
+    @Test
+    public void should_rebuild_when_event_changes() {
+        ScheduleSnapshot before = snapshots.get(EVENT_ID);
+        when(talks.findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class)))
+            .thenReturn(Collections.singletonList(talk(1, "Kotlin", new Date(0))));
+
+        snapshots.changed(new EventVersionChanged(EVENT_ID, EnumSet.allOf(Scope.class)));
+
+        ScheduleSnapshot after = snapshots.get(EVENT_ID);
+        assertThat(after).isNotSameAs(before);
+        assertThat(new String(after.getJson(), StandardCharsets.UTF_8)).contains("Kotlin");
+    }
+
+    @Test
+    public void should_ignore_changes_outside_of_the_schedule() {
+        snapshots.get(EVENT_ID);
+
+        snapshots.changed(new EventVersionChanged(EVENT_ID, EnumSet.of(Scope.EVENT)));
+        when(versions.current(EVENT_ID)).thenReturn(9L);
+        snapshots.check();
+
+        verify(talks, times(1)).findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class));
+    }
+
+    @Test
+    public void should_build_first_snapshot_once_for_concurrent_reads() throws Exception {
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(talks.findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class))).thenAnswer(invocation -> {
+            building.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.singletonList(talk(1, "Java", new Date(0)));
+        });
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+        try {
+            Future<ScheduleSnapshot> first = readers.submit(() -> snapshots.get(EVENT_ID));
+            building.await(5, TimeUnit.SECONDS);
+            Future<ScheduleSnapshot> second = readers.submit(() -> snapshots.get(EVENT_ID));
+            release.countDown();
+
+            assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+        } finally {
+            readers.shutdown();
+        }
+        verify(talks, times(1)).findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class));
+    }
+
+    @Test
+    public void should_ignore_changes_of_events_not_read() {
+        snapshots.changed(new EventVersionChanged(EVENT_ID, EnumSet.allOf(Scope.class)));
+
+        verifyZeroInteractions(talks);
+    }
+
+    @Test
+    public void should_rebuild_when_version_moved_on_another_instance() {
+        ScheduleSnapshot before = snapshots.get(EVENT_ID);
+
+        snapshots.check();
+        assertThat(snapshots.get(EVENT_ID)).isSameAs(before);
+
+        when(versions.current(EVENT_ID, Scope.SCHEDULE)).thenReturn(4L);
+        snapshots.check();
+
+        assertThat(snapshots.get(EVENT_ID).getVersion()).isEqualTo(4);
+        verify(talks, times(2)).findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class));
+    }
+
+    @Test
+    public void should_retry_rebuild_rejected_by_saturated_executor() {
+        TaskExecutor executor = mock(TaskExecutor.class);
+        doThrow(new TaskRejectedException("saturated")).doAnswer(invocation -> {
+            invocation.getArgumentAt(0, Runnable.class).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+        snapshots = new ScheduleSnapshots(talks, versions, new ObjectMapper(), mock(PlatformTransactionManager.class), executor);
+        snapshots.get(EVENT_ID);
+
+        snapshots.changed(new EventVersionChanged(EVENT_ID, EnumSet.allOf(Scope.class)));
+        snapshots.check();
+
+        verify(talks, times(2)).findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class));
+    }
+
+    private static Talk talk(int id, String name, Date date) {
+        User speaker = new User();
+        speaker.setFirstname("John");
+        speaker.setLastname("Doe");
+        Talk talk = new Talk()
+            .id(id)
+            .name(name)
+            .track(new Track().libelle("Web"))
+            .format(new Format().name("Conference").duration(45));
+        talk.setUser(speaker);
+        talk.setDate(date);
+        return talk;
+    }
+}
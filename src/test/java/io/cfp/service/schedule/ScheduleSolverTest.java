@@ -0,0 +1,165 @@
+package io.cfp.service.schedule;
+
+import io.cfp.domain.exception.BadRequestException;
+import io.cfp.domain.exception.BusyException;
+import io.cfp.dto.FullCalendar;
+import io.cfp.dto.ScheduleProposal;
+import io.cfp.entity.Event;
+import io.cfp.entity.Format;
+import io.cfp.entity.Room;
+import io.cfp.entity.Talk;
+import io.cfp.entity.Track;
+import io.cfp.entity.User;
+import io.cfp.mapper.ScoreMapper;
+import io.cfp.model.Score;
+import io.cfp.repository.EventRepository;
+import io.cfp.repository.RoomRepo;
+import io.cfp.repository.TalkRepo;
+import io.cfp.service.schedule.ScheduleProblem.Solution;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScheduleSolverTest {
+
+    private static final String EVENT_ID = "breizhcamp";
+
+    private TalkRepo talks = mock(TalkRepo.class);
+
+    private RoomRepo rooms = mock(RoomRepo.class);
+
+    private EventRepository events = mock(EventRepository.class);
+
+    private ScoreMapper scores = mock(ScoreMapper.class);
+
+    private ScheduleSolver solver = new ScheduleSolver(talks, rooms, events, scores, mock(PlatformTransactionManager.class),
+        2, 200, "09:00", "12:00", 30);
+
+    @After
+    public void tearDown() {
+        solver.shutdown();
+    }
+
+    @Test
+    public void should_not_schedule_a_speaker_twice_at_once() {
+        // 2 rooms of 3 hours for 6 talks of 1 hour, talks 0 to 2 share a speaker
+        int[][] speakers = {{1}, {1, 2}, {3, 1}, {4}, {5}, {6}};
+        ScheduleProblem problem = new ScheduleProblem(new int[]{60, 60, 60, 60, 60, 60}, new int[]{0, 1, 2, 3, 4, 5},
+            speakers, new int[6], 2, 1, 9 * 60, 12 * 60, 30);
+
+        Solution solution = solver.search(problem);
+
+        assertThat(solution.getConflicts()).isZero();
+        assertThat(Arrays.asList(solution.start(0), solution.start(1), solution.start(2))).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void should_keep_well_rated_talks_in_large_rooms() {
+        ScheduleProblem problem = new ScheduleProblem(new int[]{180, 180}, new int[]{0, 1},
+            new int[][]{{1}, {2}}, new int[]{0, 45}, 2, 1, 9 * 60, 12 * 60, 30);
+
+        Solution solution = solver.search(problem);
+
+        assertThat(solution.getCost()).isZero();
+        assertThat(solution.room(1)).isEqualTo(0);
+        assertThat(solution.room(0)).isEqualTo(1);
+    }
+
+    @Test
+    public void should_group_tracks_in_rooms() {
+        // 2 tracks of 3 talks, each track fits in a room
+        ScheduleProblem problem = new ScheduleProblem(new int[]{60, 60, 60, 60, 60, 60}, new int[]{7, 8, 7, 8, 7, 8},
+            new int[][]{{1}, {2}, {3}, {4}, {5}, {6}}, new int[6], 2, 1, 9 * 60, 12 * 60, 60);
+
+        Solution solution = solver.search(problem);
+
+        assertThat(solution.getCost()).isZero();
+        assertThat(solution.room(2)).isEqualTo(solution.room(0)).isEqualTo(solution.room(4));
+        assertThat(solution.room(3)).isEqualTo(solution.room(1)).isEqualTo(solution.room(5));
+    }
+
+    @Test
+    public void should_propose_calendar_of_accepted_talks() {
+        Event event = new Event();
+        event.setId(EVENT_ID);
+        event.setDate(Date.valueOf(LocalDate.of(2043, 3, 21)));
+        event.setDuration(2);
+        when(events.findOne(EVENT_ID)).thenReturn(event);
+        when(rooms.findByEventId(EVENT_ID)).thenReturn(Arrays.asList(room(51, "Small"), room(50, "Amphi")));
+        when(talks.findByEventIdAndStatesFetch(eq(EVENT_ID), anyCollectionOf(Talk.State.class)))
+            .thenReturn(Arrays.asList(talk(1, 10), talk(2, 10), talk(3, 11)));
+        when(scores.findByEvent(EVENT_ID)).thenReturn(Collections.singletonList(new Score().setProposalId(3).setTotal(9).setVotes(2)));
+
+        ScheduleProposal proposal = solver.solve(EVENT_ID);
+
+        assertThat(proposal.getConflicts()).isZero();
+        FullCalendar calendar = proposal.getCalendar();
+        assertThat(calendar.getResources()).extracting(FullCalendar.Resource::getId).containsExactly("50", "51");
+        assertThat(calendar.getEvents()).extracting(FullCalendar.Event::getId).containsExactly("1", "2", "3");
+        assertThat(calendar.getEvents().get(2).getResourceId()).isEqualTo("50");
+        List<FullCalendar.Event> placed = calendar.getEvents();
+        for (FullCalendar.Event e : placed) {
+            LocalDateTime start = LocalDateTime.parse(e.getStart(), DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            assertThat(start.toLocalDate()).isIn(LocalDate.of(2043, 3, 21), LocalDate.of(2043, 3, 22));
+            assertThat(start.getHour()).isBetween(9, 11);
+        }
+    }
+
+    @Test
+    public void should_solve_one_schedule_at_a_time() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(events.findOne(EVENT_ID)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+        ExecutorService admins = Executors.newSingleThreadExecutor();
+        try {
+            Future<ScheduleProposal> first = admins.submit(() -> solver.solve(EVENT_ID));
+            loading.await(5, TimeUnit.SECONDS);
+
+            assertThatThrownBy(() -> solver.solve(EVENT_ID)).isInstanceOf(BusyException.class);
+
+            release.countDown();
+            assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(BadRequestException.class);
+        } finally {
+            admins.shutdown();
+        }
+    }
+
+    private static Room room(int id, String name) {
+        Room room = new Room().withName(name);
+        room.setId(id);
+        return room;
+    }
+
+    private static Talk talk(int id, int speaker) {
+        return new Talk()
+            .id(id)
+            .name("Talk " + id)
+            .user(new User().id(speaker))
+            .track(new Track().id(id).libelle("Track " + id))
+            .format(new Format().name("Conference").duration(45));
+    }
+}
@@ -0,0 +1,146 @@
+package io.cfp.service.search;
+
+import io.cfp.mapper.ProposalMapper;
+import io.cfp.model.Proposal;
+import io.cfp.model.User;
+import io.cfp.model.queries.ProposalQuery;
+import io.cfp.service.ProposalLoader;
+import io.cfp.service.version.EventVersionService;
+import io.cfp.service.version.EventVersionService.Scope;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProposalSearchServiceTest {
+
+    private static final String EVENT_ID = "EVENT_ID";
+
+    @Mock
+    private ProposalLoader loader;
+
+    @Mock
+    private ProposalMapper proposals;
+
+    @Mock
+    private EventVersionService versions;
+
+    private ProposalSearchService searchService;
+
+    private Proposal kotlin = new Proposal().setId(1).setName("Kotlin pour les développeurs Java")
+        .setDescription("Les coroutines").setSpeaker(new User().setId(10).setFirstname("Jane").setLastname("Doe"));
+
+    private Proposal jvm = new Proposal().setId(2).setName("Tuning the JVM")
+        .setDescription("GC logs for Java developers").setReferences("Kotlin meetup")
+        .setSpeaker(new User().setId(11).setFirstname("John").setLastname("Smith"))
+        .setCospeakers(Collections.singleton(new User().setId(12).setFirstname("Alice").setLastname("Martin")));
+
+    private Proposal web = new Proposal().setId(3).setName("Web components")
+        .setDescription("Custom elements").setSpeaker(new User().setId(13).setFirstname("Bob").setLastname("Martin"));
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        searchService = new ProposalSearchService(loader, proposals, versions);
+        doAnswer(invocation -> {
+            Consumer<Proposal> consumer = invocation.getArgumentAt(1, Consumer.class);
+            consumer.accept(kotlin);
+            consumer.accept(jvm);
+            consumer.accept(web);
+            return null;
+        }).when(loader).stream(any(ProposalQuery.class), any(Consumer.class));
+        when(versions.current(EVENT_ID, Scope.SEARCH)).thenReturn(5L);
+    }
+
+    @Test
+    public void should_rank_name_matches_first() {
+        assertThat(searchService.search(EVENT_ID, "kotlin", 10)).extracting(Proposal::getId).containsExactly(1, 2);
+        assertThat(searchService.search(EVENT_ID, "java developer", 10)).extracting(Proposal::getId).containsExactly(1, 2);
+    }
+
+    @Test
+    public void should_search_speakers_and_cospeakers() {
+        assertThat(searchService.search(EVENT_ID, "Martin", 10)).extracting(Proposal::getId).containsOnly(2, 3);
+        assertThat(searchService.search(EVENT_ID, "alice", 10)).extracting(Proposal::getId).containsExactly(2);
+    }
+
+    @Test
+    public void should_limit_results_and_not_keep_descriptions() {
+        assertThat(searchService.search(EVENT_ID, "martin", 1)).hasSize(1);
+        assertThat(searchService.search(EVENT_ID, "coroutines", 10)).extracting(Proposal::getDescription).containsExactly((String) null);
+        assertThat(searchService.search(EVENT_ID, "unknown", 10)).isEmpty();
+    }
+
+    @Test
+    public void should_build_index_once_per_version() {
+        searchService.search(EVENT_ID, "kotlin", 10);
+        searchService.search(EVENT_ID, "jvm", 10);
+        verify(loader, times(1)).stream(any(ProposalQuery.class), any(Consumer.class));
+
+        when(versions.current(EVENT_ID, Scope.SEARCH)).thenReturn(7L);
+        searchService.search(EVENT_ID, "kotlin", 10);
+        verify(loader, times(2)).stream(any(ProposalQuery.class), any(Consumer.class));
+    }
+
+    @Test
+    public void should_keep_index_while_proposals_are_rated() {
+        searchService.search(EVENT_ID, "kotlin", 10);
+        when(versions.current(EVENT_ID)).thenReturn(12L);
+
+        searchService.search(EVENT_ID, "kotlin", 10);
+
+        verify(loader, times(1)).stream(any(ProposalQuery.class), any(Consumer.class));
+    }
+
+    @Test
+    public void should_apply_refresh_incrementally() {
+        searchService.search(EVENT_ID, "kotlin", 10);
+
+        when(proposals.findById(3, EVENT_ID)).thenReturn(new Proposal().setId(3).setName("Kotlin for the web"));
+        when(versions.current(EVENT_ID, Scope.SEARCH)).thenReturn(6L);
+        committedAt(6L);
+        searchService.refresh(EVENT_ID, 3);
+
+        when(proposals.findById(1, EVENT_ID)).thenReturn(null);
+        when(versions.current(EVENT_ID, Scope.SEARCH)).thenReturn(7L);
+        committedAt(7L);
+        searchService.refresh(EVENT_ID, 1);
+
+        assertThat(searchService.search(EVENT_ID, "kotlin", 10)).extracting(Proposal::getId).containsExactly(3, 2);
+        verify(loader, times(1)).stream(any(ProposalQuery.class), any(Consumer.class));
+    }
+
+    @Test
+    public void should_rebuild_when_writes_were_missed() {
+        searchService.search(EVENT_ID, "kotlin", 10);
+
+        when(proposals.findById(3, EVENT_ID)).thenReturn(new Proposal().setId(3).setName("Kotlin for the web"));
+        when(versions.current(EVENT_ID, Scope.SEARCH)).thenReturn(8L);
+        committedAt(8L);
+        searchService.refresh(EVENT_ID, 3);
+
+        assertThat(searchService.search(EVENT_ID, "kotlin", 10)).extracting(Proposal::getId).containsExactly(1, 2);
+        verify(loader, times(2)).stream(any(ProposalQuery.class), any(Consumer.class));
+    }
+
+    private void committedAt(long version) {
+        doAnswer(invocation -> {
+            invocation.getArgumentAt(2, LongConsumer.class).accept(version);
+            return null;
+        }).when(versions).afterCommit(eq(EVENT_ID), eq(Scope.SEARCH), any(LongConsumer.class));
+    }
+}
@@ -0,0 +1,32 @@
+package io.cfp.service.search;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TextAnalyzerTest {
+
+    @Test
+    public void should_fold_case_and_accents_and_drop_stop_words() {
+        assertThat(TextAnalyzer.analyze("L'Été de la JVM, and the GC")).containsExactly("ete", "jvm", "gc");
+    }
+
+    @Test
+    public void should_stem_french_and_english_inflections_alike() {
+        assertThat(TextAnalyzer.analyze("développement développeurs developers developing develop"))
+            .containsOnly("develop");
+        assertThat(TextAnalyzer.analyze("journaux journal")).containsOnly("journal");
+        assertThat(TextAnalyzer.analyze("libraries library")).containsOnly("library");
+        assertThat(TextAnalyzer.analyze("rapidement rapide")).containsOnly("rapid");
+    }
+
+    @Test
+    public void should_keep_short_words_intact() {
+        assertThat(TextAnalyzer.analyze("Kotlin is fun, ops")).containsExactly("kotlin", "fun", "ops");
+    }
+
+    @Test
+    public void should_accept_null() {
+        assertThat(TextAnalyzer.analyze(null)).isEmpty();
+    }
+}
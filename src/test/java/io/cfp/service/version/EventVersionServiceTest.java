@@ -0,0 +1,190 @@
+package io.cfp.service.version;
+
+import io.cfp.service.version.EventVersionService.Scope;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.event.EventListener;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class EventVersionServiceTest {
+
+    @Configuration
+    @Import(EventVersionService.class)
+    static class Config {
+
+        @Bean
+        public Changes changes() {
+            return new Changes();
+        }
+    }
+
+    static class Changes {
+
+        private final List<String> eventIds = new CopyOnWriteArrayList<>();
+
+        @EventListener
+        public void changed(EventVersionChanged change) {
+            eventIds.add(change.getEventId());
+        }
+    }
+
+    @Autowired
+    private EventVersionService versions;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private Changes changes;
+
+    @Test
+    public void should_start_at_zero() {
+        assertThat(versions.current("UNKNOWN")).isEqualTo(0);
+        assertThat(versions.etag("UNKNOWN")).isEqualTo("\"0\"");
+    }
+
+    @Test
+    public void should_bump_on_every_write_outside_transaction() {
+        versions.bump("NO_TX");
+        versions.bump("NO_TX");
+
+        assertThat(versions.current("NO_TX")).isEqualTo(2);
+    }
+
+    @Test
+    public void should_bump_once_per_transaction_and_event() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.execute(status -> {
+            versions.bump("TX");
+            versions.bump("TX");
+            versions.bump("OTHER_TX");
+            return null;
+        });
+        tx.execute(status -> {
+            versions.bump("TX");
+            return null;
+        });
+
+        assertThat(versions.current("TX")).isEqualTo(2);
+        assertThat(versions.current("OTHER_TX")).isEqualTo(1);
+    }
+
+    @Test
+    public void should_bump_every_event() {
+        long demo = versions.current("demo");
+
+        versions.bumpAll();
+
+        assertThat(versions.current("demo")).isEqualTo(demo + 1);
+    }
+
+    @Test
+    public void should_forget_bump_of_rolled_back_transaction() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.execute(status -> {
+            versions.bump("ROLLBACK");
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertThat(versions.current("ROLLBACK")).isEqualTo(0);
+    }
+
+    @Test
+    public void should_publish_changes_once_committed() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.execute(status -> {
+            versions.bump("PUBLISHED");
+            versions.bump("PUBLISHED");
+            assertThat(changes.eventIds).doesNotContain("PUBLISHED");
+            return null;
+        });
+        tx.execute(status -> {
+            versions.bump("NOT_PUBLISHED");
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertThat(changes.eventIds).containsOnlyOnce("PUBLISHED").doesNotContain("NOT_PUBLISHED");
+    }
+
+    @Test
+    public void should_increment_versions_as_transaction_commits() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.execute(status -> {
+            versions.bump("COMMITTING");
+            assertThat(versions.current("COMMITTING")).isEqualTo(0);
+            return null;
+        });
+
+        assertThat(versions.current("COMMITTING")).isEqualTo(1);
+    }
+
+    @Test
+    public void should_only_move_written_scopes() {
+        versions.bump("SCOPED", Scope.SCHEDULE);
+
+        assertThat(versions.current("SCOPED")).isEqualTo(1);
+        assertThat(versions.current("SCOPED", Scope.SCHEDULE)).isEqualTo(1);
+        assertThat(versions.current("SCOPED", Scope.SEARCH)).isEqualTo(0);
+    }
+
+    @Test
+    public void should_run_actions_with_version_of_transaction() {
+        List<Long> before = new ArrayList<>();
+        List<Long> after = new ArrayList<>();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.execute(status -> {
+            versions.bump("ACTIONS");
+            versions.beforeCommit("ACTIONS", Scope.SEARCH, before::add);
+            versions.afterCommit("ACTIONS", Scope.SEARCH, version -> {
+                assertThat(before).containsExactly(version);
+                after.add(version);
+            });
+            assertThat(before).isEmpty();
+            return null;
+        });
+
+        assertThat(before).containsExactly(1L);
+        assertThat(after).containsExactly(1L);
+        assertThat(versions.current("ACTIONS")).isEqualTo(1);
+    }
+
+    @Test
+    public void should_tell_scopes_of_written_tables() {
+        assertThat(Scope.written("update `proposals` set `state`=? where `id`=?")).containsOnly(Scope.SEARCH, Scope.SCHEDULE);
+        assertThat(Scope.written("INSERT INTO rooms (name, event_id) VALUES (?, ?)")).containsOnly(Scope.SCHEDULE);
+        assertThat(Scope.written("insert into \"rates\" (\"rate\") values (?)")).isEmpty();
+        assertThat(Scope.shared("UPDATE users SET email=? WHERE id = ?")).isTrue();
+        assertThat(Scope.shared("update `proposals` set `state`=? where `id`=?")).isFalse();
+    }
+
+    @Test
+    public void should_bump_every_event_on_shared_writes() {
+        long demo = versions.current("demo", Scope.SCHEDULE);
+
+        versions.written("SHARED", "UPDATE users SET email=? WHERE id = ?");
+        versions.written(null, "UPDATE users SET email=? WHERE id = ?");
+
+        assertThat(versions.current("demo", Scope.SCHEDULE)).isEqualTo(demo + 2);
+        assertThat(versions.current("SHARED", Scope.SCHEDULE)).isEqualTo(0);
+    }
+}